@@ -0,0 +1,73 @@
+package es.uvigo.det.labredes.lte.benchmarks;
+
+import java.lang.management.ManagementFactory;
+
+import es.uvigo.det.labredes.lte.*;
+
+/**
+ * AllocationCheck: checks that handling simulation events allocates no memory once the event pools are warm.
+ * For every future event list type, with and without the timing wheel, and for one and many UEs, a simulation
+ * handles a number of warm-up events and then the bytes allocated by the thread while handling as many events
+ * again are measured with the thread allocation counters of the JVM. Event pools, node pools and queues still
+ * grow whenever they reach a new maximum size (e.g. in a burst of Pareto traffic), so the check fails (exit
+ * status 1) if the events allocate MAX_BYTES_PER_EVENT or more on average, which no allocation per event can meet.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public final class AllocationCheck {
+    /**
+     * Average bytes per event from which events are considered to allocate memory.
+     */
+    public static final double MAX_BYTES_PER_EVENT = 0.01;
+
+    private AllocationCheck () {}
+
+    /**
+     * Main method.
+     * Usage: java -cp target/benchmarks.jar es.uvigo.det.labredes.lte.benchmarks.AllocationCheck [events]
+     */
+    public static void main (String[] args) {
+	int events = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+	com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	if (!threads.isThreadAllocatedMemorySupported()) {
+	    System.err.println("ERROR: Thread allocation counters not supported by this JVM!");
+	    System.exit(1);
+	}
+	threads.setThreadAllocatedMemoryEnabled(true);
+	long thread = Thread.currentThread().getId();
+
+	boolean failed = false;
+	for (String type : FutureEventList.TYPES) {
+	    for (boolean timer_wheel : new boolean[] {true, false}) {
+		for (int num_ues : new int[] {1, 40}) {
+		    SimulationConfig config = new SimulationConfig();
+		    config.simul_length = 1e8;
+		    config.num_ues = num_ues;
+		    config.event_list_type = type;
+		    config.timer_wheel = timer_wheel;
+		    config.ul_traffic_distribution = "poisson";
+		    config.dl_traffic_distribution = "pareto";
+		    config.ul_packet_rate = config.dl_packet_rate = 0.1 / num_ues;
+		    EventList list = new Simulation(config).event_handler;
+		    step(list, events);
+		    long start = threads.getThreadAllocatedBytes(thread);
+		    step(list, events);
+		    long allocated = threads.getThreadAllocatedBytes(thread) - start;
+		    System.out.format("%-8s timer wheel %-3s %2d UEs: %.3f bytes/event %n", type, timer_wheel ? "on" : "off", num_ues, (double) allocated / events);
+		    failed |= (double) allocated / events >= MAX_BYTES_PER_EVENT;
+		}
+	    }
+	}
+	if (failed) {
+	    System.err.println("ERROR: Events allocate memory once the event pools are warm!");
+	    System.exit(1);
+	}
+    }
+
+    private static void step (EventList list, int events) {
+	for (int k = 0; k < events; k++) {
+	    list.handleEvent(list.getNextEvent(true));
+	}
+    }
+}
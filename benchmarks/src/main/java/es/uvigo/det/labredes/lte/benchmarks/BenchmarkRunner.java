@@ -0,0 +1,30 @@
+package es.uvigo.det.labredes.lte.benchmarks;
+
+import java.util.Arrays;
+
+/**
+ * BenchmarkRunner: runs the JMH benchmarks of the simulator kernel.
+ * It accepts the same arguments as the JMH runner (e.g. a benchmark name regexp), and adds the
+ * GC profiler (-prof gc) unless other profilers are specified, so allocation rates are always reported.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner () {}
+
+    /**
+     * Main method.
+     * Usage: java -jar benchmarks.jar [JMH options] [benchmark regexp]
+     */
+    public static void main (String[] args) throws Exception {
+	if (!Arrays.asList(args).contains("-prof")) {
+	    String[] jmh_args = new String[args.length + 2];
+	    jmh_args[0] = "-prof";
+	    jmh_args[1] = "gc";
+	    System.arraycopy(args, 0, jmh_args, 2, args.length);
+	    args = jmh_args;
+	}
+	org.openjdk.jmh.Main.main(args);
+    }
+}
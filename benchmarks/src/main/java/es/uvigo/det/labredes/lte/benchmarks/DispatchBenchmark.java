@@ -0,0 +1,47 @@
+package es.uvigo.det.labredes.lte.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import es.uvigo.det.labredes.lte.*;
+
+/**
+ * Benchmarks EventList.handleEvent with direct dispatch (events handled by their default handler method)
+ * and with reflective dispatch (events handled by a method looked up by name).
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+    private EventList list;
+    private PacketDropEvent direct_event, reflective_event;
+
+    @Setup(Level.Trial)
+    public void setup () {
+	SimulationConfig config = new SimulationConfig();
+	config.simul_length = 1e8;
+	Simulation simulation = new Simulation(config);
+	list = simulation.event_handler;
+	// Packet drops only update a counter, so the handler cost is negligible
+	direct_event = new PacketDropEvent(0.0, simulation.getENB(), 0);
+	reflective_event = new PacketDropEvent(0.0, simulation.getENB(), PacketDropEvent.HANDLER_METHOD);
+	reflective_event.direct_dispatch = false;
+    }
+
+    @Benchmark
+    public void direct () {
+	list.handleEvent(direct_event);
+    }
+
+    @Benchmark
+    public void reflective () {
+	list.handleEvent(reflective_event);
+    }
+}
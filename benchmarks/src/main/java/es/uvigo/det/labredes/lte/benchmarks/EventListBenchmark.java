@@ -0,0 +1,91 @@
+package es.uvigo.det.labredes.lte.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import es.uvigo.det.labredes.lte.*;
+
+/**
+ * Benchmarks the event list operations on lists holding a fixed number of pending events.
+ * Each operation follows the classic hold model: the next event is removed and a new event
+ * is added at a random later time, so the list size stays constant.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventListBenchmark {
+    /**
+     * Number of pending events.
+     */
+    @Param({"16", "1024", "65536"})
+    public int size;
+    /**
+     * Future event list implementation.
+     */
+    @Param({"heap", "pairing", "calendar", "list"})
+    public String type;
+
+    private EventList list;
+    private EventPool pool;
+    private LteNode node;
+    private PacketDropEvent cancel_probe;
+    private Random rng;
+    /* Time of the last event removed: events are not handled, so the simulation clock of the list does not advance */
+    private double now;
+
+    @Setup(Level.Trial)
+    public void setup () {
+	// Events are handled by the eNB of an idle simulation; only its event list is used
+	SimulationConfig config = new SimulationConfig();
+	config.simul_length = 1e8;
+	Simulation simulation = new Simulation(config);
+	node = simulation.getENB();
+	list = new EventList(config.simul_length, type);
+	pool = new EventPool();
+	cancel_probe = new PacketDropEvent(0.0, node, 0);
+	rng = new Random(1);
+	now = 0.0;
+	for (int i = 0; i < size; i++) {
+	    list.addEvent(pool.newPacketArrivalEvent(nextInterval(), node, 0));
+	}
+    }
+
+    /* Exponential interval with mean 1 ms per pending event, so event times are spread as in a simulation */
+    private double nextInterval () {
+	return -Math.log(1.0 - rng.nextDouble()) * 1e-3 * size;
+    }
+
+    /**
+     * Removes the next event and adds a new one (getNextEvent + addEvent).
+     */
+    @Benchmark
+    public Event hold () {
+	Event event = list.getNextEvent(true);
+	now = event.time;
+	event.recycle();
+	list.addEvent(pool.newPacketArrivalEvent(now + nextInterval(), node, 0));
+	return event;
+    }
+
+    /**
+     * Adds and cancels an event (addEvent + removeEvent), then holds, so cancelled
+     * events left as tombstones are eventually discarded.
+     */
+    @Benchmark
+    public boolean addAndRemove () {
+	double t = now + nextInterval();
+	list.addEvent(pool.newPacketDropEvent(t, node, 0));
+	cancel_probe.time = Event.round(t);
+	boolean removed = list.removeEvent(cancel_probe);
+	hold();
+	return removed;
+    }
+}
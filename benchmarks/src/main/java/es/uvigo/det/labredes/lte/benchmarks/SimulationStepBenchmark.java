@@ -0,0 +1,67 @@
+package es.uvigo.det.labredes.lte.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import es.uvigo.det.labredes.lte.*;
+
+/**
+ * Benchmarks the handling of one simulation event (getNextEvent + handleEvent) in a never-ending simulation.
+ * With negligible traffic almost all events are UE state transitions driven by the DRX timers, so this
+ * measures the UE state-transition path; with heavier traffic, packet events are mixed in. With fast-forward,
+ * the DRX cycles of UEs with empty queues are skipped instead, so each step mostly measures fast-forwarding.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SimulationStepBenchmark {
+    /**
+     * Uplink (Poisson) and downlink (Pareto) packet rate (in packets per psf).
+     */
+    @Param({"0.000001", "0.1"})
+    public double packet_rate;
+    /**
+     * Number of UEs.
+     */
+    @Param({"1", "64"})
+    public int num_ues;
+    /**
+     * If true the UE state transitions are kept in a timing wheel instead of the future event list.
+     */
+    @Param({"true", "false"})
+    public boolean timer_wheel;
+    /**
+     * If true the DRX cycles of UEs with empty queues are fast-forwarded instead of simulated event by event.
+     */
+    @Param({"false", "true"})
+    public boolean fast_forward;
+
+    private EventList list;
+
+    @Setup(Level.Trial)
+    public void setup () {
+	SimulationConfig config = new SimulationConfig();
+	config.simul_length = 1e8;
+	config.num_ues = num_ues;
+	config.timer_wheel = timer_wheel;
+	config.fast_forward = fast_forward;
+	config.ul_traffic_distribution = "poisson";
+	config.dl_traffic_distribution = "pareto";
+	config.ul_packet_rate = config.dl_packet_rate = packet_rate;
+	list = new Simulation(config).event_handler;
+    }
+
+    @Benchmark
+    public Event step () {
+	Event event = list.getNextEvent(true);
+	list.handleEvent(event);
+	return event;
+    }
+}
@@ -0,0 +1,108 @@
+package es.uvigo.det.labredes.lte.benchmarks;
+
+import java.io.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import es.uvigo.det.labredes.lte.*;
+
+/**
+ * Benchmarks TrafficGenerator.getNextArrival for every traffic distribution.
+ * Random distributions are also measured with arrivals generated in blocks (see TrafficGenerator.setBlockSize).
+ * Trace generators replay a whole temporary trace file (in text or binary format) per invocation.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TrafficGeneratorBenchmark {
+    private static final int TRACE_PACKETS = 100000;
+    private static final int BLOCK_SIZE = 256;
+
+    private TrafficGenerator deterministic, poisson, pareto, poisson_block, pareto_block;
+    private File text_trace, binary_trace;
+
+    @Setup(Level.Trial)
+    public void setup () throws IOException {
+	deterministic = new DeterministicTrafficGenerator(0.1, 0.001);
+	poisson = new PoissonTrafficGenerator(0.1, 0.001);
+	pareto = new ParetoTrafficGenerator(0.1, 2.5, 0.001);
+	poisson_block = new PoissonTrafficGenerator(0.1, 0.001);
+	pareto_block = new ParetoTrafficGenerator(0.1, 2.5, 0.001);
+	poisson.setSeed(1);
+	pareto.setSeed(1);
+	poisson_block.setSeed(1);
+	pareto_block.setSeed(1);
+	poisson_block.setBlockSize(BLOCK_SIZE);
+	pareto_block.setBlockSize(BLOCK_SIZE);
+
+	text_trace = File.createTempFile("lte-bench", ".trace");
+	binary_trace = File.createTempFile("lte-bench", ".bin");
+	Random rng = new Random(1);
+	try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(text_trace)))) {
+	    for (int i = 0; i < TRACE_PACKETS; i++) {
+		writer.format("%.9f%n", -Math.log(1.0 - rng.nextDouble()) * 0.01);
+	    }
+	}
+	TraceConverter.convertToBinary(text_trace.getPath(), binary_trace.getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown () {
+	text_trace.delete();
+	binary_trace.delete();
+    }
+
+    @Benchmark
+    public double deterministic () {
+	return deterministic.getNextArrival();
+    }
+
+    @Benchmark
+    public double poisson () {
+	return poisson.getNextArrival();
+    }
+
+    @Benchmark
+    public double pareto () {
+	return pareto.getNextArrival();
+    }
+
+    @Benchmark
+    public double poissonBlock () {
+	return poisson_block.getNextArrival();
+    }
+
+    @Benchmark
+    public double paretoBlock () {
+	return pareto_block.getNextArrival();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRACE_PACKETS)
+    public double traceText () {
+	return replay(text_trace);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRACE_PACKETS)
+    public double traceBinary () {
+	return replay(binary_trace);
+    }
+
+    private static double replay (File trace) {
+	TrafficGenerator tg = new TraceTrafficGenerator(trace.getPath());
+	double last = 0, t;
+	while ((t = tg.getNextArrival()) != Double.POSITIVE_INFINITY) {
+	    last = t;
+	}
+	return last;
+    }
+}
@@ -0,0 +1,161 @@
+package es.uvigo.det.labredes.lte;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ArrivalRecorder: Java program that records the packet arrivals that the traffic generators of a simulation
+ * would produce into a recording file (see ArrivalRecording), so that they can be replayed by other simulations
+ * with the traffic distribution recording. Since arrivals only depend on the traffic generators, they are recorded
+ * without running the simulation. Each stream holds the arrivals up to the first one after the simulation length,
+ * so that replaying them with the same simulation length gives exactly the same results.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public final class ArrivalRecorder {
+    private ArrivalRecorder () {}
+
+    /**
+     * Main method.
+     * Usage: java ArrivalRecorder [-f config_file] [-l simulation_length] [-s simulation_seed] output_file
+     */
+    public static void main (String[] args) {
+	String config_file = null;
+	double simul_length = 0;
+	long simul_seed = 0;
+	boolean seed_set = false;
+	String output = null;
+
+	// Arguments parsing
+	for (int i = 0; i < args.length; i++) {
+	    try {
+		if (args[i].equals("-f")) {
+		    config_file = args[++i];
+		} else if (args[i].equals("-l")) {
+		    simul_length = Double.parseDouble(args[++i]);
+		    if (simul_length <= 0) {
+			LteSimulator.printError("Invalid simulation length!");
+		    }
+		} else if (args[i].equals("-s")) {
+		    simul_seed = Long.parseLong(args[++i]);
+		    seed_set = true;
+		} else if (output == null && !args[i].startsWith("-")) {
+		    output = args[i];
+		} else {
+		    LteSimulator.printError("Unknown argument: " + args[i] + "\nUsage: java ArrivalRecorder [-f config_file] [-l simulation_length] [-s simulation_seed] output_file");
+		}
+	    } catch (NumberFormatException e) {
+		LteSimulator.printError("Invalid value for argument " + args[i - 1] + "!");
+	    } catch (ArrayIndexOutOfBoundsException e) {
+		LteSimulator.printError("Missing value for argument " + args[i - 1] + "!");
+	    }
+	}
+	if (output == null) {
+	    LteSimulator.printError("Usage: java ArrivalRecorder [-f config_file] [-l simulation_length] [-s simulation_seed] output_file");
+	}
+
+	SimulationConfig config = new SimulationConfig();
+	try {
+	    if (config_file != null) {
+		config.load(config_file);
+	    }
+	    if (simul_length > 0) {
+		config.simul_length = simul_length;
+	    }
+	    if (seed_set) {
+		config.simul_seed = simul_seed;
+	    }
+	    long packets = record(config, output);
+	    System.out.format("%d arrivals of %d UEs recorded %n", packets, config.num_cells * config.num_ues);
+	} catch (SimulationException e) {
+	    LteSimulator.printError(e.getMessage());
+	}
+    }
+
+    /**
+     * Records the arrivals of the traffic generators of every UE of the specified simulation.
+     * UE cell * num_ues + i of the recording is UE i of the specified cell.
+     *
+     * @param config the simulation parameters
+     * @param output name of the recording file
+     * @return the number of arrivals recorded
+     * @throws SimulationException if the recording file cannot be written or some arrivals are out of order
+     */
+    public static long record (SimulationConfig config, String output) {
+	int num_ues = config.num_cells * config.num_ues;
+	long[] offset = new long[2 * num_ues], length = new long[2 * num_ues], count = new long[2 * num_ues];
+	long end = Event.toTick(config.simul_length);
+	long packets = 0;
+	try (FileChannel ch = FileChannel.open(Paths.get(output), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+	    ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+	    long position = ArrivalRecording.HEADER_SIZE + 2L * num_ues * ArrivalRecording.STREAM_ENTRY_SIZE;
+	    ch.position(position);
+	    for (int cell = 0; cell < config.num_cells; cell++) {
+		TrafficGenerator[][] tg = Simulation.createTrafficGenerators(config, cell);
+		for (int d = 0; d < 2; d++) {
+		    for (int i = 0; i < config.num_ues; i++) {
+			int s = d * num_ues + cell * config.num_ues + i;
+			offset[s] = position;
+			long tick = 0;
+			while (tick <= end) {
+			    double t = tg[d][i].getNextArrival();
+			    if (t == Double.POSITIVE_INFINITY) {
+				break;
+			    }
+			    long next = Event.toTick(t);
+			    if (next < tick) {
+				throw new SimulationException("Arrivals out of order!");
+			    }
+			    if (buffer.remaining() < 10) {
+				writeBuffer(ch, buffer);
+			    }
+			    // Unsigned LEB128: 7 bits per byte, least significant first, high bit set on all but the last byte
+			    long delta = next - tick;
+			    int start = buffer.position();
+			    while ((delta & ~0x7fL) != 0) {
+				buffer.put((byte) ((delta & 0x7f) | 0x80));
+				delta >>>= 7;
+			    }
+			    buffer.put((byte) delta);
+			    position += buffer.position() - start;
+			    tick = next;
+			    count[s]++;
+			}
+			length[s] = position - offset[s];
+			packets += count[s];
+		    }
+		}
+	    }
+	    writeBuffer(ch, buffer);
+	    buffer.put(ArrivalRecording.MAGIC);
+	    buffer.putInt(ArrivalRecording.VERSION);
+	    buffer.putInt(num_ues);
+	    ch.position(0);
+	    for (int s = 0; s < 2 * num_ues; s++) {
+		if (buffer.remaining() < ArrivalRecording.STREAM_ENTRY_SIZE) {
+		    writeBuffer(ch, buffer);
+		}
+		buffer.putLong(offset[s]);
+		buffer.putLong(length[s]);
+		buffer.putLong(count[s]);
+	    }
+	    writeBuffer(ch, buffer);
+	} catch (IOException e) {
+	    throw new SimulationException("Error while writing recording file: " + output);
+	}
+	return packets;
+    }
+
+    private static void writeBuffer (FileChannel ch, ByteBuffer buffer) throws IOException {
+	buffer.flip();
+	while (buffer.hasRemaining()) {
+	    ch.write(buffer);
+	}
+	buffer.clear();
+    }
+}
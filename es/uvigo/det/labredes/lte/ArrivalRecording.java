@@ -0,0 +1,192 @@
+package es.uvigo.det.labredes.lte;
+
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.HashMap;
+
+/**
+ * This class holds a recording of the packet arrivals of every UE in both directions, written by ArrivalRecorder,
+ * so that several simulations can replay exactly the same traffic (see RecordedTrafficGenerator).
+ * <p>
+ * A recording file starts with a header (the 8 ASCII bytes LTERECRD, the format version and the number of UEs, as
+ * little-endian 32-bit integers), followed by a table with the offset, length in bytes and number of arrivals of each
+ * stream (little-endian 64-bit integers), downlink streams first and then uplink streams, both ordered by UE number,
+ * and by the streams. Each stream holds the arrival instants of one UE and direction in clock ticks, delta-encoded:
+ * each arrival is the difference with the previous one (the first one, with 0) as an unsigned LEB128 variable-length
+ * integer, so a few bytes per packet are enough.
+ * <p>
+ * The whole file is memory-mapped once and shared by all the simulations of the JVM that replay it (see open),
+ * each one reading its streams through its own view of the mapped bytes.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public final class ArrivalRecording {
+    /* Binary format */
+    public static final byte[] MAGIC = {'L', 'T', 'E', 'R', 'E', 'C', 'R', 'D'};
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int STREAM_ENTRY_SIZE = 24;
+
+    /* Size of each mapped window of files larger than a single mapping */
+    private static final long WINDOW_SIZE = 1L << 30;
+    /* Recordings already open, by canonical file name */
+    private static final Map<String, WeakReference<ArrivalRecording>> recordings = new HashMap<String, WeakReference<ArrivalRecording>>();
+
+    /**
+     * The number of UEs recorded.
+     */
+    public final int num_ues;
+    /**
+     * The size and modification time of the file when it was mapped.
+     */
+    public final long file_size, last_modified;
+    private final long[] stream_offset, stream_length, stream_packets;
+    /* Window k maps the file from k * WINDOW_SIZE on, and it overlaps the next one by the longest stream */
+    private final ByteBuffer[] windows;
+
+    /**
+     * Returns the recording stored in the specified file. Recordings are mapped once and shared by all their
+     * users while any of them is reachable, unless the file is modified meanwhile.
+     *
+     * @param filename name of the recording file
+     * @return the recording
+     * @throws SimulationException if the recording file is not found or is not a valid recording
+     */
+    public static synchronized ArrivalRecording open (String filename) {
+	File file = new File(filename);
+	String key;
+	try {
+	    key = file.getCanonicalPath();
+	} catch (IOException e) {
+	    key = file.getAbsolutePath();
+	}
+	WeakReference<ArrivalRecording> reference = recordings.get(key);
+	ArrivalRecording recording = reference != null ? reference.get() : null;
+	if (recording == null || recording.file_size != file.length() || recording.last_modified != file.lastModified()) {
+	    recording = new ArrivalRecording(key);
+	    recordings.put(key, new WeakReference<ArrivalRecording>(recording));
+	}
+	return recording;
+    }
+
+    private ArrivalRecording (String filename) {
+	last_modified = new File(filename).lastModified();
+	FileChannel channel;
+	try {
+	    channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+	} catch (IOException e) {
+	    throw new SimulationException("Recording file not found!");
+	}
+	try {
+	    file_size = channel.size();
+	    ByteBuffer header = read(channel, 0, HEADER_SIZE);
+	    for (int i = 0; i < MAGIC.length; i++) {
+		if (header.get(i) != MAGIC[i]) {
+		    throw new SimulationException("Recording file: invalid recording!");
+		}
+	    }
+	    if (header.getInt(MAGIC.length) != VERSION) {
+		throw new SimulationException("Recording file: unsupported recording version!");
+	    }
+	    num_ues = header.getInt(MAGIC.length + 4);
+	    if (num_ues < 0 || HEADER_SIZE + 2L * num_ues * STREAM_ENTRY_SIZE > file_size) {
+		throw new SimulationException("Recording file: invalid recording!");
+	    }
+	    stream_offset = new long[2 * num_ues];
+	    stream_length = new long[2 * num_ues];
+	    stream_packets = new long[2 * num_ues];
+	    ByteBuffer table = read(channel, HEADER_SIZE, 2 * num_ues * STREAM_ENTRY_SIZE);
+	    long longest = 0;
+	    for (int s = 0; s < 2 * num_ues; s++) {
+		stream_offset[s] = table.getLong();
+		stream_length[s] = table.getLong();
+		stream_packets[s] = table.getLong();
+		if (stream_offset[s] < HEADER_SIZE || stream_length[s] < 0 || stream_offset[s] + stream_length[s] > file_size) {
+		    throw new SimulationException("Recording file: invalid recording!");
+		}
+		longest = Math.max(longest, stream_length[s]);
+	    }
+	    // Every stream lies entirely within the window where it starts
+	    if (file_size <= Integer.MAX_VALUE) {
+		windows = new ByteBuffer[] {channel.map(FileChannel.MapMode.READ_ONLY, 0, file_size)};
+	    } else if (WINDOW_SIZE + longest <= Integer.MAX_VALUE) {
+		windows = new ByteBuffer[(int) ((file_size - 1) / WINDOW_SIZE + 1)];
+		for (int k = 0; k < windows.length; k++) {
+		    long start = k * WINDOW_SIZE;
+		    windows[k] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE + longest, file_size - start));
+		}
+	    } else {
+		throw new SimulationException("Recording file: stream too long!");
+	    }
+	} catch (IOException e) {
+	    throw new SimulationException("Error while reading recording file!");
+	} finally {
+	    // Mappings remain valid once the channel is closed
+	    try {
+		channel.close();
+	    } catch (IOException e) {
+		// Nothing else to do
+	    }
+	}
+    }
+
+    private static ByteBuffer read (FileChannel channel, long position, int length) throws IOException {
+	ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+	while (buffer.hasRemaining()) {
+	    if (channel.read(buffer, position + buffer.position()) < 0) {
+		throw new SimulationException("Recording file: invalid recording!");
+	    }
+	}
+	buffer.flip();
+	return buffer;
+    }
+
+    /* Returns the index of the stream of the specified UE and direction */
+    private int getStreamIndex (boolean downlink, int ue) {
+	if (ue < 0 || ue >= num_ues) {
+	    throw new SimulationException("Recording file: UE " + ue + " not recorded!");
+	}
+	return downlink ? ue : num_ues + ue;
+    }
+
+    /**
+     * Returns a new view of the delta-encoded arrivals of the specified UE and direction,
+     * positioned at the first arrival and limited to the last one.
+     *
+     * @param downlink true for the downlink stream, false for the uplink stream
+     * @param ue       the UE number
+     * @return the stream bytes
+     * @throws SimulationException if the UE is not recorded
+     */
+    public ByteBuffer getStream (boolean downlink, int ue) {
+	int s = getStreamIndex(downlink, ue);
+	int k = (int) (stream_offset[s] / WINDOW_SIZE);
+	if (windows.length == 1) {
+	    k = 0;
+	}
+	ByteBuffer view = windows[k].duplicate();
+	int start = (int) (stream_offset[s] - k * WINDOW_SIZE);
+	view.limit(start + (int) stream_length[s]);
+	view.position(start);
+	return view.slice();
+    }
+
+    /**
+     * Returns the number of arrivals recorded for the specified UE and direction.
+     *
+     * @param downlink true for the downlink stream, false for the uplink stream
+     * @param ue       the UE number
+     * @return the number of arrivals
+     * @throws SimulationException if the UE is not recorded
+     */
+    public long getPackets (boolean downlink, int ue) {
+	return stream_packets[getStreamIndex(downlink, ue)];
+    }
+}
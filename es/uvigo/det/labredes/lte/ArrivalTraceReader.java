@@ -0,0 +1,286 @@
+package es.uvigo.det.labredes.lte;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This class reads the interarrival times of a packet trace file.
+ * The file is memory-mapped in windows and interarrival times are parsed straight from the mapped
+ * bytes, without allocating objects per packet, so huge traces can be replayed at simulation speed.
+ * <p>
+ * Two formats are supported. Text traces contain one interarrival time (in seconds) per line,
+ * optionally followed by other whitespace-separated fields, which are ignored. Text values are parsed
+ * exactly as Double.parseDouble does. Binary traces start with a header (the 8 ASCII bytes LTEARRIV,
+ * the format version and the record size, as little-endian 32-bit integers) followed by one
+ * little-endian double per packet. Binary traces are written by TraceConverter.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class ArrivalTraceReader {
+    /* Binary format */
+    public static final byte[] MAGIC = {'L', 'T', 'E', 'A', 'R', 'R', 'I', 'V'};
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 8;
+
+    /* Size of each mapped window (a multiple of the record size) */
+    private static final long WINDOW_SIZE = 1L << 28;
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+					   1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private FileChannel channel;
+    private long file_size;
+    private boolean binary;
+    private ByteBuffer window;
+    private long window_start;
+    /* Bytes of the first field of the current line */
+    private byte[] token;
+    /* True if the last line ended with a carriage return, so a following line feed must be skipped */
+    private boolean skip_lf;
+
+    /**
+     * The last interarrival time read (in seconds).
+     */
+    public double interarrival_time;
+
+    /**
+     * Opens the specified trace file.
+     *
+     * @param filename name of the trace file
+     * @throws SimulationException if the trace file is not found or cannot be read
+     */
+    public ArrivalTraceReader (String filename) {
+	try {
+	    channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+	} catch (IOException e) {
+	    throw new SimulationException("Trace file not found!");
+	}
+	try {
+	    file_size = channel.size();
+	    binary = hasBinaryHeader();
+	} catch (IOException e) {
+	    close();
+	    throw new SimulationException("Error while reading trace file!");
+	}
+	if (binary && (file_size - HEADER_SIZE) % RECORD_SIZE != 0) {
+	    close();
+	    throw new SimulationException("Trace file: truncated binary trace!");
+	}
+	window = ByteBuffer.allocate(0);
+	window_start = binary ? HEADER_SIZE : 0;
+	token = new byte[64];
+	skip_lf = false;
+	interarrival_time = 0.0;
+    }
+
+    /**
+     * Returns true if the trace is in binary format.
+     *
+     * @return true if the trace is in binary format, false if it is in text format
+     */
+    public boolean isBinaryFormat () {
+	return binary;
+    }
+
+    /**
+     * Reads the next interarrival time, which is stored in interarrival_time.
+     *
+     * @return true if a new interarrival time is read, false at the end of the trace
+     * @throws SimulationException if the trace file cannot be read or contains an invalid interarrival time
+     */
+    public boolean next () {
+	if (binary) {
+	    if (!window.hasRemaining() && !mapNextWindow()) {
+		return false;
+	    }
+	    interarrival_time = window.getDouble();
+	    return true;
+	}
+	int b = nextByte();
+	if (skip_lf) {
+	    skip_lf = false;
+	    if (b == '\n') {
+		b = nextByte();
+	    }
+	}
+	if (b < 0) {
+	    return false;
+	}
+	// Only the first field of the line is parsed
+	int length = 0;
+	while (b >= 0 && !isWhitespace(b)) {
+	    if (length == token.length) {
+		token = Arrays.copyOf(token, 2 * length);
+	    }
+	    token[length++] = (byte) b;
+	    b = nextByte();
+	}
+	while (b >= 0 && b != '\n' && b != '\r') {
+	    b = nextByte();
+	}
+	skip_lf = b == '\r';
+	interarrival_time = parseDouble(token, length);
+	return true;
+    }
+
+    /**
+     * Closes the trace file.
+     */
+    public void close () {
+	try {
+	    channel.close();
+	} catch (IOException e) {
+	    // Nothing else to do
+	}
+    }
+
+    /**
+     * Writes the position of the next interarrival time in the trace file to the specified checkpoint stream.
+     *
+     * @param out the checkpoint stream
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeState (ObjectOutput out) throws IOException {
+	out.writeLong(file_size);
+	out.writeLong(window_start + window.position());
+	out.writeBoolean(skip_lf);
+	out.writeDouble(interarrival_time);
+    }
+
+    /**
+     * Moves to the position of the trace file read from the specified checkpoint stream.
+     * The window that contains it is mapped by the next read.
+     *
+     * @param in the checkpoint stream
+     * @throws IOException if the stream cannot be read
+     * @throws SimulationException if the trace file has changed since the checkpoint
+     */
+    public void readState (ObjectInput in) throws IOException {
+	long size = in.readLong();
+	long position = in.readLong();
+	if (size != file_size || position < (binary ? HEADER_SIZE : 0) || position > file_size) {
+	    throw new SimulationException("Trace file has changed since the checkpoint!");
+	}
+	window = ByteBuffer.allocate(0);
+	window_start = position;
+	skip_lf = in.readBoolean();
+	interarrival_time = in.readDouble();
+    }
+
+    /**
+     * Parses a decimal number from the specified bytes, as Double.parseDouble does.
+     * Numbers whose decimal mantissa and power of ten are both exactly representable are computed
+     * with a single correctly rounded operation; any other number is parsed by Double.parseDouble.
+     *
+     * @param bytes  the ASCII characters of the number
+     * @param length the number of characters
+     * @return the parsed number
+     * @throws SimulationException if the characters are not a valid number
+     */
+    static double parseDouble (byte[] bytes, int length) {
+	int i = 0;
+	boolean negative = false;
+	if (i < length && (bytes[i] == '-' || bytes[i] == '+')) {
+	    negative = bytes[i++] == '-';
+	}
+	long mantissa = 0;
+	int digits = 0, exponent = 0;
+	boolean exact = true, any_digit = false;
+	for (; i < length && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+	    any_digit = true;
+	    if (mantissa > 0 || bytes[i] != '0') {
+		exact &= ++digits <= 18;
+		mantissa = 10 * mantissa + (bytes[i] - '0');
+	    }
+	}
+	if (i < length && bytes[i] == '.') {
+	    for (i++; i < length && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+		any_digit = true;
+		if (mantissa > 0 || bytes[i] != '0') {
+		    exact &= ++digits <= 18;
+		    mantissa = 10 * mantissa + (bytes[i] - '0');
+		}
+		exponent--;
+	    }
+	}
+	if (any_digit && i < length && (bytes[i] == 'e' || bytes[i] == 'E')) {
+	    int exp_sign = 1, exp_value = 0, exp_digits = 0;
+	    if (++i < length && (bytes[i] == '-' || bytes[i] == '+')) {
+		exp_sign = bytes[i++] == '-' ? -1 : 1;
+	    }
+	    for (; i < length && bytes[i] >= '0' && bytes[i] <= '9' && exp_digits < 6; i++, exp_digits++) {
+		exp_value = 10 * exp_value + (bytes[i] - '0');
+	    }
+	    exact &= exp_digits > 0;
+	    exponent += exp_sign * exp_value;
+	}
+	if (exact && any_digit && i == length) {
+	    double value = Double.NaN;
+	    if (mantissa == 0) {
+		value = 0.0;
+	    } else if (mantissa <= MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+		value = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+	    }
+	    if (!Double.isNaN(value)) {
+		return negative ? -value : value;
+	    }
+	}
+	try {
+	    return Double.parseDouble(new String(bytes, 0, length, StandardCharsets.UTF_8));
+	} catch (NumberFormatException e) {
+	    throw new SimulationException("Trace file: invalid interarrival time!");
+	}
+    }
+
+    private static boolean isWhitespace (int b) {
+	return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    private int nextByte () {
+	if (!window.hasRemaining() && !mapNextWindow()) {
+	    return -1;
+	}
+	return window.get() & 0xff;
+    }
+
+    private boolean hasBinaryHeader () throws IOException {
+	if (file_size < HEADER_SIZE) {
+	    return false;
+	}
+	ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	while (header.hasRemaining() && channel.read(header, header.position()) >= 0);
+	for (int i = 0; i < MAGIC.length; i++) {
+	    if (header.get(i) != MAGIC[i]) {
+		return false;
+	    }
+	}
+	if (header.getInt(MAGIC.length) != VERSION || header.getInt(MAGIC.length + 4) != RECORD_SIZE) {
+	    throw new SimulationException("Trace file: unsupported binary trace version!");
+	}
+	return true;
+    }
+
+    /* Maps the window that follows the current one, returning false at the end of the file */
+    private boolean mapNextWindow () {
+	long start = window_start + window.capacity();
+	if (start >= file_size) {
+	    return false;
+	}
+	try {
+	    window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, file_size - start));
+	} catch (IOException e) {
+	    throw new SimulationException("Error while reading trace file!");
+	}
+	window.order(ByteOrder.LITTLE_ENDIAN);
+	window_start = start;
+	return true;
+    }
+}
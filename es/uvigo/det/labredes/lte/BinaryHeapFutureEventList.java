@@ -0,0 +1,133 @@
+package es.uvigo.det.labredes.lte;
+
+import java.util.List;
+import java.util.Arrays;
+
+/**
+ * This class extends FutureEventList class to store pending events in an array-based binary heap.
+ * Insertions, removals of the earliest event and cancellations take logarithmic time.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class BinaryHeapFutureEventList extends FutureEventList {
+    private Event[] heap;
+    private int heap_size;
+
+    /**
+     * Creates a new empty binary heap.
+     */
+    public BinaryHeapFutureEventList () {
+	heap = new Event[64];
+	heap_size = 0;
+    }
+
+    /**
+     * Adds the specified event to the binary heap.
+     *
+     * @param event the Event to be added
+     */
+    public void add (Event event) {
+	if (heap_size == heap.length) {
+	    heap = Arrays.copyOf(heap, 2 * heap.length);
+	}
+	siftUp(heap_size++, event);
+    }
+
+    /**
+     * Returns the earliest event without removing it.
+     *
+     * @return the earliest event or null if the binary heap is empty
+     */
+    public Event peek () {
+	return heap_size == 0 ? null : heap[0];
+    }
+
+    /**
+     * Removes and returns the earliest event.
+     *
+     * @return the earliest event or null if the binary heap is empty
+     */
+    public Event poll () {
+	if (heap_size == 0) {
+	    return null;
+	}
+	Event event = heap[0];
+	removeAt(0);
+	return event;
+    }
+
+    /**
+     * Removes the specified pending event using its stored heap position.
+     *
+     * @param event the pending Event to be removed
+     * @return true if the event has been removed from the binary heap
+     */
+    public boolean cancel (Event event) {
+	int i = event.fel_position;
+	if (i >= heap_size || heap[i] != event) {
+	    return false;
+	}
+	removeAt(i);
+	return true;
+    }
+
+    /**
+     * Returns the number of pending events.
+     *
+     * @return the number of pending events
+     */
+    public int size () {
+	return heap_size;
+    }
+
+    protected void collect (List<Event> events) {
+	for (int i = 0; i < heap_size; i++) {
+	    events.add(heap[i]);
+	}
+    }
+
+    private void removeAt (int i) {
+	Event last = heap[--heap_size];
+	heap[heap_size] = null;
+	if (i < heap_size) {
+	    siftDown(i, last);
+	    if (heap[i] == last) {
+		siftUp(i, last);
+	    }
+	}
+    }
+
+    private void siftUp (int i, Event event) {
+	while (i > 0) {
+	    int parent = (i - 1) >>> 1;
+	    if (!precedes(event, heap[parent])) {
+		break;
+	    }
+	    heap[i] = heap[parent];
+	    heap[i].fel_position = i;
+	    i = parent;
+	}
+	heap[i] = event;
+	event.fel_position = i;
+    }
+
+    private void siftDown (int i, Event event) {
+	int half = heap_size >>> 1;
+	while (i < half) {
+	    int child = 2 * i + 1;
+	    int right = child + 1;
+	    if (right < heap_size && precedes(heap[right], heap[child])) {
+		child = right;
+	    }
+	    if (!precedes(heap[child], event)) {
+		break;
+	    }
+	    heap[i] = heap[child];
+	    heap[i].fel_position = i;
+	    i = child;
+	}
+	heap[i] = event;
+	event.fel_position = i;
+    }
+}
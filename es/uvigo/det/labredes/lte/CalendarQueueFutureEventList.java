@@ -0,0 +1,254 @@
+package es.uvigo.det.labredes.lte;
+
+import java.util.List;
+
+/**
+ * This class extends FutureEventList class to store pending events in a calendar queue (R. Brown, 1988).
+ * Each bucket holds a sorted list of the events that occur within one interval of the calendar year.
+ * The number of buckets and the interval width are adapted to the number of pending events, so
+ * insertions and removals of the earliest event take constant expected time.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class CalendarQueueFutureEventList extends FutureEventList {
+    /**
+     * Bucket list node.
+     */
+    private static final class Node {
+	Event event;
+	Node next;
+    }
+
+    private static final int MIN_BUCKETS = 16;
+    private static final int WIDTH_SAMPLES = 25;
+    /* Initial bucket width (in clock ticks), adapted as soon as the queue is resized */
+    private static final long INITIAL_WIDTH = Event.TICKS_PER_SECOND / 1000;
+
+    private Node[] buckets;
+    private long width;
+    private int queue_size;
+    /* Virtual bucket (interval index since time 0) of the last event removed */
+    private long current_bucket;
+    /* Released nodes kept for reuse */
+    private Node free_nodes;
+    /* Scratch arrays used to sample the earliest events on every resize */
+    private long[] sample_ticks;
+    private Node[] sample_nodes;
+
+    /**
+     * Creates a new empty calendar queue.
+     */
+    public CalendarQueueFutureEventList () {
+	buckets = new Node[MIN_BUCKETS];
+	width = INITIAL_WIDTH;
+	queue_size = 0;
+	current_bucket = 0;
+	free_nodes = null;
+	sample_ticks = new long[WIDTH_SAMPLES];
+	sample_nodes = new Node[WIDTH_SAMPLES];
+    }
+
+    /**
+     * Adds the specified event to the calendar queue.
+     *
+     * @param event the Event to be added
+     */
+    public void add (Event event) {
+	Node node = free_nodes;
+	if (node != null) {
+	    free_nodes = node.next;
+	} else {
+	    node = new Node();
+	}
+	node.event = event;
+	insert(node);
+	queue_size++;
+	if (virtualBucket(event.tick) < current_bucket) {
+	    current_bucket = virtualBucket(event.tick);
+	}
+	if (queue_size > 2 * buckets.length) {
+	    resize(2 * buckets.length);
+	}
+    }
+
+    /**
+     * Returns the earliest event without removing it.
+     *
+     * @return the earliest event or null if the calendar queue is empty
+     */
+    public Event peek () {
+	return queue_size == 0 ? null : buckets[locateFirst()].event;
+    }
+
+    /**
+     * Removes and returns the earliest event.
+     *
+     * @return the earliest event or null if the calendar queue is empty
+     */
+    public Event poll () {
+	if (queue_size == 0) {
+	    return null;
+	}
+	int i = locateFirst();
+	Node node = buckets[i];
+	buckets[i] = node.next;
+	Event event = release(node);
+	if (queue_size < buckets.length / 2 && buckets.length > MIN_BUCKETS) {
+	    resize(buckets.length / 2);
+	}
+	return event;
+    }
+
+    /**
+     * Removes the specified pending event from its bucket.
+     *
+     * @param event the pending Event to be removed
+     * @return true if the event has been removed from the calendar queue
+     */
+    public boolean cancel (Event event) {
+	int i = bucketIndex(event.tick);
+	Node prev = null;
+	for (Node node = buckets[i]; node != null; prev = node, node = node.next) {
+	    if (node.event == event) {
+		if (prev == null) {
+		    buckets[i] = node.next;
+		} else {
+		    prev.next = node.next;
+		}
+		release(node);
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Returns the number of pending events.
+     *
+     * @return the number of pending events
+     */
+    public int size () {
+	return queue_size;
+    }
+
+    protected void collect (List<Event> events) {
+	for (int i = 0; i < buckets.length; i++) {
+	    for (Node node = buckets[i]; node != null; node = node.next) {
+		events.add(node.event);
+	    }
+	}
+    }
+
+    private long virtualBucket (long tick) {
+	return tick / width;
+    }
+
+    private int bucketIndex (long tick) {
+	return (int) (virtualBucket(tick) % buckets.length);
+    }
+
+    /* Inserts the node in its bucket keeping the bucket sorted */
+    private void insert (Node node) {
+	int i = bucketIndex(node.event.tick);
+	Node prev = null;
+	Node next = buckets[i];
+	while (next != null && !precedes(node.event, next.event)) {
+	    prev = next;
+	    next = next.next;
+	}
+	node.next = next;
+	if (prev == null) {
+	    buckets[i] = node;
+	} else {
+	    prev.next = node;
+	}
+    }
+
+    private Event release (Node node) {
+	Event event = node.event;
+	node.event = null;
+	node.next = free_nodes;
+	free_nodes = node;
+	queue_size--;
+	return event;
+    }
+
+    /* Returns the index of the bucket whose first node holds the earliest event */
+    private int locateFirst () {
+	int nbuckets = buckets.length;
+	for (int k = 0; k < nbuckets; k++, current_bucket++) {
+	    int i = (int) (current_bucket % nbuckets);
+	    if (buckets[i] != null && virtualBucket(buckets[i].event.tick) <= current_bucket) {
+		return i;
+	    }
+	}
+	// No event within a whole year
+	return directSearch();
+    }
+
+    /* Returns the index of the bucket holding the earliest event by inspecting all the buckets */
+    private int directSearch () {
+	int first = -1;
+	for (int i = 0; i < buckets.length; i++) {
+	    if (buckets[i] != null && (first < 0 || precedes(buckets[i].event, buckets[first].event))) {
+		first = i;
+	    }
+	}
+	current_bucket = virtualBucket(buckets[first].event.tick);
+	return first;
+    }
+
+    /* Rebuilds the calendar with the specified number of buckets and a new interval width */
+    private void resize (int nbuckets) {
+	long new_width = sampleWidth();
+	Node[] old_buckets = buckets;
+	buckets = new Node[nbuckets];
+	if (new_width > 0) {
+	    width = new_width;
+	}
+	for (int i = 0; i < old_buckets.length; i++) {
+	    Node node = old_buckets[i];
+	    while (node != null) {
+		Node next = node.next;
+		insert(node);
+		node = next;
+	    }
+	}
+	if (queue_size > 0) {
+	    directSearch();
+	}
+    }
+
+    /* Estimates the interval width from the separation of the earliest events */
+    private long sampleWidth () {
+	int nsamples = Math.min(queue_size, WIDTH_SAMPLES);
+	if (nsamples < 2) {
+	    return 0;
+	}
+	long[] ticks = sample_ticks;
+	Node[] removed = sample_nodes;
+	for (int k = 0; k < nsamples; k++) {
+	    int i = locateFirst();
+	    removed[k] = buckets[i];
+	    buckets[i] = removed[k].next;
+	    ticks[k] = removed[k].event.tick;
+	}
+	for (int k = nsamples - 1; k >= 0; k--) {
+	    insert(removed[k]);
+	    removed[k] = null;
+	}
+	current_bucket = virtualBucket(ticks[0]);
+	double avg_separation = (double) (ticks[nsamples - 1] - ticks[0]) / (nsamples - 1);
+	long sum_separation = 0;
+	int count = 0;
+	for (int k = 1; k < nsamples; k++) {
+	    long separation = ticks[k] - ticks[k - 1];
+	    if (separation <= 2 * avg_separation) {
+		sum_separation += separation;
+		count++;
+	    }
+	}
+	return count > 0 ? Math.round(3.0 * sum_separation / count) : 0;
+    }
+}
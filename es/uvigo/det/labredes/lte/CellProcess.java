@@ -0,0 +1,253 @@
+package es.uvigo.det.labredes.lte;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+/**
+ * This class implements the logical process of one cell of a MultiCellSimulation: the simulation of the cell
+ * (its own event list, eNB and UEs), its handover process and the messages it exchanges with other cells.
+ * <p>
+ * The UEs of the cell hand over to another cell, chosen at random, at the instants of a Poisson process.
+ * Handovers are simplified: cells keep a constant population, so a UE that leaves its cell is replaced by one
+ * with the same traffic, RRC/DRX state and timers, which the source cell keeps simulating, and only the packets
+ * queued for it move between cells. The downlink packets buffered at its eNB and the uplink packets buffered at
+ * the UE (except those being transmitted) are forwarded in messages timestamped with the handover instant plus
+ * the handover delay, and they are delivered there to the eNB and the UE with the same number, respectively.
+ * The handover delay is thus the lookahead of the cell: no message sent by the cell occurs earlier than its next
+ * handover plus the handover delay.
+ * <p>
+ * At each instant, the messages delivered to the cell go first (by source cell and sending order), then the
+ * handover, and then the events of the simulation, so the order in which a cell handles its actions does not
+ * depend on how the cells are scheduled.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class CellProcess {
+    /**
+     * Packets of one direction forwarded from one cell to another when a UE hands over.
+     */
+    public static final class Message implements Comparable<Message> {
+	/**
+	 * The instant at which the packets are delivered to the target eNB (in clock ticks).
+	 */
+	public final long tick;
+	/**
+	 * The source and target cells.
+	 */
+	public final int source, target;
+	/**
+	 * The sending order of the message among those sent by the source cell.
+	 */
+	public final long sequence;
+	/**
+	 * The number of the UE that hands over.
+	 */
+	public final int ue;
+	/**
+	 * True if the packets are queued at the eNB (downlink), false if they are queued at the UE (uplink).
+	 */
+	public final boolean downlink;
+	/**
+	 * The instants at which the forwarded packets arrived at the source node, in queue order.
+	 */
+	public final double[] arrival_times;
+
+	Message (long tick, int source, int target, long sequence, int ue, boolean downlink, double[] arrival_times) {
+	    this.tick = tick;
+	    this.source = source;
+	    this.target = target;
+	    this.sequence = sequence;
+	    this.ue = ue;
+	    this.downlink = downlink;
+	    this.arrival_times = arrival_times;
+	}
+
+	/**
+	 * Compares two messages by delivery instant, source cell and sending order.
+	 *
+	 * @param other the message to be compared
+	 * @return a negative value if this message is delivered before the specified one
+	 */
+	public int compareTo (Message other) {
+	    if (tick != other.tick) {
+		return Long.compare(tick, other.tick);
+	    }
+	    if (source != other.source) {
+		return Integer.compare(source, other.source);
+	    }
+	    return Long.compare(sequence, other.sequence);
+	}
+    }
+
+    /**
+     * The simulation of the cell.
+     */
+    public final Simulation simulation;
+    /**
+     * The number of handovers of UEs of this cell, and the packets forwarded by its eNB and UEs.
+     */
+    public long handovers, forwarded_packets;
+
+    private final int num_cells;
+    private final double handover_rate;
+    private final long handover_delay_ticks, end_tick;
+    private final RandomStream random;
+    private long next_handover_tick;
+    private long next_message_sequence;
+    private final PriorityQueue<Message> inbox;
+    private final List<Message> outbox;
+
+    /**
+     * Creates the logical process of the specified cell.
+     *
+     * @param config the simulation parameters
+     * @param cell   the cell number
+     */
+    public CellProcess (SimulationConfig config, int cell) {
+	simulation = new Simulation(config, cell);
+	num_cells = config.num_cells;
+	handover_rate = config.handover_rate * config.num_ues;
+	handover_delay_ticks = Event.toTick(config.handover_delay);
+	end_tick = Event.toTick(config.simul_length);
+	RandomStream stream = new RandomStream(config.simul_seed);
+	if (config.random_streams) {
+	    stream = stream.substream("replication", config.simul_replication);
+	}
+	random = stream.substream("handover", cell);
+	handovers = forwarded_packets = 0;
+	next_handover_tick = 0;
+	next_message_sequence = 0;
+	inbox = new PriorityQueue<Message>();
+	outbox = new ArrayList<Message>();
+	scheduleNextHandover();
+    }
+
+    /* Draws the instant of the next handover of any UE of the cell, or Long.MAX_VALUE if none before the end of the simulation */
+    private void scheduleNextHandover () {
+	if (num_cells < 2 || handover_rate <= 0) {
+	    next_handover_tick = Long.MAX_VALUE;
+	    return;
+	}
+	long interval = Event.toTick(-Math.log(1.0 - random.nextDouble()) / handover_rate);
+	next_handover_tick = next_handover_tick + interval > end_tick ? Long.MAX_VALUE : next_handover_tick + interval;
+    }
+
+    /**
+     * Returns the instant of the next handover of the cell.
+     *
+     * @return the next handover instant (in clock ticks), or Long.MAX_VALUE if none before the end of the simulation
+     */
+    public long getNextHandoverTick () {
+	return next_handover_tick;
+    }
+
+    /**
+     * Returns the instant of the next action of the cell: message delivery, handover or event.
+     *
+     * @return the next action instant (in clock ticks), or Long.MAX_VALUE if none before the end of the simulation
+     */
+    public long getNextActionTick () {
+	long tick = Math.min(next_handover_tick, inbox.isEmpty() ? Long.MAX_VALUE : inbox.peek().tick);
+	Event event = simulation.event_handler.getNextEvent(false);
+	return event != null ? Math.min(tick, event.tick) : tick;
+    }
+
+    /**
+     * Handles all the actions of the cell that occur before the specified instant.
+     * No message for this cell that occurs before that instant may be pending in other cells.
+     *
+     * @param limit_tick the first instant not handled (in clock ticks)
+     */
+    public void advance (long limit_tick) {
+	EventList event_handler = simulation.event_handler;
+	while (true) {
+	    long next_tick = Math.min(limit_tick, Math.min(next_handover_tick, inbox.isEmpty() ? Long.MAX_VALUE : inbox.peek().tick));
+	    Event event;
+	    while ((event = event_handler.getNextEvent(true, next_tick - 1)) != null) {
+		event_handler.handleEvent(event);
+	    }
+	    if (next_tick >= limit_tick) {
+		return;
+	    }
+	    step();
+	}
+    }
+
+    /**
+     * Handles the next action of the cell.
+     */
+    public void step () {
+	long next_tick = Math.min(next_handover_tick, inbox.isEmpty() ? Long.MAX_VALUE : inbox.peek().tick);
+	Event event = simulation.event_handler.getNextEvent(false);
+	if (event != null && event.tick < next_tick) {
+	    simulation.event_handler.handleEvent(simulation.event_handler.getNextEvent(true));
+	} else if (!inbox.isEmpty() && inbox.peek().tick == next_tick) {
+	    deliver(inbox.poll());
+	} else if (next_handover_tick == next_tick && next_tick != Long.MAX_VALUE) {
+	    handover();
+	}
+    }
+
+    /* Hands over a random UE of the cell to another random cell */
+    private void handover () {
+	ENB enb = simulation.getENB();
+	int ue = random.nextInt(enb.num_ues);
+	int target = random.nextInt(num_cells - 1);
+	if (target >= simulation.cell) {
+	    target++;
+	}
+	handovers++;
+	forward(enb, ue, target, true);
+	forward(simulation.getUE(), ue, target, false);
+	scheduleNextHandover();
+    }
+
+    /* Sends the packets queued for the UE at the specified node to the target cell */
+    private void forward (LteNode node, int ue, int target, boolean downlink) {
+	double[] arrival_times = node.forwardPackets(ue);
+	forwarded_packets += arrival_times.length;
+	if (arrival_times.length > 0) {
+	    outbox.add(new Message(next_handover_tick + handover_delay_ticks, simulation.cell, target, next_message_sequence++, ue, downlink, arrival_times));
+	}
+    }
+
+    /* Delivers the packets of the specified message to the eNB or the UE of the cell */
+    private void deliver (Message message) {
+	LteNode node = message.downlink ? simulation.getENB() : simulation.getUE();
+	double t = Event.toSeconds(message.tick);
+	for (double arrival_time : message.arrival_times) {
+	    PacketArrivalEvent event = simulation.event_pool.newPacketArrivalEvent(t, node, message.ue);
+	    event.forwarded_time = arrival_time;
+	    simulation.event_handler.addEvent(event);
+	}
+    }
+
+    /**
+     * Adds the specified message to those delivered to this cell.
+     * Messages delivered after the end of the simulation are discarded.
+     *
+     * @param message the message
+     */
+    public void receive (Message message) {
+	if (message.tick <= end_tick) {
+	    inbox.add(message);
+	}
+    }
+
+    /**
+     * Returns the messages sent by this cell since the last call, and forgets them.
+     *
+     * @return the messages sent, in sending order
+     */
+    public List<Message> takeSentMessages () {
+	if (outbox.isEmpty()) {
+	    return Collections.<Message>emptyList();
+	}
+	List<Message> messages = new ArrayList<Message>(outbox);
+	outbox.clear();
+	return messages;
+    }
+}
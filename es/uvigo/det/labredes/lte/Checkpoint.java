@@ -0,0 +1,207 @@
+package es.uvigo.det.labredes.lte;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class writes and reads checkpoints: compact binary snapshots of the complete state of a simulation
+ * (parameters, pending events, queues, UE states and DRX timers, adaptive DRX variables of the eNB, random
+ * number generators and positions in the trace files). A simulation restored from a checkpoint, even with a
+ * later end time, gets exactly the same results as if it had never been interrupted.
+ * <p>
+ * A checkpoint file is a gzip-compressed Java object stream that starts with the 8 ASCII bytes LTECHKPT and
+ * the format version, followed by the simulation parameters (a serialized SimulationConfig) and the state
+ * written by Simulation.writeState. Only primitive values, primitive arrays and the classes of the
+ * parameters and the random number generators are accepted when a checkpoint is read.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public final class Checkpoint {
+    public static final byte[] MAGIC = {'L', 'T', 'E', 'C', 'H', 'K', 'P', 'T'};
+    public static final int VERSION = 2;
+
+    /* Classes that may be found in a checkpoint */
+    private static final Set<String> CLASSES = new HashSet<String>(Arrays.asList(
+	SimulationConfig.class.getName(), java.util.Random.class.getName(), RandomStream.class.getName(),
+	byte[].class.getName(), int[].class.getName(), long[].class.getName(), double[].class.getName()));
+
+    /**
+     * Object stream that only resolves the classes a checkpoint may contain.
+     */
+    private static final class CheckpointInputStream extends ObjectInputStream {
+	CheckpointInputStream (InputStream in) throws IOException {
+	    super(in);
+	}
+
+	protected Class<?> resolveClass (ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+	    if (!CLASSES.contains(desc.getName())) {
+		throw new InvalidClassException(desc.getName(), "unexpected class in checkpoint");
+	    }
+	    return super.resolveClass(desc);
+	}
+    }
+
+    private Checkpoint () {}
+
+    /**
+     * Writes a checkpoint of the specified simulation to the specified file.
+     * The checkpoint is written to a temporary file that then replaces the specified one, so the previous
+     * checkpoint is kept if the new one cannot be written.
+     *
+     * @param simulation the simulation, between two events
+     * @param filename   name of the checkpoint file
+     * @throws SimulationException if the checkpoint file cannot be written
+     */
+    public static void write (Simulation simulation, String filename) {
+	Path path = Paths.get(filename);
+	Path temp_path = Paths.get(filename + ".tmp");
+	try (ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temp_path), 1 << 16)))) {
+	    out.write(MAGIC);
+	    out.writeInt(VERSION);
+	    out.writeObject(simulation.config);
+	    simulation.writeState(out);
+	} catch (IOException e) {
+	    throw new SimulationException("Cannot write checkpoint file: " + filename);
+	}
+	try {
+	    Files.move(temp_path, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	} catch (IOException e) {
+	    throw new SimulationException("Cannot write checkpoint file: " + filename);
+	}
+    }
+
+    /**
+     * Restores the simulation saved in the specified checkpoint file.
+     * The simulation keeps the parameters it was started with, except for its length if a new one is specified.
+     *
+     * @param filename     name of the checkpoint file
+     * @param simul_length new length of the simulation (in seconds), or 0 to keep the saved one
+     * @return the restored simulation, ready to be run
+     * @throws SimulationException if the checkpoint cannot be read or the new length ends before the checkpoint
+     */
+    public static Simulation read (String filename, double simul_length) {
+	try (ObjectInputStream in = new CheckpointInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(filename)), 1 << 16)))) {
+	    byte[] magic = new byte[MAGIC.length];
+	    in.readFully(magic);
+	    if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION) {
+		throw new SimulationException("Unsupported checkpoint file: " + filename);
+	    }
+	    SimulationConfig config = (SimulationConfig) readObject(in);
+	    if (simul_length > 0) {
+		config.simul_length = simul_length;
+	    }
+	    Simulation simulation = new Simulation(config);
+	    simulation.readState(in);
+	    if (Event.toTick(config.simul_length) < simulation.event_handler.getSimulTick()) {
+		throw new SimulationException("Simulation length ends before the checkpoint!");
+	    }
+	    return simulation;
+	} catch (IOException | ClassCastException | ArrayIndexOutOfBoundsException e) {
+	    throw new SimulationException("Cannot read checkpoint file: " + filename);
+	}
+    }
+
+    /**
+     * Reads an object (e.g. a primitive array) written to a checkpoint stream.
+     *
+     * @param in the checkpoint stream
+     * @return the object read
+     * @throws IOException if the stream cannot be read or the object class is unknown
+     */
+    static Object readObject (ObjectInput in) throws IOException {
+	try {
+	    return in.readObject();
+	} catch (ClassNotFoundException e) {
+	    throw new InvalidClassException(e.getMessage());
+	}
+    }
+
+    /**
+     * Writes the specified pending event: type, instant (in clock ticks), priority, insertion order,
+     * node, UE, packet identifier or new state, and handler method name if it is not the default one.
+     *
+     * @param out   the checkpoint stream
+     * @param event the pending event
+     * @throws IOException if the stream cannot be written
+     */
+    static void writeEvent (ObjectOutput out, Event event) throws IOException {
+	if (event instanceof PacketArrivalEvent) {
+	    out.writeByte(TraceWriter.TYPE_PACKET_ARRIVAL);
+	} else if (event instanceof PacketTransmissionEvent) {
+	    out.writeByte(TraceWriter.TYPE_PACKET_TRANSMISSION);
+	} else if (event instanceof PacketDropEvent) {
+	    out.writeByte(TraceWriter.TYPE_PACKET_DROP);
+	} else {
+	    out.writeByte(TraceWriter.TYPE_STATE_TRANSITION);
+	}
+	out.writeLong(event.tick);
+	out.writeByte(event.priority);
+	out.writeLong(event.sequence);
+	out.writeByte(event.handler instanceof ENB ? TraceWriter.NODE_ENB : TraceWriter.NODE_UE);
+	out.writeInt(event.ue);
+	if (event instanceof PacketArrivalEvent) {
+	    out.writeInt(((PacketArrivalEvent) event).packet_id);
+	} else if (event instanceof PacketTransmissionEvent) {
+	    out.writeInt(((PacketTransmissionEvent) event).packet_id);
+	} else if (event instanceof StateTransitionEvent) {
+	    out.writeByte(((StateTransitionEvent) event).new_state.ordinal());
+	}
+	out.writeBoolean(event.direct_dispatch);
+	if (!event.direct_dispatch) {
+	    out.writeUTF(event.handler_method_name);
+	}
+    }
+
+    /**
+     * Reads a pending event written by writeEvent and adds it to the event list of the specified simulation
+     * with its original insertion order.
+     *
+     * @param in         the checkpoint stream
+     * @param simulation the simulation being restored
+     * @throws IOException if the stream cannot be read or is corrupted
+     */
+    static void readEvent (ObjectInput in, Simulation simulation) throws IOException {
+	int type = in.readByte();
+	long tick = in.readLong();
+	int priority = in.readByte();
+	long sequence = in.readLong();
+	LteNode node = in.readByte() == TraceWriter.NODE_ENB ? simulation.getENB() : simulation.getUE();
+	int ue = in.readInt();
+	if (ue < 0 || ue >= node.num_ues) {
+	    throw new StreamCorruptedException("Invalid UE number");
+	}
+	double t = Event.toSeconds(tick);
+	EventPool pool = simulation.event_pool;
+	Event event;
+	if (type == TraceWriter.TYPE_PACKET_ARRIVAL) {
+	    PacketArrivalEvent arrival = pool.newPacketArrivalEvent(t, node, ue);
+	    arrival.packet_id = in.readInt();
+	    event = arrival;
+	} else if (type == TraceWriter.TYPE_PACKET_TRANSMISSION) {
+	    event = pool.newPacketTransmissionEvent(t, node, ue, in.readInt());
+	} else if (type == TraceWriter.TYPE_PACKET_DROP) {
+	    event = pool.newPacketDropEvent(t, node, ue);
+	} else if (type == TraceWriter.TYPE_STATE_TRANSITION && node instanceof UE) {
+	    event = pool.newStateTransitionEvent(t, (UE) node, ue, UEState.values()[in.readUnsignedByte()]);
+	} else {
+	    throw new StreamCorruptedException("Invalid event type");
+	}
+	event.priority = priority;
+	if (!in.readBoolean()) {
+	    event.handler_method_name = in.readUTF();
+	    event.direct_dispatch = false;
+	}
+	if (!simulation.event_handler.restoreEvent(event, sequence)) {
+	    throw new StreamCorruptedException("Duplicate event");
+	}
+    }
+}
@@ -0,0 +1,215 @@
+package es.uvigo.det.labredes.lte;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * This class implements a log-linear histogram of packet delays, in the style of HdrHistogram.
+ * Delays are recorded in clock ticks. Values below 2^SUB_BUCKET_BITS ticks are counted exactly, and each
+ * higher power of two is split into 2^SUB_BUCKET_BITS linear sub-buckets, so any delay is tracked with a
+ * relative error below 2^-SUB_BUCKET_BITS. The histogram uses the same amount of memory regardless of the
+ * number of packets recorded and the simulation length, recording a delay never allocates, and histograms
+ * of several nodes or replications can be merged.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class DelayHistogram {
+    /**
+     * Number of bits of the sub-bucket index (precision of the histogram).
+     */
+    public static final int SUB_BUCKET_BITS = 8;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /* Enough buckets for any non-negative long value */
+    private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private long[] counts;
+    private long total_count;
+    private long min_value, max_value;
+
+    /**
+     * Creates a new empty histogram.
+     */
+    public DelayHistogram () {
+	counts = new long[NUM_BUCKETS];
+	total_count = 0;
+	min_value = Long.MAX_VALUE;
+	max_value = 0;
+    }
+
+    /**
+     * Records the specified delay.
+     *
+     * @param delay the delay (in seconds); negative delays are recorded as zero
+     */
+    public void record (double delay) {
+	recordTicks(delay > 0 ? Event.toTick(delay) : 0);
+    }
+
+    /**
+     * Records the specified delay.
+     *
+     * @param ticks the delay (in clock ticks)
+     */
+    public void recordTicks (long ticks) {
+	counts[getIndex(ticks)]++;
+	total_count++;
+	if (ticks < min_value) {
+	    min_value = ticks;
+	}
+	if (ticks > max_value) {
+	    max_value = ticks;
+	}
+    }
+
+    /**
+     * Adds all the delays recorded by the specified histogram to this histogram.
+     *
+     * @param histogram the histogram to be merged
+     */
+    public void add (DelayHistogram histogram) {
+	for (int i = 0; i < NUM_BUCKETS; i++) {
+	    counts[i] += histogram.counts[i];
+	}
+	total_count += histogram.total_count;
+	min_value = Math.min(min_value, histogram.min_value);
+	max_value = Math.max(max_value, histogram.max_value);
+    }
+
+    /**
+     * Returns a copy of this histogram.
+     *
+     * @return a new histogram with the same delays recorded
+     */
+    public DelayHistogram copy () {
+	DelayHistogram histogram = new DelayHistogram();
+	histogram.add(this);
+	return histogram;
+    }
+
+    /**
+     * Returns the number of delays recorded.
+     *
+     * @return the number of delays recorded
+     */
+    public long getCount () {
+	return total_count;
+    }
+
+    /**
+     * Returns the maximum delay recorded.
+     *
+     * @return the maximum delay (in seconds), or 0 if the histogram is empty
+     */
+    public double getMax () {
+	return Event.toSeconds(max_value);
+    }
+
+    /**
+     * Returns the minimum delay recorded.
+     *
+     * @return the minimum delay (in seconds), or 0 if the histogram is empty
+     */
+    public double getMin () {
+	return total_count > 0 ? Event.toSeconds(min_value) : 0.0;
+    }
+
+    /**
+     * Returns the delay below or at which the specified percentage of the recorded delays fall.
+     * The result is the highest delay of the sub-bucket containing that delay (and never greater than the
+     * maximum delay recorded), so it overestimates the exact percentile by less than 2^-SUB_BUCKET_BITS.
+     *
+     * @param percentile the percentage (0 to 100)
+     * @return the delay at the specified percentile (in seconds), or 0 if the histogram is empty
+     */
+    public double getPercentile (double percentile) {
+	if (total_count == 0) {
+	    return 0.0;
+	}
+	// Ranks are rounded up, with some slack so that, e.g., 99.9% of 1000 delays is rank 999 despite rounding errors
+	long rank = (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total_count - 1e-6);
+	rank = Math.max(1, Math.min(rank, total_count));
+	long accumulated = 0;
+	for (int i = 0; i < NUM_BUCKETS; i++) {
+	    accumulated += counts[i];
+	    if (accumulated >= rank) {
+		return Event.toSeconds(Math.min(getHighestValue(i), max_value));
+	    }
+	}
+	return Event.toSeconds(max_value);
+    }
+
+    /**
+     * Removes all the recorded delays.
+     */
+    public void reset () {
+	Arrays.fill(counts, 0);
+	total_count = 0;
+	min_value = Long.MAX_VALUE;
+	max_value = 0;
+    }
+
+    /**
+     * Writes the recorded delays to the specified checkpoint stream (only the non-empty sub-buckets).
+     *
+     * @param out the checkpoint stream
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeState (ObjectOutput out) throws IOException {
+	int used = 0;
+	for (int i = 0; i < NUM_BUCKETS; i++) {
+	    if (counts[i] > 0) {
+		used++;
+	    }
+	}
+	out.writeLong(total_count);
+	out.writeLong(min_value);
+	out.writeLong(max_value);
+	out.writeInt(used);
+	for (int i = 0; i < NUM_BUCKETS; i++) {
+	    if (counts[i] > 0) {
+		out.writeShort(i);
+		out.writeLong(counts[i]);
+	    }
+	}
+    }
+
+    /**
+     * Replaces the recorded delays with those read from the specified checkpoint stream.
+     *
+     * @param in the checkpoint stream
+     * @throws IOException if the stream cannot be read or is corrupted
+     */
+    public void readState (ObjectInput in) throws IOException {
+	reset();
+	total_count = in.readLong();
+	min_value = in.readLong();
+	max_value = in.readLong();
+	for (int used = in.readInt(); used > 0; used--) {
+	    int i = in.readUnsignedShort();
+	    if (i >= NUM_BUCKETS) {
+		throw new IOException("Invalid histogram bucket");
+	    }
+	    counts[i] = in.readLong();
+	}
+    }
+
+    /* Index of the sub-bucket that counts the specified value */
+    static int getIndex (long value) {
+	if (value < SUB_BUCKETS) {
+	    return (int) value;
+	}
+	int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+	return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /* Highest value counted by the specified sub-bucket */
+    static long getHighestValue (int index) {
+	if (index < SUB_BUCKETS) {
+	    return index;
+	}
+	int shift = (index >>> SUB_BUCKET_BITS) - 1;
+	long lowest = (long) (index - (shift << SUB_BUCKET_BITS)) << shift;
+	return lowest + (1L << shift) - 1;
+    }
+}
@@ -11,9 +11,10 @@ public class DeterministicTrafficGenerator extends TrafficGenerator {
      * Creates a new deterministic traffic generator.
      *
      * @param prate packet rate (in packets per psf)
+     * @param psf   physical subframe length (in seconds)
      */
-    public DeterministicTrafficGenerator (double prate) {
-	super(prate);
+    public DeterministicTrafficGenerator (double prate, double psf) {
+	super(prate, psf);
     }
 
     /**
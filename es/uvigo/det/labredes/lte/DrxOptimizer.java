@@ -0,0 +1,473 @@
+package es.uvigo.det.labredes.lte;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.*;
+
+/**
+ * DrxOptimizer: Java program that searches the RRC_CONNECTED DRX parameters of the LteSimulator for the best
+ * trade-offs between UE energy saving and packet delay, and reports their Pareto front.
+ * <p>
+ * Every combination of the candidate values listed in the search file is a configuration. Configurations are
+ * raced with successive halving: all of them are first simulated with a short length, then the clearly dominated
+ * ones are eliminated, the best ranked remaining ones (about one out of eta) are simulated again with a length
+ * eta times longer, and so on until only the specified number of finalists are left, which are simulated with the
+ * full simulation length. Every configuration is simulated with the same independent random streams (common random
+ * numbers), and the replications of each round are run concurrently on a fixed-size pool of workers, so the results
+ * do not depend on the number of workers.
+ * <p>
+ * Configurations are compared on three objectives: the UE energy saving, and the average and maximum packet delay of
+ * both directions, to be minimized. The energy saving is, by default, the fraction of time the UEs sleep
+ * (CONNECTED_DRX and IDLE_DRX states), to be maximized, or the average power drawn by each UE (see the power model
+ * of SimulationConfig), to be minimized. Both of them are reported for the configurations of the Pareto front.
+ * A configuration clearly dominates another one when the confidence interval of each of its objectives lies entirely
+ * on the better side of the confidence interval of the other configuration.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public final class DrxOptimizer {
+    /**
+     * Search file keys of the DRX parameters, in the order of the RRC_CONNECTED_DRX config file key.
+     */
+    public static final String[] PARAMETERS = {"SHORT_DRX_CYCLE", "LONG_DRX_CYCLE", "INACTIVITY_TIMER", "QUEUE_THRESHOLD", "DELAY_THRESHOLD"};
+
+    /**
+     * One configuration of the search space and its statistics in the last round it was simulated.
+     */
+    private static final class Candidate {
+	int id;
+	int[] values;
+	SimulationConfig config;
+	/* Energy saving (sleep or power), average packet delay and maximum packet delay */
+	SampleStatistics[] objectives;
+	/* Sleep time fraction and average UE power */
+	SampleStatistics sleep;
+	SampleStatistics power;
+	/* Pareto front (1 = non-dominated) */
+	int rank;
+	String error;
+    }
+
+    private DrxOptimizer () {}
+
+    /**
+     * Main method.
+     * Usage: java DrxOptimizer [-f config_file] [-g search_file] [-l simulation_length] [-m min_length] [-e eta] [-k finalists] [-r replications] [-s first_seed] [-j workers] [-c confidence] [-o sleep|power]
+     * Each line of the search file has a DRX parameter key followed by its candidate values (in psf units, except
+     * for the queue threshold, in packets), e.g. "LONG_DRX_CYCLE 64 128 256". The parameters not listed keep the
+     * values of the config file. The energy objective is the sleep fraction (sleep, the default) or the average UE power
+     * (power).
+     */
+    public static void main (String[] args) {
+	String config_file = null;
+	String search_file = null;
+	SimulationConfig defaults = new SimulationConfig();
+	double simul_length = defaults.simul_length;
+	double min_length = 0;
+	int eta = 3;
+	int finalists = 10;
+	int replications = 5;
+	long first_seed = defaults.simul_seed;
+	int workers = Runtime.getRuntime().availableProcessors();
+	double confidence = 0.95;
+	boolean power_objective = false;
+
+	// Arguments parsing
+	for (int i = 0; i < args.length; i++) {
+	    try {
+		if (args[i].equals("-f")) {
+		    config_file = args[++i];
+		} else if (args[i].equals("-g")) {
+		    search_file = args[++i];
+		} else if (args[i].equals("-l")) {
+		    simul_length = Double.parseDouble(args[++i]);
+		} else if (args[i].equals("-m")) {
+		    min_length = Double.parseDouble(args[++i]);
+		} else if (args[i].equals("-e")) {
+		    eta = Integer.parseInt(args[++i]);
+		} else if (args[i].equals("-k")) {
+		    finalists = Integer.parseInt(args[++i]);
+		} else if (args[i].equals("-r")) {
+		    replications = Integer.parseInt(args[++i]);
+		} else if (args[i].equals("-s")) {
+		    first_seed = Long.parseLong(args[++i]);
+		} else if (args[i].equals("-j")) {
+		    workers = Integer.parseInt(args[++i]);
+		} else if (args[i].equals("-c")) {
+		    confidence = Double.parseDouble(args[++i]);
+		} else if (args[i].equals("-o")) {
+		    String objective = args[++i];
+		    if (!objective.equals("sleep") && !objective.equals("power")) {
+			LteSimulator.printError("Invalid energy objective: " + objective + "!");
+		    }
+		    power_objective = objective.equals("power");
+		} else {
+		    LteSimulator.printError("Unknown argument: " + args[i] + "\nUsage: java DrxOptimizer [-f config_file] [-g search_file] [-l simulation_length] [-m min_length] [-e eta] [-k finalists] [-r replications] [-s first_seed] [-j workers] [-c confidence] [-o sleep|power]");
+		}
+	    } catch (NumberFormatException e) {
+		LteSimulator.printError("Invalid value for argument " + args[i - 1] + "!");
+	    } catch (ArrayIndexOutOfBoundsException e) {
+		LteSimulator.printError("Missing value for argument " + args[i - 1] + "!");
+	    }
+	}
+	if (simul_length <= 0 || min_length < 0 || min_length > simul_length || eta < 2 || finalists < 1 || replications < 1 || workers < 1 || confidence <= 0 || confidence >= 1) {
+	    LteSimulator.printError("Invalid optimizer settings!");
+	}
+
+	// Base configuration (without output files, since the replications run concurrently)
+	SimulationConfig base = new SimulationConfig();
+	try {
+	    if (config_file != null) {
+		base.load(config_file);
+	    }
+	} catch (SimulationException e) {
+	    LteSimulator.printError(e.getMessage());
+	}
+	base.simul_verbose = false;
+	base.metrics_output_file = "";
+	base.checkpoint_file = "";
+
+	// Search space
+	List<List<Integer>> space = new ArrayList<List<Integer>>();
+	for (int p = 0; p < PARAMETERS.length; p++) {
+	    space.add(new ArrayList<Integer>());
+	}
+	if (search_file != null) {
+	    for (String line : SweepRunner.readLines(search_file)) {
+		if (line.startsWith(";") || line.trim().isEmpty()) {
+		    continue;
+		}
+		String[] fields = line.trim().split("\\s+");
+		int p = Arrays.asList(PARAMETERS).indexOf(fields[0]);
+		if (p < 0) {
+		    LteSimulator.printError("Search file: unknown DRX parameter " + fields[0] + "!");
+		}
+		for (int i = 1; i < fields.length; i++) {
+		    try {
+			int value = Integer.parseInt(fields[i]);
+			// Only the queue threshold may be 0 (adaptive threshold)
+			if (value < 0 || (value == 0 && p != 3)) {
+			    throw new NumberFormatException();
+			}
+			if (!space.get(p).contains(value)) {
+			    space.get(p).add(value);
+			}
+		    } catch (NumberFormatException e) {
+			LteSimulator.printError("Search file: invalid value for DRX parameter " + fields[0] + "!");
+		    }
+		}
+	    }
+	}
+	int[] base_values = {base.short_drx_cycle, base.long_drx_cycle, base.inactivity_timer, base.queue_threshold, base.delay_threshold};
+	for (int p = 0; p < PARAMETERS.length; p++) {
+	    if (space.get(p).isEmpty()) {
+		space.get(p).add(base_values[p]);
+	    }
+	}
+	List<Candidate> candidates = new ArrayList<Candidate>();
+	int[] index = new int[PARAMETERS.length];
+	do {
+	    int[] values = new int[PARAMETERS.length];
+	    for (int p = 0; p < PARAMETERS.length; p++) {
+		values[p] = space.get(p).get(index[p]);
+	    }
+	    // The short DRX cycle cannot be longer than the long one, and the delay threshold is not used if the queue threshold is 1
+	    if (values[0] <= values[1] && (values[3] != 1 || index[4] == 0)) {
+		Candidate candidate = new Candidate();
+		candidate.id = candidates.size() + 1;
+		candidate.values = values;
+		candidate.config = base.copy();
+		candidate.config.short_drx_cycle = values[0];
+		candidate.config.long_drx_cycle = values[1];
+		candidate.config.inactivity_timer = values[2];
+		candidate.config.queue_threshold = values[3];
+		candidate.config.delay_threshold = values[3] != 1 ? values[4] : base.delay_threshold;
+		candidates.add(candidate);
+	    }
+	} while (nextIndex(index, space));
+	if (candidates.isEmpty()) {
+	    LteSimulator.printError("Search file: no valid DRX configuration!");
+	}
+
+	// Rounds of successive halving, until no more than the specified number of finalists are left: the last one uses the full simulation length
+	int rounds = 1;
+	for (int size = candidates.size(); size > finalists; size = (size + eta - 1) / eta) {
+	    rounds++;
+	}
+	if (min_length == 0) {
+	    min_length = simul_length / Math.pow(eta, rounds - 1);
+	}
+	System.out.format("DRX optimizer: %d configurations %d rounds %d replications %n", candidates.size(), rounds, replications);
+	ExecutorService pool = Executors.newFixedThreadPool(workers);
+	List<Candidate> alive = candidates;
+	for (int round = 1; round <= rounds; round++) {
+	    double length = round == rounds ? simul_length : Math.min(simul_length, min_length * Math.pow(eta, round - 1));
+	    try {
+		runRound(pool, alive, length, replications, first_seed, power_objective);
+	    } catch (Exception e) {
+		pool.shutdownNow();
+		LteSimulator.printError("Replication failed: " + e.getMessage());
+		return;
+	    }
+	    int simulated = alive.size();
+
+	    // Failed configurations are reported and eliminated
+	    List<Candidate> next = new ArrayList<Candidate>();
+	    for (Candidate candidate : alive) {
+		if (candidate.error != null) {
+		    System.out.format("Configuration %d (%s) FAILED: %s %n", candidate.id, describe(candidate), candidate.error);
+		} else {
+		    next.add(candidate);
+		}
+	    }
+	    int failed = simulated - next.size();
+	    alive = next;
+
+	    // Racing: clearly dominated configurations are eliminated
+	    next = new ArrayList<Candidate>();
+	    for (Candidate candidate : alive) {
+		boolean dominated = false;
+		for (Candidate other : alive) {
+		    if (other != candidate && clearlyDominates(other, candidate, confidence)) {
+			dominated = true;
+			break;
+		    }
+		}
+		if (!dominated) {
+		    next.add(candidate);
+		}
+	    }
+	    int dominated = alive.size() - next.size();
+	    alive = next;
+
+	    // Successive halving: one out of eta configurations (but no less than the finalists) is kept, taking whole Pareto fronts best first and
+	    // completing the last one with its least crowded configurations
+	    rank(alive);
+	    if (round < rounds) {
+		alive = select(alive, Math.max(finalists, (alive.size() + eta - 1) / eta));
+	    }
+	    System.out.format("Round %d: length %.6f simulated %d failed %d dominated %d kept %d %n", round, length, simulated, failed, dominated, alive.size());
+	    System.out.flush();
+	}
+	pool.shutdown();
+
+	// Pareto front of the configurations simulated with the full length, by configuration number
+	alive.sort(new Comparator<Candidate>() {
+		public int compare (Candidate a, Candidate b) {
+		    return Integer.compare(a.id, b.id);
+		}
+	    });
+	System.out.format("Pareto front (%s, average delay, maximum delay), mean +- %.0f%% confidence interval half-width: %n",
+			  power_objective ? "average UE power" : "sleep fraction", 100 * confidence);
+	for (Candidate candidate : alive) {
+	    if (candidate.rank == 1) {
+		SampleStatistics[] obj = candidate.objectives;
+		System.out.format("Configuration %d (%s): sleep %.6f +- %.6f power %.6f +- %.6f mW average delay %.9f +- %.9f max delay %.9f +- %.9f %n",
+				  candidate.id, describe(candidate), candidate.sleep.getMean(), halfWidth(candidate.sleep, confidence),
+				  candidate.power.getMean(), halfWidth(candidate.power, confidence),
+				  obj[1].getMean(), halfWidth(obj[1], confidence), obj[2].getMean(), halfWidth(obj[2], confidence));
+	    }
+	}
+    }
+
+    /* Advances the index of every parameter to the next combination of values, returning false after the last one */
+    private static boolean nextIndex (int[] index, List<List<Integer>> space) {
+	for (int p = index.length - 1; p >= 0; p--) {
+	    if (++index[p] < space.get(p).size()) {
+		return true;
+	    }
+	    index[p] = 0;
+	}
+	return false;
+    }
+
+    /* Simulates the replications of every configuration with the specified length, and computes their objectives */
+    private static void runRound (ExecutorService pool, List<Candidate> candidates, double length, int replications, long first_seed, boolean power_objective) throws InterruptedException, ExecutionException {
+	List<Future<SimulationResult>> results = new ArrayList<Future<SimulationResult>>();
+	for (Candidate candidate : candidates) {
+	    for (int r = 0; r < replications; r++) {
+		final SimulationConfig config = candidate.config.copy();
+		config.simul_length = length;
+		// Every replication derives its own streams from the same seed, so replications never share arrivals
+		config.random_streams = true;
+		config.simul_seed = first_seed;
+		config.simul_replication = r;
+		results.add(pool.submit(new Callable<SimulationResult>() {
+			public SimulationResult call () {
+			    return config.num_cells > 1 ? new MultiCellSimulation(config).run(1) : new Simulation(config).run();
+			}
+		    }));
+	    }
+	}
+	int k = 0;
+	for (Candidate candidate : candidates) {
+	    candidate.sleep = new SampleStatistics();
+	    candidate.power = new SampleStatistics();
+	    candidate.objectives = new SampleStatistics[] {power_objective ? candidate.power : candidate.sleep, new SampleStatistics(), new SampleStatistics()};
+	    candidate.error = null;
+	    for (int r = 0; r < replications; r++) {
+		SimulationResult result;
+		try {
+		    result = results.get(k++).get();
+		} catch (ExecutionException e) {
+		    if (!(e.getCause() instanceof SimulationException)) {
+			throw e;
+		    }
+		    candidate.error = e.getCause().getMessage();
+		    continue;
+		}
+		int sent = result.enb.packets_sent + result.ue.packets_sent;
+		double sleep = result.getTimeInState(UEState.CONNECTED_DRX) + result.getTimeInState(UEState.IDLE_DRX);
+		candidate.sleep.add(sleep / result.simul_length);
+		candidate.power.add(result.getAveragePower());
+		candidate.objectives[1].add(sent > 0 ? (result.enb.sum_packets_delay + result.ue.sum_packets_delay) / sent : 0.0);
+		candidate.objectives[2].add(Math.max(result.enb.maximum_packet_delay, result.ue.maximum_packet_delay));
+	    }
+	}
+    }
+
+    /* Returns the objectives of a configuration as costs to be minimized, shifted by the specified number of half-widths */
+    private static double[] getCosts (Candidate candidate, double confidence, double shift) {
+	double[] costs = new double[candidate.objectives.length];
+	for (int o = 0; o < costs.length; o++) {
+	    SampleStatistics stats = candidate.objectives[o];
+	    // The sleep fraction is the only objective to be maximized
+	    double cost = stats == candidate.sleep ? -stats.getMean() : stats.getMean();
+	    costs[o] = shift != 0 ? cost + shift * halfWidth(stats, confidence) : cost;
+	}
+	return costs;
+    }
+
+    /* Returns true if the confidence intervals of the first configuration are better than those of the second one in every objective */
+    private static boolean clearlyDominates (Candidate a, Candidate b, double confidence) {
+	double[] worst_a = getCosts(a, confidence, 1);
+	double[] best_b = getCosts(b, confidence, -1);
+	for (int o = 0; o < worst_a.length; o++) {
+	    if (!(worst_a[o] < best_b[o])) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /* Returns true if the mean objectives of the first configuration Pareto dominate those of the second one */
+    private static boolean dominates (double[] a, double[] b) {
+	boolean better = false;
+	for (int o = 0; o < a.length; o++) {
+	    if (a[o] > b[o]) {
+		return false;
+	    }
+	    better |= a[o] < b[o];
+	}
+	return better;
+    }
+
+    /* Sorts the configurations into Pareto fronts of their mean objectives (non-dominated sorting) */
+    private static void rank (List<Candidate> candidates) {
+	int n = candidates.size();
+	double[][] costs = new double[n][];
+	for (int i = 0; i < n; i++) {
+	    costs[i] = getCosts(candidates.get(i), 0, 0);
+	    candidates.get(i).rank = 0;
+	}
+	for (int r = 1, ranked = 0; ranked < n; r++) {
+	    // The front is found before ranking it, so it only depends on the previous fronts
+	    List<Candidate> front = new ArrayList<Candidate>();
+	    for (int i = 0; i < n; i++) {
+		if (candidates.get(i).rank != 0) {
+		    continue;
+		}
+		boolean dominated = false;
+		for (int j = 0; j < n && !dominated; j++) {
+		    dominated = j != i && candidates.get(j).rank == 0 && dominates(costs[j], costs[i]);
+		}
+		if (!dominated) {
+		    front.add(candidates.get(i));
+		}
+	    }
+	    for (Candidate candidate : front) {
+		candidate.rank = r;
+	    }
+	    ranked += front.size();
+	}
+    }
+
+    /*
+     * Returns the specified number of configurations, taking whole Pareto fronts best first and completing the last
+     * one with the configurations with the largest crowding distance (i.e. the ones with fewer similar trade-offs)
+     */
+    private static List<Candidate> select (List<Candidate> candidates, int target) {
+	List<Candidate> selected = new ArrayList<Candidate>();
+	for (int r = 1; selected.size() < target; r++) {
+	    List<Candidate> front = new ArrayList<Candidate>();
+	    for (Candidate candidate : candidates) {
+		if (candidate.rank == r) {
+		    front.add(candidate);
+		}
+	    }
+	    if (selected.size() + front.size() > target) {
+		final double[] distance = getCrowdingDistances(front);
+		final List<Candidate> members = new ArrayList<Candidate>(front);
+		// Ties are broken by configuration number, so the selection is deterministic
+		front.sort(new Comparator<Candidate>() {
+			public int compare (Candidate a, Candidate b) {
+			    int c = Double.compare(distance[members.indexOf(b)], distance[members.indexOf(a)]);
+			    return c != 0 ? c : Integer.compare(a.id, b.id);
+			}
+		    });
+		front = front.subList(0, target - selected.size());
+	    }
+	    selected.addAll(front);
+	}
+	return selected;
+    }
+
+    /* Returns the crowding distance of each configuration of a Pareto front: the sum over the objectives of the normalized distance between its neighbours */
+    private static double[] getCrowdingDistances (final List<Candidate> front) {
+	int n = front.size();
+	double[] distance = new double[n];
+	final double[][] costs = new double[n][];
+	for (int i = 0; i < n; i++) {
+	    costs[i] = getCosts(front.get(i), 0, 0);
+	}
+	Integer[] order = new Integer[n];
+	for (int o = 0; o < costs[0].length; o++) {
+	    for (int i = 0; i < n; i++) {
+		order[i] = i;
+	    }
+	    final int objective = o;
+	    Arrays.sort(order, new Comparator<Integer>() {
+		    public int compare (Integer a, Integer b) {
+			int c = Double.compare(costs[a][objective], costs[b][objective]);
+			return c != 0 ? c : Integer.compare(front.get(a).id, front.get(b).id);
+		    }
+		});
+	    double range = costs[order[n - 1]][o] - costs[order[0]][o];
+	    distance[order[0]] = distance[order[n - 1]] = Double.POSITIVE_INFINITY;
+	    for (int k = 1; k < n - 1 && range > 0; k++) {
+		distance[order[k]] += (costs[order[k + 1]][o] - costs[order[k - 1]][o]) / range;
+	    }
+	}
+	return distance;
+    }
+
+    /* Returns the confidence interval half-width of a statistic, or 0 with a single replication */
+    private static double halfWidth (SampleStatistics stats, double confidence) {
+	return stats.getCount() > 1 ? stats.getHalfWidth(confidence) : 0.0;
+    }
+
+    /* Returns the DRX parameters of a configuration with the syntax of the search file */
+    private static String describe (Candidate candidate) {
+	StringBuilder description = new StringBuilder();
+	for (int p = 0; p < PARAMETERS.length; p++) {
+	    if (p == PARAMETERS.length - 1 && candidate.values[3] == 1) {
+		break;
+	    }
+	    description.append(p > 0 ? " " : "").append(PARAMETERS[p]).append(' ').append(candidate.values[p]);
+	}
+	return description.toString();
+    }
+}
@@ -1,49 +1,70 @@
 package es.uvigo.det.labredes.lte;
 
+import java.io.*;
+
 /**
  * This class simulates the eNB of the LTE network.
+ * The eNB keeps one downlink traffic flow and one set of adaptive DRX variables per attached UE.
  *
  * @author Sergio Herreria-Alonso 
  * @version 1.0
  */
 public class ENB extends LteNode {
     /**
-     * The UE connected to the eNB.
+     * The UEs connected to the eNB.
      */
     private UE lte_ue;
 
-    // Adaptive DRX variables
-    private int cycle_packets_sent;
-    private double cycle_sum_packets_delay;
-    private double hol_drx_packet_time;
-    private double adaptive_queue_threshold, max_queue_threshold;
-    private double sum_weighted_queue_threshold, update_queue_threshold_time;
+    // Adaptive DRX variables (per UE)
+    private int[] cycle_packets_sent;
+    private double[] cycle_sum_packets_delay;
+    private double[] hol_drx_packet_time;
+    private double[] adaptive_queue_threshold;
+    private double max_queue_threshold;
+    private double[] sum_weighted_queue_threshold, update_queue_threshold_time;
 
     /**
      * Creates a new eNB.
      * The eNB downlink traffic is simulated with the specified traffic generator.
      *
-     * @param tg the traffic generator
+     * @param sim the simulation the eNB belongs to
+     * @param tg  the traffic generator
+     */
+    public ENB (Simulation sim, TrafficGenerator tg) {
+	this(sim, new TrafficGenerator[] {tg});
+    }
+
+    /**
+     * Creates a new eNB with one downlink traffic flow per traffic generator.
+     * The downlink traffic to UE i is simulated with the traffic generator tg[i].
+     *
+     * @param sim the simulation the eNB belongs to
+     * @param tg  the traffic generators
      */
-    public ENB (TrafficGenerator tg) {
-	super(tg);
-
-	if (LteSimulator.queue_threshold == 0) {
-	    cycle_packets_sent = 0;
-	    cycle_sum_packets_delay = hol_drx_packet_time = 0.0;
-	    adaptive_queue_threshold = 1.0;
-	    max_queue_threshold = LteSimulator.delay_threshold;
+    public ENB (Simulation sim, TrafficGenerator[] tg) {
+	super(sim, tg);
+
+	cycle_packets_sent = new int[num_ues];
+	cycle_sum_packets_delay = new double[num_ues];
+	hol_drx_packet_time = new double[num_ues];
+	adaptive_queue_threshold = new double[num_ues];
+	if (config.queue_threshold == 0) {
+	    for (int ue = 0; ue < num_ues; ue++) {
+		adaptive_queue_threshold[ue] = 1.0;
+	    }
+	    max_queue_threshold = config.delay_threshold;
 	}
-	sum_weighted_queue_threshold = update_queue_threshold_time = 0.0;
+	sum_weighted_queue_threshold = new double[num_ues];
+	update_queue_threshold_time = new double[num_ues];
     }
 
     /**
-     * Connects the specified UE with the eNB.
+     * Connects the specified UEs with the eNB.
      *
-     * @param ue the UE to be connected
+     * @param ue the UEs to be connected
      */
     public void connectUE (UE ue) {
-        lte_ue = ue;
+	lte_ue = ue;
     }
 
     /**
@@ -54,21 +75,24 @@ public class ENB extends LteNode {
     public void handlePacketArrivalEvent (PacketArrivalEvent event) {
 	super.handlePacketArrivalEvent(event);
 
-	UEState state = lte_ue.getState();
+	int ue = event.ue;
+	UEState state = lte_ue.getState(ue);
+	UEState prev_state = lte_ue.getPreviousState(ue);
 	if (state == UEState.IDLE_LISTENING) {
-	    LteSimulator.event_handler.addEvent(new StateTransitionEvent (event.time, lte_ue, "handleStateTransitionEvent", UEState.CONNECTING));
+	    lte_ue.scheduleStateTransition(event.time, ue, UEState.CONNECTING);
 	}
-	if (state == UEState.CONNECTED && (lte_ue.getPreviousState() != UEState.CONNECTED_DRX || qsize >= getQueueThreshold())) {
-	    int pid = lte_ue.getPreviousState() != UEState.CONNECTED_DRX ? event.packet_id : ((PacketArrivalEvent) (queue.getNextEvent(false))).packet_id;
-	    LteSimulator.event_handler.addEvent(new PacketTransmissionEvent (event.time + LteSimulator.lte_psf, this, "handlePacketTransmissionEvent", pid));
-	    LteSimulator.event_handler.addEvent(new StateTransitionEvent (event.time, lte_ue, "handleStateTransitionEvent", UEState.CONNECTED_RX));
+	if (state == UEState.CONNECTED && (prev_state != UEState.CONNECTED_DRX || qsize[ue] >= getQueueThreshold(ue))) {
+	    // The head-of-line packet goes first (packets may be waiting since the UE connected)
+	    int pid = queue[ue].peekPacketId();
+	    event_handler.addEvent(event_pool.newPacketTransmissionEvent(event.time + config.lte_psf, this, ue, pid));
+	    lte_ue.scheduleStateTransition(event.time, ue, UEState.CONNECTED_RX);
 	}
 	if (state == UEState.CONNECTED_TX) {
-	    LteSimulator.event_handler.addEvent(new PacketTransmissionEvent (event.time + LteSimulator.lte_psf, this, "handlePacketTransmissionEvent", event.packet_id));
-	    LteSimulator.event_handler.addEvent(new StateTransitionEvent (event.time, lte_ue, "handleStateTransitionEvent", UEState.CONNECTED_TX_RX));
+	    event_handler.addEvent(event_pool.newPacketTransmissionEvent(event.time + config.lte_psf, this, ue, queue[ue].peekPacketId()));
+	    lte_ue.scheduleStateTransition(event.time, ue, UEState.CONNECTED_TX_RX);
 	}
-	if (hol_drx_packet_time == 0.0 && (state == UEState.CONNECTED_DRX || (state == UEState.CONNECTED && lte_ue.getPreviousState() == UEState.CONNECTED_DRX))) {
-	    hol_drx_packet_time = event.time;
+	if (hol_drx_packet_time[ue] == 0.0 && (state == UEState.CONNECTED_DRX || (state == UEState.CONNECTED && prev_state == UEState.CONNECTED_DRX))) {
+	    hol_drx_packet_time[ue] = event.time;
 	}
     }
 
@@ -80,47 +104,70 @@ public class ENB extends LteNode {
     public void handlePacketTransmissionEvent (PacketTransmissionEvent event) {
 	super.handlePacketTransmissionEvent(event);
 
-	if (LteSimulator.queue_threshold == 0) {
-	    cycle_packets_sent++;
-	    cycle_sum_packets_delay += current_packet_delay;
+	int ue = event.ue;
+	if (config.queue_threshold == 0) {
+	    cycle_packets_sent[ue]++;
+	    cycle_sum_packets_delay[ue] += current_packet_delay;
 	}
-	if (qsize == 0) {
-	    if (lte_ue.getState() == UEState.CONNECTED_TX_RX && lte_ue.qsize > 0) {
-		LteSimulator.event_handler.addEvent(new StateTransitionEvent (event.time, lte_ue, "handleStateTransitionEvent", UEState.CONNECTED_TX));
+	if (qsize[ue] == 0) {
+	    if (lte_ue.getState(ue) == UEState.CONNECTED_TX_RX && lte_ue.qsize[ue] > 0) {
+		lte_ue.scheduleStateTransition(event.time, ue, UEState.CONNECTED_TX);
 	    } else {
-		LteSimulator.event_handler.addEvent(new StateTransitionEvent (event.time, lte_ue, "handleStateTransitionEvent", UEState.CONNECTED));
+		lte_ue.scheduleStateTransition(event.time, ue, UEState.CONNECTED);
 	    }
 	}
     }
 
     /**
-     * Returns current queue threshold value.
+     * Removes the packets queued for the specified UE, so that they are forwarded to another eNB when the UE hands over.
+     * The head-of-line packet is kept if it is being transmitted.
+     *
+     * @param ue the UE number
+     * @return the arrival times of the removed packets, in queue order
+     */
+    public double[] forwardPackets (int ue) {
+	double[] arrival_times = super.forwardPackets(ue);
+	if (arrival_times.length > 0 && qsize[ue] == 0) {
+	    hol_drx_packet_time[ue] = 0.0;
+	}
+	return arrival_times;
+    }
+
+    protected boolean isTransmitting (int ue) {
+	UEState state = lte_ue.getState(ue);
+	return state == UEState.CONNECTED_RX || state == UEState.CONNECTED_TX_RX;
+    }
+
+    /**
+     * Returns current queue threshold value of the specified UE.
      *
+     * @param ue the UE number
      * @return current queue threshold value
      */
-    public int getQueueThreshold () {
-	if (LteSimulator.queue_threshold > 0) {
-	    return LteSimulator.queue_threshold;
+    public int getQueueThreshold (int ue) {
+	if (config.queue_threshold > 0) {
+	    return config.queue_threshold;
 	}
-	return (int) Math.ceil(adaptive_queue_threshold);
+	return (int) Math.ceil(adaptive_queue_threshold[ue]);
     }
 
     /**
-     * Returns true if the UE must abandon the DRX mode.
+     * Returns true if the specified UE must abandon the DRX mode.
      *
+     * @param ue the UE number
      * @param now current simulation time
      * @param drx_cycle length of the next DRX cycle (in psf)
      * @return true if the UE must abandon the DRX mode
      */
-    public boolean exitDRX (double now, int drx_cycle) {
-	if (lte_ue.getState() == UEState.CONNECTED_DRX) {
-	    if (qsize >= getQueueThreshold()) {
+    public boolean exitDRX (int ue, double now, int drx_cycle) {
+	if (lte_ue.getState(ue) == UEState.CONNECTED_DRX) {
+	    if (qsize[ue] >= getQueueThreshold(ue)) {
 		return true;
 	    }
-	    if (LteSimulator.delay_threshold > 0 &&
-		hol_drx_packet_time > 0 && 
-		(now - hol_drx_packet_time + drx_cycle * LteSimulator.lte_psf > LteSimulator.delay_threshold * LteSimulator.lte_psf ||
-		 now - prev_arrival_time + (drx_cycle + qsize - 1) * LteSimulator.lte_psf > LteSimulator.delay_threshold * LteSimulator.lte_psf)) {	    
+	    if (config.delay_threshold > 0 &&
+		hol_drx_packet_time[ue] > 0 && 
+		(now - hol_drx_packet_time[ue] + drx_cycle * config.lte_psf > config.delay_threshold * config.lte_psf ||
+		 now - prev_arrival_time[ue] + (drx_cycle + qsize[ue] - 1) * config.lte_psf > config.delay_threshold * config.lte_psf)) {            
 		return true;
 	    }
 	}
@@ -128,35 +175,97 @@ public class ENB extends LteNode {
     }
 
     /**
-     * Updates DRX queue threshold value.
+     * Updates DRX queue threshold value of the specified UE.
      *
+     * @param ue the UE number
      * @param now current simulation time
      */
-    public void updateQueueTreshold (double now) {
-	hol_drx_packet_time = 0.0;
-	if (LteSimulator.queue_threshold == 0 && cycle_packets_sent > 0) {
-	    sum_weighted_queue_threshold += getQueueThreshold() * (now - update_queue_threshold_time);
-	    update_queue_threshold_time = now;
-	    double cycle_avg_delay = cycle_sum_packets_delay / cycle_packets_sent;
-	    adaptive_queue_threshold += 2.0 * avg_arrival_rate * (LteSimulator.target_avg_delay * LteSimulator.lte_psf - cycle_avg_delay);
-	    if (adaptive_queue_threshold < 1) {
-		adaptive_queue_threshold = 1.0;
-	    } else if (adaptive_queue_threshold > max_queue_threshold) {
-		adaptive_queue_threshold = max_queue_threshold;
+    public void updateQueueTreshold (int ue, double now) {
+	hol_drx_packet_time[ue] = 0.0;
+	if (config.queue_threshold == 0 && cycle_packets_sent[ue] > 0) {
+	    sum_weighted_queue_threshold[ue] += getQueueThreshold(ue) * (now - update_queue_threshold_time[ue]);
+	    update_queue_threshold_time[ue] = now;
+	    double cycle_avg_delay = cycle_sum_packets_delay[ue] / cycle_packets_sent[ue];
+	    adaptive_queue_threshold[ue] += 2.0 * avg_arrival_rate[ue] * (config.target_avg_delay * config.lte_psf - cycle_avg_delay);
+	    if (adaptive_queue_threshold[ue] < 1) {
+		adaptive_queue_threshold[ue] = 1.0;
+	    } else if (adaptive_queue_threshold[ue] > max_queue_threshold) {
+		adaptive_queue_threshold[ue] = max_queue_threshold;
 	    }
-	    cycle_packets_sent = 0;
-	    cycle_sum_packets_delay = 0.0;
+	    cycle_packets_sent[ue] = 0;
+	    cycle_sum_packets_delay[ue] = 0.0;
 	}
     }
 
     /**
-     * Prints on standard output some eNB statistics.
+     * Returns the DRX queue threshold averaged over the simulation time and over all the UEs.
+     *
+     * @return the average DRX queue threshold
      */
-    public void printStatistics () {
-	super.printStatistics();
+    public double getAverageQueueThreshold () {
+	return getAverageQueueThreshold(0.0, config.simul_length);
+    }
 
-	sum_weighted_queue_threshold += getQueueThreshold() * (LteSimulator.simul_length - update_queue_threshold_time);
-	System.out.format("ENB average DRX queue threshold: %.9f %n", sum_weighted_queue_threshold/LteSimulator.simul_length);
+    /**
+     * Returns the DRX queue threshold averaged over the specified period and over all the UEs.
+     * The period must start when the statistics were last reset (see resetStatistics).
+     *
+     * @param start beginning of the period (in seconds)
+     * @param end   end of the period (in seconds)
+     * @return the average DRX queue threshold
+     */
+    public double getAverageQueueThreshold (double start, double end) {
+	double avg_queue_threshold = 0.0;
+	for (int ue = 0; ue < num_ues; ue++) {
+	    double sum_weighted = sum_weighted_queue_threshold[ue] + getQueueThreshold(ue) * (end - update_queue_threshold_time[ue]);
+	    avg_queue_threshold += sum_weighted / (end - start);
+	}
+	return avg_queue_threshold / num_ues;
+    }
+
+    /**
+     * Discards the statistics collected so far, including the average DRX queue threshold.
+     *
+     * @param now current simulation time
+     */
+    public void resetStatistics (double now) {
+	super.resetStatistics(now);
+	for (int ue = 0; ue < num_ues; ue++) {
+	    sum_weighted_queue_threshold[ue] = 0.0;
+	    update_queue_threshold_time[ue] = now;
+	}
+    }
+
+    /**
+     * Writes the state of the eNB, including its adaptive DRX variables, to the specified checkpoint stream.
+     *
+     * @param out the checkpoint stream
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeState (ObjectOutput out) throws IOException {
+	super.writeState(out);
+	out.writeObject(cycle_packets_sent);
+	out.writeObject(cycle_sum_packets_delay);
+	out.writeObject(hol_drx_packet_time);
+	out.writeObject(adaptive_queue_threshold);
+	out.writeObject(sum_weighted_queue_threshold);
+	out.writeObject(update_queue_threshold_time);
+    }
+
+    /**
+     * Replaces the state of the eNB, including its adaptive DRX variables, with the one read from the specified checkpoint stream.
+     *
+     * @param in the checkpoint stream
+     * @throws IOException if the stream cannot be read or is corrupted
+     */
+    public void readState (ObjectInput in) throws IOException {
+	super.readState(in);
+	cycle_packets_sent = (int[]) Checkpoint.readObject(in);
+	cycle_sum_packets_delay = (double[]) Checkpoint.readObject(in);
+	hol_drx_packet_time = (double[]) Checkpoint.readObject(in);
+	adaptive_queue_threshold = (double[]) Checkpoint.readObject(in);
+	sum_weighted_queue_threshold = (double[]) Checkpoint.readObject(in);
+	update_queue_threshold_time = (double[]) Checkpoint.readObject(in);
     }
 
 }
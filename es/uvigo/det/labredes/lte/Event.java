@@ -8,9 +8,43 @@ package es.uvigo.det.labredes.lte;
  */
 abstract public class Event<T> implements Comparable {
     /**
-     * The instant at which the event occurs.
+     * Resolution of the simulation clock: number of ticks per second (1 tick = 1 ns).
+     */
+    public static final long TICKS_PER_SECOND = 1000000000L;
+    /**
+     * Number of low-order bits of the ordering key that hold the event priority.
+     */
+    public static final int PRIORITY_BITS = 4;
+    /**
+     * Maximum event priority. Simultaneous events with lower priority values are handled first.
+     */
+    public static final int MAX_PRIORITY = (1 << PRIORITY_BITS) - 1;
+    /**
+     * Default event priority, leaving room for events that must be handled before or after the default ones.
+     */
+    public static final int DEFAULT_PRIORITY = 8;
+    /**
+     * Maximum simulation clock value (about 18 years), so that ordering keys never overflow.
+     */
+    public static final long MAX_TICK = Long.MAX_VALUE >> PRIORITY_BITS;
+
+    /**
+     * The instant at which the event occurs (in seconds).
+     * Once the event is added to the event list it is rounded to an exact number of clock ticks.
      */
     public double time;
+    /**
+     * The instant at which the event occurs (in clock ticks), set when the event is added to the event list.
+     */
+    public long tick;
+    /**
+     * The priority of the event among simultaneous events (0 to MAX_PRIORITY).
+     */
+    public int priority;
+    /**
+     * The ordering key of the event: its tick followed by its priority, set when the event is added to the event list.
+     */
+    public long key;
     /**
      * The object responsible for handling the event.
      */
@@ -19,6 +53,39 @@ abstract public class Event<T> implements Comparable {
      * The name of the method that handles the event.
      */
     public String handler_method_name;
+    /**
+     * The number of the UE the event refers to.
+     */
+    public int ue;
+    /**
+     * If true the event is handled by calling dispatch() instead of looking up the handler method by name.
+     */
+    public boolean direct_dispatch;
+    /**
+     * The insertion order of the event in the event list, used to sort simultaneous events.
+     */
+    public long sequence;
+    /**
+     * If true the event has been removed from the event list and must not be handled.
+     */
+    public boolean cancelled;
+    /**
+     * The position of the event within an indexed future event list (e.g. a binary heap).
+     */
+    public int fel_position;
+    /**
+     * The slot of the event within a timing wheel, and the previous and next events of that slot (see TimingWheelFutureEventList).
+     */
+    public int timer_slot;
+    public Event timer_prev, timer_next;
+    /**
+     * The hash code of the event stored by the event index.
+     */
+    public int index_hash;
+    /**
+     * The pool the event is recycled to once it is no longer pending, or null if it is not recycled.
+     */
+    public EventPool pool;
 
     /**
      * Creates a new event ocurring at the specified time.
@@ -31,18 +98,93 @@ abstract public class Event<T> implements Comparable {
 	time = t;
 	handler = obj;
 	handler_method_name = method;
+	direct_dispatch = false;
+	priority = DEFAULT_PRIORITY;
+    }
+
+    /**
+     * Reinitializes a recycled event to occur at the specified time.
+     *
+     * @param t      instant at which the event occurs
+     * @param obj    object responsible for handling the event
+     * @param method name of the method that handles the event
+     */
+    protected void reset (double t, T obj, String method) {
+	time = t;
+	handler = obj;
+	handler_method_name = method;
+	direct_dispatch = false;
+	priority = DEFAULT_PRIORITY;
+	cancelled = false;
     }
 
     /**
-     * Compares two events based on the instant at which each event occurs.
+     * Converts the specified instant to clock ticks.
+     *
+     * @param t instant (in seconds)
+     * @return the nearest number of clock ticks
+     */
+    public static long toTick (double t) {
+	return Math.round(t * TICKS_PER_SECOND);
+    }
+
+    /**
+     * Converts the specified number of clock ticks to seconds.
+     *
+     * @param tick instant (in clock ticks)
+     * @return the instant (in seconds)
+     */
+    public static double toSeconds (long tick) {
+	return (double) tick / TICKS_PER_SECOND;
+    }
+
+    /**
+     * Rounds the specified instant to the nearest clock tick, as done when an event is added to the event list.
+     *
+     * @param t instant (in seconds)
+     * @return the rounded instant (in seconds)
+     */
+    public static double round (double t) {
+	return toSeconds(toTick(t));
+    }
+
+    /**
+     * Returns the ordering key of an event occurring at the specified tick with the specified priority.
+     *
+     * @param tick     instant (in clock ticks)
+     * @param priority event priority
+     * @return the ordering key
+     */
+    public static long toKey (long tick, int priority) {
+	return tick << PRIORITY_BITS | priority;
+    }
+
+    /**
+     * Compares two events added to the event list based on their ordering keys and insertion order.
      *
      * @param event the Event to be compared
-     * @return 0 if both the specified event and this event occur at the same instant; a value less than 0 if this event is later than the specified event; and a value greater than 0 if this event is earlier than the specified event
+     * @return 0 if the specified event is this event; a value less than 0 if this event is handled later than the specified event; and a value greater than 0 if this event is handled earlier than the specified event
      */
     public int compareTo (Object event) {
-        return (int) (10e9 * (((Event) event).time - this.time));
+	Event other = (Event) event;
+	if (key != other.key) {
+	    return key < other.key ? 1 : -1;
+	}
+	return Long.compare(other.sequence, sequence);
     }
 
+    /**
+     * Invokes the default handler method of this event on the handler object.
+     * Only called when direct_dispatch is true.
+     */
+    abstract public void dispatch ();
+
+    /**
+     * Returns this event to its pool, if any. Called by the event list once the event is no longer pending
+     * (handled, cancelled or rejected), so the event must not be used afterwards.
+     */
+    public void recycle () {}
+
     /**
      * Prints on standard output a message describing this event.
      */
@@ -0,0 +1,129 @@
+package es.uvigo.det.labredes.lte;
+
+/**
+ * This class implements a hash index of the pending events of an event list.
+ * Events are located by equality (see the equals and hashCode methods of each event type),
+ * so both duplicate detection and cancellation take constant expected time.
+ * The index uses open addressing with linear probing and does not allocate on insertion.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class EventIndex {
+    private Event[] table;
+    private int index_size;
+
+    /**
+     * Creates a new empty index.
+     */
+    public EventIndex () {
+	table = new Event[64];
+	index_size = 0;
+    }
+
+    /**
+     * Adds the specified event to the index unless an equal event is already indexed.
+     * The event hash code is computed and stored in the event.
+     *
+     * @param event the Event to be added
+     * @return the indexed event equal to the specified one or null if the event has been added
+     */
+    public Event addIfAbsent (Event event) {
+	event.index_hash = mix(event.hashCode());
+	int mask = table.length - 1;
+	int i = event.index_hash & mask;
+	for (; table[i] != null; i = (i + 1) & mask) {
+	    if (table[i].index_hash == event.index_hash && event.equals(table[i])) {
+		return table[i];
+	    }
+	}
+	table[i] = event;
+	if (2 * ++index_size > table.length) {
+	    rehash(2 * table.length);
+	}
+	return null;
+    }
+
+    /**
+     * Removes the indexed event equal to the specified one.
+     *
+     * @param event the Event to be removed
+     * @return the removed event or null if there was no equal event
+     */
+    public Event remove (Event event) {
+	int hash = mix(event.hashCode());
+	int mask = table.length - 1;
+	for (int i = hash & mask; table[i] != null; i = (i + 1) & mask) {
+	    if (table[i].index_hash == hash && event.equals(table[i])) {
+		Event removed = table[i];
+		removeAt(i);
+		return removed;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Removes the specified event, which must be indexed, using its stored hash code.
+     *
+     * @param event the indexed Event to be removed
+     */
+    public void removeIndexed (Event event) {
+	int mask = table.length - 1;
+	int i = event.index_hash & mask;
+	while (table[i] != event) {
+	    i = (i + 1) & mask;
+	}
+	removeAt(i);
+    }
+
+    /**
+     * Returns the number of indexed events.
+     *
+     * @return the number of indexed events
+     */
+    public int size () {
+	return index_size;
+    }
+
+    private static int mix (int h) {
+	h ^= h >>> 16;
+	h *= 0x85ebca6b;
+	h ^= h >>> 13;
+	return h;
+    }
+
+    /* Backward shift deletion keeps probe sequences unbroken */
+    private void removeAt (int i) {
+	int mask = table.length - 1;
+	int j = i;
+	while (true) {
+	    j = (j + 1) & mask;
+	    if (table[j] == null) {
+		break;
+	    }
+	    int k = table[j].index_hash & mask;
+	    if ((j > i && (k <= i || k > j)) || (j < i && (k <= i && k > j))) {
+		table[i] = table[j];
+		i = j;
+	    }
+	}
+	table[i] = null;
+	index_size--;
+    }
+
+    private void rehash (int capacity) {
+	Event[] old_table = table;
+	table = new Event[capacity];
+	int mask = capacity - 1;
+	for (int i = 0; i < old_table.length; i++) {
+	    if (old_table[i] != null) {
+		int j = old_table[i].index_hash & mask;
+		while (table[j] != null) {
+		    j = (j + 1) & mask;
+		}
+		table[j] = old_table[i];
+	    }
+	}
+    }
+}
@@ -2,98 +2,293 @@ package es.uvigo.det.labredes.lte;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
 import java.lang.reflect.*;
 
 /**
  * This class implements a discrete sequence of events sorted by event time.
+ * The simulation clock counts integer ticks, and events are ordered by a long key that packs their
+ * tick and priority, with ties broken by insertion order, so the order of events is exact and
+ * deterministic for any simulation length.
+ * Events are recycled (see Event.recycle) as soon as they are handled, cancelled or rejected, so
+ * an event must not be used once it has been passed to addEvent.
+ * Pending events are also kept in a hash index, so that duplicate events are detected
+ * and cancelled events are located in constant time. Cancelled events are then removed from
+ * the future event list, or left there as tombstones that are discarded when they reach its
+ * head if the future event list cannot remove them efficiently.
+ * UE state transitions, which are mostly DRX and RRC timers constantly armed and cancelled, may be kept apart
+ * in a timing wheel (see TimingWheelFutureEventList), so the future event list only holds the packet events.
+ * The next event is then the earliest of the heads of both, in the same order as if they were kept together.
+ * Events scheduled after the end of time are kept but never handled, so that a simulation restored
+ * from a checkpoint (see Checkpoint) can be extended beyond its original end.
  *
  * @author Sergio Herreria-Alonso 
  * @version 1.0
  */
 public class EventList {
-    private List<Event> list;
-    private double simul_time;
-    private double end_time;
+    private FutureEventList list;
+    /* State transitions, or null if they are kept in the future event list */
+    private FutureEventList timers;
+    private EventIndex pending_events;
+    private long simul_tick;
+    private long end_tick;
+    private long next_sequence;
+    private long handled_events;
+    /* Handler methods looked up by name, indexed by handler class, event class and method name */
+    private Map<String, Method> handler_methods;
 
     /**
      * Creates a new list of events.
+     * Pending events are stored in a binary heap.
      *
      * @param t the end of time
      */
     public EventList(double t) {
-	list = new ArrayList<Event>();
-	simul_time = 0.0;
-	end_time = t;
+	this(t, "heap");
+    }
+
+    /**
+     * Creates a new list of events stored in a future event list of the specified type.
+     *
+     * @param t    the end of time
+     * @param type the future event list implementation (list, heap, pairing or calendar)
+     * @throws SimulationException if the type is unknown or the end of time exceeds the clock range
+     */
+    public EventList(double t, String type) {
+	this(t, type, 0);
+    }
+
+    /**
+     * Creates a new list of events stored in a future event list of the specified type, with the state
+     * transitions stored in a timing wheel of the specified granularity.
+     *
+     * @param t                 the end of time
+     * @param type              the future event list implementation (list, heap, pairing or calendar)
+     * @param timer_granularity the length of the timing wheel slots (in seconds; 0 = no timing wheel)
+     * @throws SimulationException if the type is unknown or the end of time exceeds the clock range
+     */
+    public EventList(double t, String type, double timer_granularity) {
+	list = FutureEventList.create(type);
+	if (list == null) {
+	    throw new SimulationException("Unknown event list type: " + type);
+	}
+	timers = timer_granularity > 0 ? new TimingWheelFutureEventList(Event.toTick(timer_granularity)) : null;
+	pending_events = new EventIndex();
+	simul_tick = 0;
+	end_tick = Event.toTick(t);
+	if (end_tick > Event.MAX_TICK) {
+	    throw new SimulationException("Simulation length exceeds the simulation clock range!");
+	}
+	next_sequence = handled_events = 0;
+	handler_methods = new HashMap<String, Method>();
     }
 
     /**
      * Adds the specified event to the event list at the right position.
+     * The event time is rounded to the nearest clock tick.
      *
      * @param event the Event to be added
-     * @return true if the specified event is correctly added to the event list
+     * @return true if the specified event is correctly added to the event list (false if it is a duplicate or it never occurs)
+     * @throws SimulationException if the event time is before the current simulation time or its priority is invalid
      */
     public boolean addEvent (Event event) {
-	event.time = (double) Math.round(event.time * 1000000000) / 1000000000;
-	if (event.time < simul_time) {
-	    LteSimulator.printError("Trying to add an event with an invalid event time!");
+	long tick = Event.toTick(event.time);
+	event.tick = tick;
+	event.time = Event.toSeconds(tick);
+	if (tick < simul_tick) {
+	    throw new SimulationException("Trying to add an event with an invalid event time!");
+	}
+	if (event.priority < 0 || event.priority > Event.MAX_PRIORITY) {
+	    throw new SimulationException("Trying to add an event with an invalid priority!");
 	}
-	if (event.time > end_time || list.contains(event)) {
+	if (tick > Event.MAX_TICK || pending_events.addIfAbsent(event) != null) {
+	    event.recycle();
 	    return false;
 	}
 
-	int i = 0;
-	int list_size = list.size();
-	while (i < list_size && event.compareTo(list.get(i)) <= 0) {
-	    i++;
+	event.key = Event.toKey(tick, event.priority);
+	event.sequence = next_sequence++;
+	event.cancelled = false;
+	if (timers != null && event instanceof StateTransitionEvent) {
+	    timers.add(event);
+	} else {
+	    list.add(event);
 	}
-	if (i == list_size) {
-	    return list.add(event);
-	}
-	list.add(i, event);
 	return true;
     }
 
     /**
      * Returns the time of the last event handled.
      *
-     * @return the time of the last event handled
+     * @return the time of the last event handled (in seconds)
      */
     public double getSimulTime () {
-	return simul_time;
+	return Event.toSeconds(simul_tick);
+    }
+
+    /**
+     * Returns the time of the last event handled in clock ticks.
+     *
+     * @return the time of the last event handled (in clock ticks)
+     */
+    public long getSimulTick () {
+	return simul_tick;
     }
 
     /**
      * Returns the next event in the event list.
      *
      * @param remove if true the event is removed from the list
-     * @return the next event in this event list or null if the list is empty
+     * @return the next event in this event list or null if no event occurs before the end of time
      */
     public Event getNextEvent (boolean remove) {
-	Event event;
-	try {
-	    event = remove ? list.remove(0) : list.get(0);
-	} catch (Exception e) {
-	    event = null;
+	return getNextEvent(remove, end_tick);
+    }
+
+    /**
+     * Returns the next event in the event list if it occurs up to the specified instant.
+     *
+     * @param remove    if true the event is removed from the list
+     * @param last_tick the last instant considered (in clock ticks); events after the end of time are never returned
+     * @return the next event in this event list or null if no event occurs up to the specified instant
+     */
+    public Event getNextEvent (boolean remove, long last_tick) {
+	Event event = list.peek();
+	while (event != null && event.cancelled) {
+	    list.poll();
+	    event.recycle();
+	    event = list.peek();
+	}
+	FutureEventList source = list;
+	// Timers are never left as tombstones
+	Event timer = timers != null ? timers.peek() : null;
+	if (timer != null && (event == null || FutureEventList.precedes(timer, event))) {
+	    event = timer;
+	    source = timers;
+	}
+	if (event == null || event.tick > Math.min(last_tick, end_tick)) {
+	    return null;
+	}
+	if (remove) {
+	    source.poll();
+	    pending_events.removeIndexed(event);
 	}
 	return event;
     }
 
+    /**
+     * Returns all the pending events, including those after the end of time, in the order they are handled.
+     *
+     * @return the pending events
+     */
+    public List<Event> getPendingEvents () {
+	List<Event> events = new ArrayList<Event>();
+	for (Event event : list.getEvents()) {
+	    if (!event.cancelled) {
+		events.add(event);
+	    }
+	}
+	if (timers != null) {
+	    events.addAll(timers.getEvents());
+	    FutureEventList.sort(events);
+	}
+	return events;
+    }
+
+    /**
+     * Returns the insertion order that will be assigned to the next event added.
+     *
+     * @return the next insertion order
+     */
+    public long getNextSequence () {
+	return next_sequence;
+    }
+
+    /**
+     * Discards all the pending events and sets the simulation clock, the next insertion order and the
+     * number of events handled, as saved by a checkpoint.
+     *
+     * @param tick     the time of the last event handled (in clock ticks)
+     * @param sequence the insertion order of the next event added
+     * @param handled  the number of events handled
+     */
+    public void reset (long tick, long sequence, long handled) {
+	Event event;
+	while ((event = list.poll()) != null) {
+	    if (!event.cancelled) {
+		pending_events.removeIndexed(event);
+	    }
+	    event.recycle();
+	}
+	while (timers != null && (event = timers.poll()) != null) {
+	    pending_events.removeIndexed(event);
+	    event.recycle();
+	}
+	simul_tick = tick;
+	next_sequence = sequence;
+	handled_events = handled;
+    }
+
+    /**
+     * Adds the specified event to the event list with the specified insertion order instead of the next one,
+     * so that an event saved by a checkpoint keeps its position among simultaneous events.
+     *
+     * @param event    the Event to be added
+     * @param sequence the insertion order of the event
+     * @return true if the specified event is correctly added to the event list
+     * @throws SimulationException if the event time is before the current simulation time or its priority is invalid
+     */
+    public boolean restoreEvent (Event event, long sequence) {
+	long next = next_sequence;
+	next_sequence = sequence;
+	boolean added = addEvent(event);
+	next_sequence = next;
+	return added;
+    }
+
+    /**
+     * Returns the number of events handled so far.
+     *
+     * @return the number of events handled
+     */
+    public long getHandledEvents () {
+	return handled_events;
+    }
+
     /**
      * Invokes the method that handles the specified event on the corresponding object.
+     * Events created with their default handler method are dispatched directly; otherwise
+     * the handler method is looked up by name once and then invoked by reflection.
+     * The event is recycled once handled.
      *
      * @param event the Event to be handled
+     * @throws SimulationException if the handler method cannot be invoked
      */
     public void handleEvent (Event event) {
-	simul_time = event.time;
+	simul_tick = event.tick;
+	handled_events++;
+	if (event.direct_dispatch) {
+	    event.dispatch();
+	    event.recycle();
+	    return;
+	}
 	try {
-	    Method handler_method = event.handler.getClass().getMethod(event.handler_method_name, event.getClass());
-	    try {
-		handler_method.invoke(event.handler, event);
-	    } catch (Exception e) {
-		LteSimulator.printError("Handler method invoke exception: " + event.handler_method_name + ": " + e.getMessage());
+	    String key = event.handler.getClass().getName() + " " + event.getClass().getName() + " " + event.handler_method_name;
+	    Method handler_method = handler_methods.get(key);
+	    if (handler_method == null) {
+		handler_method = event.handler.getClass().getMethod(event.handler_method_name, event.getClass());
+		handler_methods.put(key, handler_method);
+	    }
+	    handler_method.invoke(event.handler, event);
+	    event.recycle();
+	} catch (InvocationTargetException e) {
+	    if (e.getCause() instanceof SimulationException) {
+		throw (SimulationException) e.getCause();
 	    }
-	} catch (Exception e) {
-	    LteSimulator.printError("Handler method exception: " + e.getMessage());
+	    throw new SimulationException("Handler method invoke exception: " + event.handler_method_name + ": " + e.getCause(), e.getCause());
+	} catch (ReflectiveOperationException e) {
+	    throw new SimulationException("Handler method exception: " + e.getMessage(), e);
 	}
     }
 
@@ -101,9 +296,8 @@ public class EventList {
      * Prints on standard output a message for each event contained in the event list.
      */
     public void print () {
-	Event event;
-	for (int i = 0; i < list.size(); i++) {
-	    list.get(i).print();
+	for (Event event : getPendingEvents()) {
+	    event.print();
 	}
     }
 
@@ -114,6 +308,17 @@ public class EventList {
      * @return true if the event list contained the specified event 
      */
     public boolean removeEvent (Event event) {
-	return list.remove(event);
+	if (event == null) {
+	    return false;
+	}
+	Event pending_event = pending_events.remove(event);
+	if (pending_event == null) {
+	    return false;
+	}
+	pending_event.cancelled = true;
+	if ((timers != null && pending_event instanceof StateTransitionEvent ? timers : list).cancel(pending_event)) {
+	    pending_event.recycle();
+	}
+	return true;
     }
 }
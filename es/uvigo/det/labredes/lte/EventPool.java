@@ -0,0 +1,174 @@
+package es.uvigo.det.labredes.lte;
+
+/**
+ * This class recycles the events of a simulation.
+ * Handled, cancelled and rejected events are returned to a free list of their type by the event list,
+ * and new events are taken from these free lists, so once the free lists have grown to the number of
+ * events pending at a time no more events are allocated.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class EventPool {
+    /**
+     * Stack of free events of one type.
+     */
+    private static final class FreeList {
+	Event[] events = new Event[16];
+	int size = 0;
+
+	Event pop () {
+	    return size == 0 ? null : events[--size];
+	}
+
+	void push (Event event) {
+	    if (size == events.length) {
+		Event[] new_events = new Event[2 * size];
+		System.arraycopy(events, 0, new_events, 0, size);
+		events = new_events;
+	    }
+	    events[size++] = event;
+	}
+    }
+
+    private FreeList arrivals, transmissions, drops, transitions;
+    private long allocated_events;
+
+    /**
+     * Creates a new empty event pool.
+     */
+    public EventPool () {
+	arrivals = new FreeList();
+	transmissions = new FreeList();
+	drops = new FreeList();
+	transitions = new FreeList();
+	allocated_events = 0;
+    }
+
+    /**
+     * Returns the number of events allocated by this pool so far.
+     *
+     * @return the number of events allocated
+     */
+    public long getAllocatedEvents () {
+	return allocated_events;
+    }
+
+    /**
+     * Returns a packet arrival event handled by the node handlePacketArrivalEvent method.
+     *
+     * @param t    instant at which the new packet arrives
+     * @param node node that receives the new packet
+     * @param ue   UE whose traffic flow receives the new packet
+     * @return a new or recycled PacketArrivalEvent
+     */
+    public PacketArrivalEvent newPacketArrivalEvent (double t, LteNode node, int ue) {
+	PacketArrivalEvent event = (PacketArrivalEvent) arrivals.pop();
+	if (event == null) {
+	    event = new PacketArrivalEvent(t, node, ue);
+	    event.pool = this;
+	    allocated_events++;
+	} else {
+	    event.reset(t, node, ue);
+	}
+	return event;
+    }
+
+    /**
+     * Returns a packet transmission event handled by the node handlePacketTransmissionEvent method.
+     *
+     * @param t    instant at which the node ends packet transmission
+     * @param node node that transmits the packet
+     * @param ue   UE whose traffic flow transmits the packet
+     * @param pid  identifier of the packet transmitted
+     * @return a new or recycled PacketTransmissionEvent
+     */
+    public PacketTransmissionEvent newPacketTransmissionEvent (double t, LteNode node, int ue, int pid) {
+	PacketTransmissionEvent event = (PacketTransmissionEvent) transmissions.pop();
+	if (event == null) {
+	    event = new PacketTransmissionEvent(t, node, ue, pid);
+	    event.pool = this;
+	    allocated_events++;
+	} else {
+	    event.reset(t, node, ue, pid);
+	}
+	return event;
+    }
+
+    /**
+     * Returns a packet drop event handled by the node handlePacketDropEvent method.
+     *
+     * @param t    instant at which the packet is dropped
+     * @param node node that drops the packet
+     * @param ue   UE whose traffic flow drops the packet
+     * @return a new or recycled PacketDropEvent
+     */
+    public PacketDropEvent newPacketDropEvent (double t, LteNode node, int ue) {
+	PacketDropEvent event = (PacketDropEvent) drops.pop();
+	if (event == null) {
+	    event = new PacketDropEvent(t, node, ue);
+	    event.pool = this;
+	    allocated_events++;
+	} else {
+	    event.reset(t, node, ue);
+	}
+	return event;
+    }
+
+    /**
+     * Returns a state transition event handled by the UE handleStateTransitionEvent method.
+     *
+     * @param t     instant at which the UE changes its state
+     * @param node  UE node that handles the state transition
+     * @param ue    UE that changes its state
+     * @param state new state of the UE
+     * @return a new or recycled StateTransitionEvent
+     */
+    public StateTransitionEvent newStateTransitionEvent (double t, UE node, int ue, UEState state) {
+	StateTransitionEvent event = (StateTransitionEvent) transitions.pop();
+	if (event == null) {
+	    event = new StateTransitionEvent(t, node, ue, state);
+	    event.pool = this;
+	    allocated_events++;
+	} else {
+	    event.reset(t, node, ue, state);
+	}
+	return event;
+    }
+
+    /**
+     * Returns the specified event to the pool.
+     *
+     * @param event the PacketArrivalEvent to be recycled
+     */
+    public void release (PacketArrivalEvent event) {
+	arrivals.push(event);
+    }
+
+    /**
+     * Returns the specified event to the pool.
+     *
+     * @param event the PacketTransmissionEvent to be recycled
+     */
+    public void release (PacketTransmissionEvent event) {
+	transmissions.push(event);
+    }
+
+    /**
+     * Returns the specified event to the pool.
+     *
+     * @param event the PacketDropEvent to be recycled
+     */
+    public void release (PacketDropEvent event) {
+	drops.push(event);
+    }
+
+    /**
+     * Returns the specified event to the pool.
+     *
+     * @param event the StateTransitionEvent to be recycled
+     */
+    public void release (StateTransitionEvent event) {
+	transitions.push(event);
+    }
+}
@@ -0,0 +1,99 @@
+package es.uvigo.det.labredes.lte;
+
+import java.util.Random;
+
+/**
+ * This class samples the standard exponential distribution (mean 1) with the ziggurat method of
+ * Marsaglia and Tsang, using 256 layers. Most samples only take one random long, one table lookup and
+ * one multiplication; logarithms and exponentials are only evaluated for the 1.1% of the samples that
+ * fall at the edge of a layer or in the tail.
+ * The layer index and the sample are taken from disjoint bits of each random long, so they are independent.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public final class ExponentialSampler {
+    private static final int LAYERS = 256;
+    /* Start of the tail of the base layer and area of each layer */
+    private static final double R = 7.697117470131487;
+    private static final double V = 3.949659822581572e-3;
+    /* Scale of the 53 random bits of each sample */
+    private static final double M = 0x1p53;
+
+    /* Samples of layer i below K[i] (in units of W[i]) are accepted straight away */
+    private static final long[] K = new long[LAYERS];
+    private static final double[] W = new double[LAYERS];
+    /* Density at the top of each layer */
+    private static final double[] F = new double[LAYERS];
+
+    static {
+	double de = R, te = R;
+	double q = V / Math.exp(-de);
+	K[0] = (long) ((de / q) * M);
+	K[1] = 0;
+	W[0] = q / M;
+	W[LAYERS - 1] = de / M;
+	F[0] = 1.0;
+	F[LAYERS - 1] = Math.exp(-de);
+	for (int i = LAYERS - 2; i >= 1; i--) {
+	    de = -Math.log(V / de + Math.exp(-de));
+	    K[i + 1] = (long) ((de / te) * M);
+	    te = de;
+	    F[i] = Math.exp(-de);
+	    W[i] = de / M;
+	}
+    }
+
+    private ExponentialSampler () {}
+
+    /**
+     * Returns a sample of the standard exponential distribution.
+     *
+     * @param rng the random number generator
+     * @return an exponentially distributed value with mean 1
+     */
+    public static double next (Random rng) {
+	long r = rng.nextLong();
+	int i = (int) r & (LAYERS - 1);
+	long u = r >>> 11;
+	if (u < K[i]) {
+	    return u * W[i];
+	}
+	return nextSlow(rng, i, u);
+    }
+
+    /* Handles the samples that fall out of the rectangular part of their layer */
+    private static double nextSlow (Random rng, int i, long u) {
+	while (true) {
+	    if (i == 0) {
+		// Tail of the distribution beyond R, sampled by inversion
+		return R - Math.log(1.0 - rng.nextDouble());
+	    }
+	    double x = u * W[i];
+	    if (F[i] + rng.nextDouble() * (F[i - 1] - F[i]) < Math.exp(-x)) {
+		return x;
+	    }
+	    long r = rng.nextLong();
+	    i = (int) r & (LAYERS - 1);
+	    u = r >>> 11;
+	    if (u < K[i]) {
+		return u * W[i];
+	    }
+	}
+    }
+
+    /**
+     * Fills the specified array with samples of the standard exponential distribution.
+     *
+     * @param rng     the random number generator
+     * @param samples the array to be filled
+     */
+    public static void fill (Random rng, double[] samples) {
+	for (int k = 0; k < samples.length; k++) {
+	    long r = rng.nextLong();
+	    int i = (int) r & (LAYERS - 1);
+	    long u = r >>> 11;
+	    samples[k] = u < K[i] ? u * W[i] : nextSlow(rng, i, u);
+	}
+    }
+}
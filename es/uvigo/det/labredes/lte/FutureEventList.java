@@ -0,0 +1,123 @@
+package es.uvigo.det.labredes.lte;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * This class defines the priority queue that stores the pending events of an event list.
+ * Events are ordered by event time and, for simultaneous events, by insertion order.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+abstract public class FutureEventList {
+    /**
+     * Names of the available future event list implementations.
+     */
+    public static final String[] TYPES = {"list", "heap", "pairing", "calendar"};
+
+    /**
+     * Creates a new future event list of the specified type.
+     *
+     * @param type the name of the implementation (list, heap, pairing or calendar)
+     * @return a new empty future event list or null if the type is unknown
+     */
+    public static FutureEventList create (String type) {
+	if (type.equals("list")) {
+	    return new SortedListFutureEventList();
+	} else if (type.equals("heap")) {
+	    return new BinaryHeapFutureEventList();
+	} else if (type.equals("pairing")) {
+	    return new PairingHeapFutureEventList();
+	} else if (type.equals("calendar")) {
+	    return new CalendarQueueFutureEventList();
+	}
+	return null;
+    }
+
+    /**
+     * Returns true if the first event must be handled before the second one.
+     *
+     * @param e1 the first Event
+     * @param e2 the second Event
+     * @return true if e1 has a lower ordering key (tick and priority) than e2, or the same key and e1 was added first
+     */
+    public static boolean precedes (Event e1, Event e2) {
+	return e1.key < e2.key || (e1.key == e2.key && e1.sequence < e2.sequence);
+    }
+
+    /**
+     * Adds the specified event to the future event list.
+     *
+     * @param event the Event to be added
+     */
+    abstract public void add (Event event);
+
+    /**
+     * Returns the earliest event without removing it.
+     *
+     * @return the earliest event or null if the future event list is empty
+     */
+    abstract public Event peek ();
+
+    /**
+     * Removes and returns the earliest event.
+     *
+     * @return the earliest event or null if the future event list is empty
+     */
+    abstract public Event poll ();
+
+    /**
+     * Removes the specified pending event, which must have been added to this future event list.
+     * By default the event is not removed and stays as a tombstone until it reaches the head
+     * of the list, where the event list discards it. Implementations that can locate the
+     * event efficiently override this method.
+     *
+     * @param event the pending Event to be removed
+     * @return true if the event has been removed from the future event list
+     */
+    public boolean cancel (Event event) {
+	return false;
+    }
+
+    /**
+     * Returns the number of pending events.
+     *
+     * @return the number of pending events
+     */
+    abstract public int size ();
+
+    /**
+     * Appends all the pending events, in any order, to the specified list.
+     *
+     * @param events the list where events are appended
+     */
+    abstract protected void collect (List<Event> events);
+
+    /**
+     * Returns a list with all the pending events sorted by handling order.
+     *
+     * @return the sorted list of pending events
+     */
+    public List<Event> getEvents () {
+	List<Event> events = new ArrayList<Event>(size());
+	collect(events);
+	sort(events);
+	return events;
+    }
+
+    /**
+     * Sorts the specified events by handling order.
+     *
+     * @param events the list of events to be sorted
+     */
+    public static void sort (List<Event> events) {
+	Collections.sort(events, new Comparator<Event>() {
+		public int compare (Event e1, Event e2) {
+		    return precedes(e1, e2) ? -1 : (precedes(e2, e1) ? 1 : 0);
+		}
+	    });
+    }
+}
@@ -1,78 +1,180 @@
 package es.uvigo.det.labredes.lte;
 
+import java.io.*;
+
 /**
  * This class simulates a node (eNB or UE) of the LTE network.
+ * A node handles one traffic flow per UE attached to the eNB. The state of each flow is
+ * stored in arrays indexed by UE number.
  *
  * @author Sergio Herreria-Alonso 
  * @version 1.0
  */
 abstract public class LteNode {
     /**
-     * The traffic generator.
+     * The simulation the node belongs to.
+     */
+    public Simulation simulation;
+    /**
+     * The simulation parameters.
+     */
+    protected SimulationConfig config;
+    /**
+     * The event handler of the simulation.
+     */
+    protected EventList event_handler;
+    /**
+     * The pool new events are taken from.
+     */
+    protected EventPool event_pool;
+    /**
+     * The number of UEs (traffic flows) handled by the node.
+     */
+    public int num_ues;
+    /**
+     * The traffic generator of each UE.
      */
-    public TrafficGenerator trgen;
+    public TrafficGenerator[] trgen;
     /**
-     * The transmission queue.
+     * The transmission queue of each UE (created on first use).
      */
-    public EventList queue;
+    public PacketQueue[] queue;
     /**
-     * The amount of packets stored in the transmission queue.
+     * The amount of packets stored in the transmission queue of each UE.
      */
-    public int qsize;
+    public int[] qsize;
     /**
-     * The maximum amount of packets that can be stored in the transmission queue.
+     * The maximum amount of packets that can be stored in each transmission queue.
      */
     public int max_qsize;
 
-    // Statistics variables
-    public int packets_received, packets_sent, packets_dropped;
-    public double sum_packets_delay, maximum_packet_delay, current_packet_delay;
-    public double prev_arrival_time, avg_arrival_rate;
+    // Statistics variables (per UE)
+    public int[] packets_received, packets_sent, packets_dropped;
+    public double[] sum_packets_delay, maximum_packet_delay;
+    public double[] prev_arrival_time, avg_arrival_rate;
+    /**
+     * The instant at which the next packet of each UE arrives (in clock ticks).
+     */
+    public long[] next_arrival_tick;
+    /**
+     * The delay of the last packet transmitted.
+     */
+    public double current_packet_delay;
+    /**
+     * The histogram of the delays of the packets transmitted (aggregated over all the UEs).
+     */
+    public DelayHistogram delay_histogram;
 
     /**
-     * Creates a new node.
+     * Creates a new node with a single UE.
      * The traffic is simulated with the specified traffic generator.
      *
-     * @param tg the traffic generator
+     * @param sim the simulation the node belongs to
+     * @param tg  the traffic generator
+     */
+    public LteNode (Simulation sim, TrafficGenerator tg) {
+	this(sim, new TrafficGenerator[] {tg});
+    }
+
+    /**
+     * Creates a new node with one UE per traffic generator.
+     * The traffic of UE i is simulated with the traffic generator tg[i].
+     *
+     * @param sim the simulation the node belongs to
+     * @param tg  the traffic generators
      */
-    public LteNode (TrafficGenerator tg) {
+    public LteNode (Simulation sim, TrafficGenerator[] tg) {
+	simulation = sim;
+	config = sim.config;
+	event_handler = sim.event_handler;
+	event_pool = sim.event_pool;
+	num_ues = tg.length;
 	trgen = tg;
-        queue = new EventList(LteSimulator.simul_length);
-        qsize = max_qsize = 0;
+	queue = new PacketQueue[num_ues];
+	qsize = new int[num_ues];
+	max_qsize = 0;
+
+	packets_received = new int[num_ues];
+	packets_sent = new int[num_ues];
+	packets_dropped = new int[num_ues];
+	sum_packets_delay = new double[num_ues];
+	maximum_packet_delay = new double[num_ues];
+	prev_arrival_time = new double[num_ues];
+	avg_arrival_rate = new double[num_ues];
+	next_arrival_tick = new long[num_ues];
+	current_packet_delay = 0.0;
+	delay_histogram = new DelayHistogram();
 
-	packets_received = packets_sent = packets_dropped = 0;
-	sum_packets_delay = maximum_packet_delay = current_packet_delay = 0.0;
-	prev_arrival_time = avg_arrival_rate = 0.0;
+	for (int ue = 0; ue < num_ues; ue++) {
+	    scheduleNextArrival(ue);
+	}
+    }
 
-	LteSimulator.event_handler.addEvent(new PacketArrivalEvent (trgen.getNextArrival(), this, "handlePacketArrivalEvent"));
+    /**
+     * Returns the label that identifies the specified UE flow of this node in the simulator output.
+     *
+     * @param ue the UE number
+     * @return ENB or UE, followed by the UE number if the node handles several UEs
+     */
+    public String getLabel (int ue) {
+	String class_node = this instanceof ENB ? "ENB" : "UE";
+	return num_ues > 1 ? class_node + "[" + ue + "]" : class_node;
     }
 
     /**
      * Handles the specified packet arrival event.
+     * A packet forwarded from another cell keeps its original arrival time, and it was already counted as
+     * received by its original node, so it does not update the arrival statistics or trigger the next arrival.
      *
      * @param event the PacketArrivalEvent to be handled
      */
     public void handlePacketArrivalEvent (PacketArrivalEvent event) {
-	packets_received++;
-        if (max_qsize == 0 || qsize + 1 <= max_qsize) {
-            qsize++;
-	    double interarrival_time = event.time - prev_arrival_time;
-	    if (avg_arrival_rate > 0) {
-		avg_arrival_rate = 1.0 / interarrival_time + 
-		    Math.exp(-0.5 * interarrival_time / LteSimulator.delay_threshold / LteSimulator.lte_psf) * 
-		    (avg_arrival_rate - 1.0 / interarrival_time);
+	int ue = event.ue;
+	if (!Double.isNaN(event.forwarded_time)) {
+	    if (max_qsize == 0 || qsize[ue] + 1 <= max_qsize) {
+		qsize[ue]++;
+		if (queue[ue] == null) {
+		    queue[ue] = new PacketQueue(config.queue_offheap_threshold);
+		}
+		queue[ue].add(event.packet_id, event.forwarded_time);
+	    } else {
+		event_handler.addEvent(event_pool.newPacketDropEvent(event.time, this, ue));
+	    }
+	    return;
+	}
+	packets_received[ue]++;
+	if (max_qsize == 0 || qsize[ue] + 1 <= max_qsize) {
+	    qsize[ue]++;
+	    double interarrival_time = event.time - prev_arrival_time[ue];
+	    if (avg_arrival_rate[ue] > 0) {
+		avg_arrival_rate[ue] = 1.0 / interarrival_time + 
+		    Math.exp(-0.5 * interarrival_time / config.delay_threshold / config.lte_psf) * 
+		    (avg_arrival_rate[ue] - 1.0 / interarrival_time);
 	    } else {
-		avg_arrival_rate = 1.0 / interarrival_time;
+		avg_arrival_rate[ue] = 1.0 / interarrival_time;
+	    }
+	    prev_arrival_time[ue] = event.time;
+	    if (queue[ue] == null) {
+		queue[ue] = new PacketQueue(config.queue_offheap_threshold);
+	    }
+	    queue[ue].add(event.packet_id, event.time);
+	    if (simulation.sampler != null) {
+		simulation.sampler.packetQueued(this, event.tick);
+	    }
+	    if (simulation.trace != null) {
+		simulation.trace.write(event);
 	    }
-	    prev_arrival_time = event.time;
-            queue.addEvent(event);
-            if (LteSimulator.simul_verbose) {
-                event.print();
-            }
-        } else {
-            LteSimulator.event_handler.addEvent(new PacketDropEvent (event.time, this, "handlePacketDropEvent"));
-        }
-        LteSimulator.event_handler.addEvent(new PacketArrivalEvent (trgen.getNextArrival(), this, "handlePacketArrivalEvent"));
+	} else {
+	    event_handler.addEvent(event_pool.newPacketDropEvent(event.time, this, ue));
+	}
+	scheduleNextArrival(ue);
+    }
+
+    /* Schedules the next packet arrival of the UE */
+    private void scheduleNextArrival (int ue) {
+	double t = trgen[ue].getNextArrival();
+	next_arrival_tick[ue] = Event.toTick(t);
+	event_handler.addEvent(event_pool.newPacketArrivalEvent(t, this, ue));
     }
 
     /**
@@ -81,10 +183,13 @@ abstract public class LteNode {
      * @param event the PacketDropEvent to be handled
      */
     public void handlePacketDropEvent (PacketDropEvent event) {
-        packets_dropped++;
-        if (LteSimulator.simul_verbose) {
-            event.print();
-        }
+	packets_dropped[event.ue]++;
+	if (simulation.sampler != null) {
+	    simulation.sampler.packetDropped(this);
+	}
+	if (simulation.trace != null) {
+	    simulation.trace.write(event);
+	}
     }
 
     /**
@@ -93,34 +198,155 @@ abstract public class LteNode {
      * @param event the PacketTransmissionEvent to be handled
      */
     public void handlePacketTransmissionEvent (PacketTransmissionEvent event) {
-        if (qsize == 0 || ((PacketArrivalEvent) (queue.getNextEvent(false))).packet_id != event.packet_id) {
+	int ue = event.ue;
+	if (qsize[ue] == 0 || queue[ue].peekPacketId() != event.packet_id) {
+	    if (simulation.trace != null) {
+		simulation.trace.flush();
+	    }
 	    event.print();
-            LteSimulator.printError("Trying to handle an invalid packet transmission!");
-        }
-	qsize--;
-        packets_sent++;
-        current_packet_delay = event.time - queue.getNextEvent(true).time - LteSimulator.lte_psf;
-        if (current_packet_delay > maximum_packet_delay) {
-            maximum_packet_delay = current_packet_delay;
-        }
-        sum_packets_delay += current_packet_delay;
-	if (LteSimulator.simul_verbose) {
-            event.print();
-        }
-	if (qsize > 0) {
-	    int pid = ((PacketArrivalEvent) (queue.getNextEvent(false))).packet_id;
-            LteSimulator.event_handler.addEvent(new PacketTransmissionEvent (event.time + LteSimulator.lte_psf, this, "handlePacketTransmissionEvent", pid));
+	    throw new SimulationException("Trying to handle an invalid packet transmission!");
+	}
+	qsize[ue]--;
+	packets_sent[ue]++;
+	current_packet_delay = event.time - queue[ue].peekArrivalTime() - config.lte_psf;
+	queue[ue].remove();
+	if (current_packet_delay > maximum_packet_delay[ue]) {
+	    maximum_packet_delay[ue] = current_packet_delay;
+	}
+	sum_packets_delay[ue] += current_packet_delay;
+	delay_histogram.record(current_packet_delay);
+	if (simulation.sampler != null) {
+	    simulation.sampler.packetSent(this, event.tick, current_packet_delay);
+	}
+	if (simulation.trace != null) {
+	    simulation.trace.write(event);
+	}
+	if (qsize[ue] > 0) {
+	    int pid = queue[ue].peekPacketId();
+	    event_handler.addEvent(event_pool.newPacketTransmissionEvent(event.time + config.lte_psf, this, ue, pid));
 	}
     }
 
     /**
-     * Prints on standard output some statistics.
+     * Removes the packets queued for the specified UE, so that they are forwarded to another cell when the UE hands over.
+     * The head-of-line packet is kept if it is being transmitted.
+     *
+     * @param ue the UE number
+     * @return the arrival times of the removed packets, in queue order
      */
-    public void printStatistics () {
-	String class_node = this instanceof ENB ? "ENB" : "UE";
-        System.out.format("%s packets: received %d sent %d dropped %d %n", class_node, packets_received, packets_sent, packets_dropped);
-        if (packets_sent > 0) {
-            System.out.format("%s packet delay: average %.9f max %.9f %n", class_node, sum_packets_delay / packets_sent, maximum_packet_delay);
-        }
+    public double[] forwardPackets (int ue) {
+	int kept = isTransmitting(ue) ? 1 : 0;
+	if (qsize[ue] <= kept) {
+	    return new double[0];
+	}
+	double[] arrival_times = new double[qsize[ue] - kept];
+	for (int k = kept; k < qsize[ue]; k++) {
+	    arrival_times[k - kept] = queue[ue].peekArrivalTime(k);
+	}
+	queue[ue].truncate(kept);
+	qsize[ue] = kept;
+	return arrival_times;
+    }
+
+    /**
+     * Returns true if the node is transmitting the head-of-line packet of the specified UE.
+     *
+     * @param ue the UE number
+     * @return true if the head-of-line packet is being transmitted
+     */
+    abstract protected boolean isTransmitting (int ue);
+
+    /**
+     * Returns the packet statistics of the node aggregated over all the UEs.
+     *
+     * @return the node statistics
+     */
+    public SimulationResult.NodeResult getStatistics () {
+	SimulationResult.NodeResult result = new SimulationResult.NodeResult();
+	result.label = this instanceof ENB ? "ENB" : "UE";
+	for (int ue = 0; ue < num_ues; ue++) {
+	    result.packets_received += packets_received[ue];
+	    result.packets_sent += packets_sent[ue];
+	    result.packets_dropped += packets_dropped[ue];
+	    result.sum_packets_delay += sum_packets_delay[ue];
+	    if (maximum_packet_delay[ue] > result.maximum_packet_delay) {
+		result.maximum_packet_delay = maximum_packet_delay[ue];
+	    }
+	}
+	result.delay_histogram = delay_histogram.copy();
+	return result;
+    }
+
+    /**
+     * Discards the packet statistics collected so far (e.g. at the end of the warm-up period).
+     * Packets already queued are counted as sent, but not as received, once they are transmitted.
+     *
+     * @param now current simulation time
+     */
+    public void resetStatistics (double now) {
+	for (int ue = 0; ue < num_ues; ue++) {
+	    packets_received[ue] = packets_sent[ue] = packets_dropped[ue] = 0;
+	    sum_packets_delay[ue] = maximum_packet_delay[ue] = 0.0;
+	}
+	delay_histogram.reset();
+    }
+
+    /**
+     * Writes the state of the node (traffic generators, queues and statistics) to the specified checkpoint stream.
+     *
+     * @param out the checkpoint stream
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeState (ObjectOutput out) throws IOException {
+	for (int ue = 0; ue < num_ues; ue++) {
+	    trgen[ue].writeState(out);
+	    int size = queue[ue] == null ? -1 : queue[ue].size();
+	    out.writeInt(size);
+	    for (int k = 0; k < size; k++) {
+		out.writeInt(queue[ue].peekPacketId(k));
+		out.writeDouble(queue[ue].peekArrivalTime(k));
+	    }
+	}
+	out.writeObject(qsize);
+	out.writeInt(max_qsize);
+	out.writeObject(packets_received);
+	out.writeObject(packets_sent);
+	out.writeObject(packets_dropped);
+	out.writeObject(sum_packets_delay);
+	out.writeObject(maximum_packet_delay);
+	out.writeObject(prev_arrival_time);
+	out.writeObject(avg_arrival_rate);
+	out.writeObject(next_arrival_tick);
+	out.writeDouble(current_packet_delay);
+	delay_histogram.writeState(out);
+    }
+
+    /**
+     * Replaces the state of the node with the one read from the specified checkpoint stream.
+     *
+     * @param in the checkpoint stream
+     * @throws IOException if the stream cannot be read or is corrupted
+     */
+    public void readState (ObjectInput in) throws IOException {
+	for (int ue = 0; ue < num_ues; ue++) {
+	    trgen[ue].readState(in);
+	    int size = in.readInt();
+	    queue[ue] = size < 0 ? null : new PacketQueue(config.queue_offheap_threshold);
+	    for (int k = 0; k < size; k++) {
+		queue[ue].add(in.readInt(), in.readDouble());
+	    }
+	}
+	qsize = (int[]) Checkpoint.readObject(in);
+	max_qsize = in.readInt();
+	packets_received = (int[]) Checkpoint.readObject(in);
+	packets_sent = (int[]) Checkpoint.readObject(in);
+	packets_dropped = (int[]) Checkpoint.readObject(in);
+	sum_packets_delay = (double[]) Checkpoint.readObject(in);
+	maximum_packet_delay = (double[]) Checkpoint.readObject(in);
+	prev_arrival_time = (double[]) Checkpoint.readObject(in);
+	avg_arrival_rate = (double[]) Checkpoint.readObject(in);
+	next_arrival_tick = (long[]) Checkpoint.readObject(in);
+	current_packet_delay = in.readDouble();
+	delay_histogram.readState(in);
     }
 }
@@ -0,0 +1,383 @@
+package es.uvigo.det.labredes.lte;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class aggregates the evolution of the simulation into fixed windows of simulated time
+ * (e.g. every 100 ms) and writes one row of metrics per window, either as CSV (packet counts and, with a single UE, the
+ * queue threshold as integers, and the other metrics with 9 decimals) or in a binary columnar format.
+ * Metrics are accumulated incrementally as events are handled, in preallocated primitive arrays, and rows
+ * are written in blocks of BLOCK_ROWS windows, so memory stays constant however long the simulation runs.
+ * <p>
+ * For each node (eNB and UE) a row includes the packets that arrived, were sent and were dropped in the window,
+ * their average delay, the time-weighted average and the maximum number of packets queued at the node (over all
+ * the UEs), and the average arrival rate estimate at the end of the window (averaged over the UEs). A row also
+ * includes the DRX queue threshold of the eNB at the end of the window and the fraction of time spent by the UEs
+ * in each state during the window.
+ * <p>
+ * The binary format starts with a header (the 8 ASCII bytes LTEMETRC, the format version and the number of
+ * columns, as little-endian 32-bit integers, and the name of each column, as a 16-bit length followed by ASCII
+ * characters) followed by blocks of rows. Each block is the number of rows (32-bit integer) followed by the
+ * values of each column in turn (little-endian doubles).
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class MetricsSampler {
+    /* Binary format */
+    public static final byte[] MAGIC = {'L', 'T', 'E', 'M', 'E', 'T', 'R', 'C'};
+    public static final int VERSION = 1;
+    /**
+     * Number of windows written at once.
+     */
+    public static final int BLOCK_ROWS = 256;
+    /* Longest CSV row */
+    private static final int MAX_LINE_SIZE = 64 * 32;
+
+    private static final UEState[] STATES = UEState.values();
+    private static final String[] NODE_COLUMNS = {"arrivals", "sent", "dropped", "avg_delay", "avg_queued", "max_queued", "avg_arrival_rate"};
+    private static final int NODE_ENB = TraceWriter.NODE_ENB;
+    private static final int NODE_UE = TraceWriter.NODE_UE;
+    /* Column indexes */
+    private static final int COL_START = 0, COL_END = 1, COL_NODE = 2;
+    private static final int COL_QUEUE_THRESHOLD = COL_NODE + 2 * NODE_COLUMNS.length;
+    private static final int COL_STATES = COL_QUEUE_THRESHOLD + 1;
+    /**
+     * Names of the columns.
+     */
+    public static final String[] COLUMNS = new String[COL_STATES + STATES.length];
+    static {
+	COLUMNS[COL_START] = "window_start";
+	COLUMNS[COL_END] = "window_end";
+	for (int i = 0; i < NODE_COLUMNS.length; i++) {
+	    COLUMNS[COL_NODE + i] = "enb_" + NODE_COLUMNS[i];
+	    COLUMNS[COL_NODE + NODE_COLUMNS.length + i] = "ue_" + NODE_COLUMNS[i];
+	}
+	COLUMNS[COL_QUEUE_THRESHOLD] = "enb_queue_threshold";
+	for (UEState state : STATES) {
+	    COLUMNS[COL_STATES + state.ordinal()] = "state_" + state;
+	}
+    }
+
+    private final WritableByteChannel channel;
+    private final boolean close_channel;
+    private final boolean binary;
+    private final long window_ticks;
+    private final ENB enb;
+    private final UE ue;
+    private final int num_ues;
+    /* Columns written as integers in CSV format */
+    private final boolean[] count_columns;
+
+    // Current window
+    private long window_start, window_end;
+    private final long[] arrivals, sent, dropped;
+    private final double[] sum_delay;
+    /* Packets queued at each node, and their integral over time since the beginning of the window */
+    private final long[] queued, max_queued;
+    private final double[] queued_integral;
+    private final long[] queued_update;
+    /* UEs in each state, and their integral over time since the beginning of the window */
+    private final int[] ues_in_state;
+    private final double[] state_integral;
+    private final long[] state_update;
+
+    // Completed windows not written yet
+    private final double[][] block;
+    private int block_rows;
+    private final ByteBuffer buffer;
+    private boolean closed;
+
+    /**
+     * Creates a new sampler of the specified simulation that writes to the specified channel.
+     * The sampler must be created before the simulation is run.
+     *
+     * @param sim          the simulation
+     * @param ch           the output channel
+     * @param close        if true the channel is closed when the sampler is closed
+     * @param binary_format if true rows are written in binary format, otherwise as CSV
+     * @param window       the window length (in seconds)
+     * @throws SimulationException if the window length is not positive or the header cannot be written
+     */
+    public MetricsSampler (Simulation sim, WritableByteChannel ch, boolean close, boolean binary_format, double window) {
+	channel = ch;
+	close_channel = close;
+	binary = binary_format;
+	window_ticks = Event.toTick(window);
+	if (window_ticks <= 0) {
+	    throw new SimulationException("Invalid metrics window length!");
+	}
+	enb = sim.getENB();
+	ue = sim.getUE();
+	num_ues = ue.num_ues;
+	count_columns = new boolean[COLUMNS.length];
+	for (int n = 0; n < 2; n++) {
+	    int col = COL_NODE + n * NODE_COLUMNS.length;
+	    count_columns[col] = count_columns[col + 1] = count_columns[col + 2] = count_columns[col + 5] = true;
+	}
+	// With several UEs, the queue threshold is an average
+	count_columns[COL_QUEUE_THRESHOLD] = num_ues == 1;
+
+	window_start = 0;
+	window_end = window_ticks;
+	arrivals = new long[2];
+	sent = new long[2];
+	dropped = new long[2];
+	sum_delay = new double[2];
+	queued = new long[2];
+	max_queued = new long[2];
+	queued_integral = new double[2];
+	queued_update = new long[2];
+	ues_in_state = new int[STATES.length];
+	state_integral = new double[STATES.length];
+	state_update = new long[STATES.length];
+	for (int i = 0; i < num_ues; i++) {
+	    ues_in_state[ue.getState(i).ordinal()]++;
+	}
+
+	block = new double[COLUMNS.length][BLOCK_ROWS];
+	block_rows = 0;
+	buffer = ByteBuffer.allocateDirect(binary ? 4 + 8 * COLUMNS.length * BLOCK_ROWS : 1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+	closed = false;
+	writeHeader();
+    }
+
+    /**
+     * Opens a new sampler of the specified simulation that writes to the specified file.
+     *
+     * @param sim           the simulation
+     * @param filename      name of the metrics file
+     * @param binary_format if true rows are written in binary format, otherwise as CSV
+     * @param window        the window length (in seconds)
+     * @return the new sampler
+     * @throws SimulationException if the metrics file cannot be opened
+     */
+    public static MetricsSampler open (Simulation sim, String filename, boolean binary_format, double window) {
+	FileChannel ch;
+	try {
+	    ch = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	} catch (IOException e) {
+	    throw new SimulationException("Cannot open metrics file: " + filename);
+	}
+	return new MetricsSampler(sim, ch, true, binary_format, window);
+    }
+
+    /**
+     * Completes all the windows that end before or at the specified instant.
+     * It must be called before handling each event.
+     *
+     * @param tick the current simulation time (in clock ticks)
+     */
+    public void advance (long tick) {
+	while (tick >= window_end) {
+	    completeWindow(window_end);
+	}
+    }
+
+    /**
+     * Records a packet stored in the queue of the specified node.
+     *
+     * @param node the node
+     * @param tick the current simulation time (in clock ticks)
+     */
+    public void packetQueued (LteNode node, long tick) {
+	int n = node == enb ? NODE_ENB : NODE_UE;
+	arrivals[n]++;
+	updateQueued(n, tick, 1);
+    }
+
+    /**
+     * Records a packet sent by the specified node.
+     *
+     * @param node  the node
+     * @param tick  the current simulation time (in clock ticks)
+     * @param delay the packet delay (in seconds)
+     */
+    public void packetSent (LteNode node, long tick, double delay) {
+	int n = node == enb ? NODE_ENB : NODE_UE;
+	sent[n]++;
+	sum_delay[n] += delay;
+	updateQueued(n, tick, -1);
+    }
+
+    /**
+     * Records a packet dropped by the specified node.
+     *
+     * @param node the node
+     */
+    public void packetDropped (LteNode node) {
+	dropped[node == enb ? NODE_ENB : NODE_UE]++;
+    }
+
+    /**
+     * Records a state transition of a UE.
+     *
+     * @param tick      the current simulation time (in clock ticks)
+     * @param old_state the state of the UE before the transition
+     * @param new_state the state of the UE after the transition
+     */
+    public void stateChanged (long tick, UEState old_state, UEState new_state) {
+	updateState(old_state.ordinal(), tick, -1);
+	updateState(new_state.ordinal(), tick, 1);
+    }
+
+    /**
+     * Completes the last window, ending at the specified instant, and writes all the pending windows.
+     *
+     * @param tick the end of the simulation (in clock ticks)
+     * @throws SimulationException if the metrics cannot be written
+     */
+    public void close (long tick) {
+	if (closed) {
+	    return;
+	}
+	closed = true;
+	advance(tick);
+	if (tick > window_start) {
+	    completeWindow(tick);
+	}
+	writeBlock();
+	try {
+	    if (close_channel) {
+		channel.close();
+	    }
+	} catch (IOException e) {
+	    throw new SimulationException("Error while writing metrics: " + e.getMessage());
+	}
+    }
+
+    private void updateQueued (int n, long tick, int delta) {
+	queued_integral[n] += (double) queued[n] * (tick - queued_update[n]);
+	queued_update[n] = tick;
+	queued[n] += delta;
+	if (queued[n] > max_queued[n]) {
+	    max_queued[n] = queued[n];
+	}
+    }
+
+    private void updateState (int s, long tick, int delta) {
+	state_integral[s] += (double) ues_in_state[s] * (tick - state_update[s]);
+	state_update[s] = tick;
+	ues_in_state[s] += delta;
+    }
+
+    /* Stores the row of the current window, ending at the specified instant, and starts the next window */
+    private void completeWindow (long end) {
+	double length = end - window_start;
+	int row = block_rows;
+	block[COL_START][row] = Event.toSeconds(window_start);
+	block[COL_END][row] = Event.toSeconds(end);
+	for (int n = 0; n < 2; n++) {
+	    LteNode node = n == NODE_ENB ? enb : ue;
+	    int col = COL_NODE + n * NODE_COLUMNS.length;
+	    updateQueued(n, end, 0);
+	    double avg_arrival_rate = 0.0;
+	    for (int i = 0; i < num_ues; i++) {
+		avg_arrival_rate += node.avg_arrival_rate[i];
+	    }
+	    block[col][row] = arrivals[n];
+	    block[col + 1][row] = sent[n];
+	    block[col + 2][row] = dropped[n];
+	    // Rounding errors may leave the sum of the delays slightly negative
+	    block[col + 3][row] = sent[n] > 0 ? Math.max(0.0, sum_delay[n] / sent[n]) : Double.NaN;
+	    block[col + 4][row] = queued_integral[n] / length;
+	    block[col + 5][row] = max_queued[n];
+	    block[col + 6][row] = avg_arrival_rate / num_ues;
+	    arrivals[n] = sent[n] = dropped[n] = 0;
+	    sum_delay[n] = queued_integral[n] = 0.0;
+	    max_queued[n] = queued[n];
+	}
+	double queue_threshold = 0.0;
+	for (int i = 0; i < num_ues; i++) {
+	    queue_threshold += enb.getQueueThreshold(i);
+	}
+	block[COL_QUEUE_THRESHOLD][row] = queue_threshold / num_ues;
+	for (int s = 0; s < STATES.length; s++) {
+	    updateState(s, end, 0);
+	    block[COL_STATES + s][row] = state_integral[s] / (length * num_ues);
+	    state_integral[s] = 0.0;
+	}
+	window_start = end;
+	window_end = end + window_ticks;
+	if (++block_rows == BLOCK_ROWS) {
+	    writeBlock();
+	}
+    }
+
+    private void writeHeader () {
+	if (binary) {
+	    buffer.put(MAGIC);
+	    buffer.putInt(VERSION);
+	    buffer.putInt(COLUMNS.length);
+	    for (String column : COLUMNS) {
+		byte[] name = column.getBytes(StandardCharsets.US_ASCII);
+		buffer.putShort((short) name.length);
+		buffer.put(name);
+	    }
+	} else {
+	    putText(String.join(",", COLUMNS));
+	    buffer.put((byte) '\n');
+	}
+	writeBuffer();
+    }
+
+    /* Writes the completed windows */
+    private void writeBlock () {
+	if (block_rows == 0) {
+	    return;
+	}
+	if (binary) {
+	    buffer.putInt(block_rows);
+	    for (int c = 0; c < COLUMNS.length; c++) {
+		for (int r = 0; r < block_rows; r++) {
+		    buffer.putDouble(block[c][r]);
+		}
+	    }
+	} else {
+	    for (int r = 0; r < block_rows; r++) {
+		if (buffer.remaining() < MAX_LINE_SIZE) {
+		    writeBuffer();
+		}
+		for (int c = 0; c < COLUMNS.length; c++) {
+		    if (c > 0) {
+			buffer.put((byte) ',');
+		    }
+		    double value = block[c][r];
+		    if (count_columns[c]) {
+			TraceWriter.putLong(buffer, (long) value);
+		    } else {
+			TraceWriter.putFixed(buffer, value, 9);
+		    }
+		}
+		buffer.put((byte) '\n');
+	    }
+	}
+	writeBuffer();
+	block_rows = 0;
+    }
+
+    private void putText (String text) {
+	for (int i = 0; i < text.length(); i++) {
+	    buffer.put((byte) text.charAt(i));
+	}
+    }
+
+    private void writeBuffer () {
+	buffer.flip();
+	try {
+	    while (buffer.hasRemaining()) {
+		channel.write(buffer);
+	    }
+	} catch (IOException e) {
+	    throw new SimulationException("Error while writing metrics: " + e.getMessage());
+	}
+	buffer.clear();
+    }
+}
@@ -0,0 +1,194 @@
+package es.uvigo.det.labredes.lte;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * This class implements a simulation of several cells, each one with its own eNB and UEs, whose UEs hand over
+ * between cells (see CellProcess). Each cell is a logical process with its own event list, and the cells are
+ * simulated concurrently by a fixed number of worker threads with a conservative windowed synchronization:
+ * no message can be sent before the earliest next handover of any cell, so every cell can safely handle all its
+ * actions up to that handover plus the handover delay (the lookahead). At the end of each window, the workers
+ * wait for each other and the messages sent during the window are delivered to their target cells.
+ * <p>
+ * Since each cell handles its actions in an order that does not depend on how the cells are scheduled, the results
+ * are exactly the same for any number of workers, and the same as those of the sequential simulation that handles
+ * the next action of all the cells one at a time (see runSequential).
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class MultiCellSimulation {
+    /**
+     * The simulation parameters.
+     */
+    public final SimulationConfig config;
+    /**
+     * The logical processes of the cells.
+     */
+    public final CellProcess[] cells;
+
+    private final long end_tick, lookahead_ticks;
+    /* End of the current window (in clock ticks) */
+    private long window_end;
+    /* Failure of a worker, if any */
+    private volatile RuntimeException failure;
+
+    /**
+     * Creates a new simulation of config.num_cells cells with the specified parameters.
+     *
+     * @param cfg the simulation parameters
+     * @throws SimulationException if the simulation cannot be set up or some parameter is not supported with several cells
+     */
+    public MultiCellSimulation (SimulationConfig cfg) {
+	config = cfg.copy();
+	if (config.simul_verbose || !config.metrics_output_file.isEmpty() || !config.checkpoint_file.isEmpty() || config.steady_state_precision > 0) {
+	    throw new SimulationException("Event traces, metrics, checkpoints and steady-state mode are not supported with several cells!");
+	}
+	cells = new CellProcess[config.num_cells];
+	for (int c = 0; c < cells.length; c++) {
+	    cells[c] = new CellProcess(config, c);
+	}
+	end_tick = Event.toTick(config.simul_length);
+	lookahead_ticks = Event.toTick(config.handover_delay);
+    }
+
+    /**
+     * Simulates the cells with the specified number of worker threads and returns the results aggregated over all the cells.
+     *
+     * @param workers the number of worker threads
+     * @return the simulation results
+     * @throws SimulationException if an invalid event is found
+     */
+    public SimulationResult run (int workers) {
+	final int num_workers = Math.max(1, Math.min(workers, cells.length));
+	window_end = nextWindowEnd();
+	// Once all the workers reach the end of the window, the messages are delivered and the next window begins
+	final CyclicBarrier barrier = new CyclicBarrier(num_workers, new Runnable() {
+		public void run () {
+		    for (CellProcess cell : cells) {
+			exchangeMessages(cell);
+		    }
+		    window_end = window_end > end_tick || failure != null ? Long.MAX_VALUE : nextWindowEnd();
+		}
+	    });
+	Thread[] threads = new Thread[num_workers];
+	for (int w = 0; w < num_workers; w++) {
+	    final int worker = w;
+	    threads[w] = new Thread(new Runnable() {
+		    public void run () {
+			try {
+			    while (window_end != Long.MAX_VALUE) {
+				// Each worker simulates the cells whose number modulo the number of workers is its own.
+				// A worker that fails keeps waiting at the barrier, so that the others stop at the end of the window
+				try {
+				    for (int c = worker; c < cells.length && failure == null; c += num_workers) {
+					cells[c].advance(window_end);
+				    }
+				} catch (RuntimeException e) {
+				    failure = e;
+				}
+				barrier.await();
+			    }
+			} catch (InterruptedException | BrokenBarrierException e) {
+			    failure = new SimulationException("Simulation interrupted!");
+			}
+		    }
+		}, "cell-worker-" + w);
+	    threads[w].start();
+	}
+	for (Thread thread : threads) {
+	    try {
+		thread.join();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		throw new SimulationException("Simulation interrupted!");
+	    }
+	}
+	if (failure != null) {
+	    throw failure;
+	}
+	return getResult();
+    }
+
+    /**
+     * Simulates the cells sequentially, handling the earliest next action of all the cells one at a time and
+     * delivering each message as soon as it is sent, and returns the results aggregated over all the cells.
+     * This is the reference against which the concurrent simulation (see run) can be checked.
+     *
+     * @return the simulation results
+     * @throws SimulationException if an invalid event is found
+     */
+    public SimulationResult runSequential () {
+	while (true) {
+	    int next_cell = -1;
+	    long next_tick = Long.MAX_VALUE;
+	    for (int c = 0; c < cells.length; c++) {
+		long tick = cells[c].getNextActionTick();
+		if (tick < next_tick) {
+		    next_tick = tick;
+		    next_cell = c;
+		}
+	    }
+	    if (next_cell < 0) {
+		break;
+	    }
+	    cells[next_cell].step();
+	    exchangeMessages(cells[next_cell]);
+	}
+	return getResult();
+    }
+
+    /* Returns the end of the next window: the earliest handover plus the lookahead, or the end of the simulation */
+    private long nextWindowEnd () {
+	long first_handover = Long.MAX_VALUE;
+	for (CellProcess cell : cells) {
+	    first_handover = Math.min(first_handover, cell.getNextHandoverTick());
+	}
+	return first_handover < end_tick ? Math.min(first_handover + lookahead_ticks, end_tick + 1) : end_tick + 1;
+    }
+
+    /* Delivers the messages sent by the specified cell to their target cells */
+    private void exchangeMessages (CellProcess cell) {
+	for (CellProcess.Message message : cell.takeSentMessages()) {
+	    cells[message.target].receive(message);
+	}
+    }
+
+    /**
+     * Returns the results of the simulation at its end time, aggregated over all the cells: packet statistics are
+     * added up, and the average DRX queue threshold, time in each state and energy per UE are averaged over the cells.
+     *
+     * @return the simulation results
+     */
+    public SimulationResult getResult () {
+	SimulationResult result = null;
+	for (CellProcess cell : cells) {
+	    SimulationResult cell_result = cell.simulation.getResult();
+	    if (result == null) {
+		result = cell_result;
+		continue;
+	    }
+	    result.handled_events += cell_result.handled_events;
+	    result.enb.add(cell_result.enb);
+	    result.ue.add(cell_result.ue);
+	    result.avg_queue_threshold += cell_result.avg_queue_threshold;
+	    result.total_energy += cell_result.total_energy;
+	    result.energy += cell_result.energy;
+	    for (int s = 0; s < result.time_in_states.length; s++) {
+		result.time_in_states[s] += cell_result.time_in_states[s];
+	    }
+	}
+	result.avg_queue_threshold /= cells.length;
+	result.energy /= cells.length;
+	for (int s = 0; s < result.time_in_states.length; s++) {
+	    result.time_in_states[s] /= cells.length;
+	}
+	result.num_cells = cells.length;
+	for (CellProcess cell : cells) {
+	    result.handovers += cell.handovers;
+	    result.forwarded_packets += cell.forwarded_packets;
+	}
+	return result;
+    }
+}
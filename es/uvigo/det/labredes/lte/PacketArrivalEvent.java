@@ -8,13 +8,29 @@ package es.uvigo.det.labredes.lte;
  */
 public class PacketArrivalEvent extends Event<LteNode> {
     /**
-     * Event counter used to assign an unique identifier to each arriving packet.
+     * The name of the method that handles this type of event.
      */
-    static public int packet_counter = 0;
+    public static final String HANDLER_METHOD = "handlePacketArrivalEvent";
     /**
-     * The unique identifier of the arriving packet.
+     * The unique identifier of the arriving packet (assigned by the simulation of the node).
      */
     public int packet_id;
+    /**
+     * The instant at which a packet forwarded from another cell arrived at its original eNB, or NaN if the packet is not forwarded.
+     */
+    public double forwarded_time;
+
+    /**
+     * Creates a new event representing the arrival of a new packet handled by the node handlePacketArrivalEvent method.
+     *
+     * @param t    instant at which the new packet arrives
+     * @param node node that receives the new packet
+     * @param ue   UE whose traffic flow receives the new packet
+     */
+    public PacketArrivalEvent (double t, LteNode node, int ue) {
+	this(t, node, HANDLER_METHOD);
+	this.ue = ue;
+    }
 
     /**
      * Creates a new event representing the arrival of a new packet.
@@ -25,8 +41,24 @@ public class PacketArrivalEvent extends Event<LteNode> {
      */
     public PacketArrivalEvent (double t, LteNode node, String method) {
 	super(t, node, method);
-	packet_id = packet_counter;
-	packet_counter++;
+	direct_dispatch = method.equals(HANDLER_METHOD);
+	packet_id = node.simulation.nextPacketId();
+	forwarded_time = Double.NaN;
+    }
+
+    /**
+     * Reinitializes this recycled event to represent the arrival of a new packet handled by the node handlePacketArrivalEvent method.
+     *
+     * @param t    instant at which the new packet arrives
+     * @param node node that receives the new packet
+     * @param ue   UE whose traffic flow receives the new packet
+     */
+    void reset (double t, LteNode node, int ue) {
+	reset(t, node, HANDLER_METHOD);
+	direct_dispatch = true;
+	this.ue = ue;
+	packet_id = node.simulation.nextPacketId();
+	forwarded_time = Double.NaN;
     }
 
     /**
@@ -38,6 +70,7 @@ public class PacketArrivalEvent extends Event<LteNode> {
     public boolean equals (Object event) {
 	if (event instanceof PacketArrivalEvent && 
 	    time == ((Event) event).time && handler.equals(((Event) event).handler) && handler_method_name.equals(((Event) event).handler_method_name) &&
+	    ue == ((Event) event).ue &&
 	    packet_id == ((PacketArrivalEvent) event).packet_id) {
 	    return true;
 	}
@@ -45,10 +78,34 @@ public class PacketArrivalEvent extends Event<LteNode> {
     }
 
     /**
-     * Prints on standard output a message describing the packet arrival event.
+     * Returns a hash code consistent with equals.
+     *
+     * @return a hash code for this packet arrival event
+     */
+    public int hashCode () {
+	return 31 * (31 * (31 * Double.hashCode(time) + handler.hashCode()) + ue) + packet_id;
+    }
+
+    /**
+     * Invokes the handlePacketArrivalEvent method on the handler node.
+     */
+    public void dispatch () {
+	handler.handlePacketArrivalEvent(this);
+    }
+
+    /**
+     * Returns this packet arrival event to its pool, if any.
+     */
+    public void recycle () {
+	if (pool != null) {
+	    pool.release(this);
+	}
+    }
+
+    /**
+     * Prints on the simulation output a message describing the packet arrival event.
      */
     public void print () {
-	String handler_class = handler instanceof ENB ? "ENB" : "UE";
-	System.out.format("%.9f %s PacketArrivalEvent %d %d %f %n", time, handler_class, packet_id, handler.qsize, handler.avg_arrival_rate);
+	handler.simulation.out.format("%.9f %s PacketArrivalEvent %d %d %f %n", time, handler.getLabel(ue), packet_id, handler.qsize[ue], handler.avg_arrival_rate[ue]);
     }
 }
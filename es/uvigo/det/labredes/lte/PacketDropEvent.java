@@ -7,6 +7,22 @@ package es.uvigo.det.labredes.lte;
  * @version 1.0
  */
 public class PacketDropEvent extends Event<LteNode> {
+    /**
+     * The name of the method that handles this type of event.
+     */
+    public static final String HANDLER_METHOD = "handlePacketDropEvent";
+
+    /**
+     * Creates a new event representing the drop of a new arriving packet handled by the node handlePacketDropEvent method.
+     *
+     * @param t    instant at which the new arriving packet is discarded
+     * @param node node that discards the new packet
+     * @param ue   UE whose traffic flow discards the new packet
+     */
+    public PacketDropEvent (double t, LteNode node, int ue) {
+	this(t, node, HANDLER_METHOD);
+	this.ue = ue;
+    }
 
     /**
      * Creates a new event representing the drop of a new arriving packet.
@@ -17,6 +33,20 @@ public class PacketDropEvent extends Event<LteNode> {
      */
     public PacketDropEvent (double t, LteNode node, String method) {
 	super(t, node, method);
+	direct_dispatch = method.equals(HANDLER_METHOD);
+    }
+
+    /**
+     * Reinitializes this recycled event to represent the drop of a new arriving packet handled by the node handlePacketDropEvent method.
+     *
+     * @param t    instant at which the new arriving packet is discarded
+     * @param node node that discards the new packet
+     * @param ue   UE whose traffic flow discards the new packet
+     */
+    void reset (double t, LteNode node, int ue) {
+	reset(t, node, HANDLER_METHOD);
+	direct_dispatch = true;
+	this.ue = ue;
     }
 
     /**
@@ -27,17 +57,42 @@ public class PacketDropEvent extends Event<LteNode> {
      */
     public boolean equals (Object event) {
 	if (event instanceof PacketDropEvent && 
-	    time == ((Event) event).time && handler.equals(((Event) event).handler) && handler_method_name.equals(((Event) event).handler_method_name)) {
+	    time == ((Event) event).time && handler.equals(((Event) event).handler) && handler_method_name.equals(((Event) event).handler_method_name) &&
+	    ue == ((Event) event).ue) {
 	    return true;
 	}
 	return false;
     }
 
     /**
-     * Prints on standard output a message describing the packet drop event.
+     * Returns a hash code consistent with equals.
+     *
+     * @return a hash code for this packet drop event
+     */
+    public int hashCode () {
+	return 31 * (31 * Double.hashCode(time) + handler.hashCode()) + ue;
+    }
+
+    /**
+     * Invokes the handlePacketDropEvent method on the handler node.
+     */
+    public void dispatch () {
+	handler.handlePacketDropEvent(this);
+    }
+
+    /**
+     * Returns this packet drop event to its pool, if any.
+     */
+    public void recycle () {
+	if (pool != null) {
+	    pool.release(this);
+	}
+    }
+
+    /**
+     * Prints on the simulation output a message describing the packet drop event.
      */
     public void print () {
-	String handler_class = handler instanceof ENB ? "ENB" : "UE";
-	System.out.format("%.9f %s PacketDropEvent %d %n", time, handler_class, handler.qsize);
+	handler.simulation.out.format("%.9f %s PacketDropEvent %d %n", time, handler.getLabel(ue), handler.qsize[ue]);
     }
 }
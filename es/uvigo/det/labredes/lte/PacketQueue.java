@@ -0,0 +1,183 @@
+package es.uvigo.det.labredes.lte;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This class implements the FIFO transmission queue of a node.
+ * For each queued packet, its identifier and arrival time are stored in a growable ring buffer
+ * made of parallel primitive arrays. Once the queue holds more packets than a configurable
+ * threshold, its content is moved to an off-heap direct buffer until the queue empties again.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class PacketQueue {
+    private static final int INITIAL_CAPACITY = 16;
+    /* Bytes per packet in the off-heap buffer: packet identifier (int) and arrival time (double) */
+    private static final int ENTRY_SIZE = 12;
+
+    private int[] packet_ids;
+    private double[] arrival_times;
+    private ByteBuffer offheap;
+    private int capacity, head, queue_size;
+    private int offheap_threshold;
+
+    /**
+     * Creates a new empty queue that never moves its content off-heap.
+     */
+    public PacketQueue () {
+	this(0);
+    }
+
+    /**
+     * Creates a new empty queue.
+     *
+     * @param threshold number of packets above which the queue content is moved off-heap (0 = never)
+     */
+    public PacketQueue (int threshold) {
+	offheap_threshold = threshold;
+	capacity = head = queue_size = 0;
+    }
+
+    /**
+     * Returns the number of packets stored in the queue.
+     *
+     * @return the number of queued packets
+     */
+    public int size () {
+	return queue_size;
+    }
+
+    /**
+     * Returns true if the queue content is currently stored off-heap.
+     *
+     * @return true if the queue is stored off-heap
+     */
+    public boolean isOffHeap () {
+	return offheap != null;
+    }
+
+    /**
+     * Appends a packet at the tail of the queue.
+     *
+     * @param pid  the packet identifier
+     * @param time the packet arrival time
+     */
+    public void add (int pid, double time) {
+	if (queue_size == capacity || (offheap == null && offheap_threshold > 0 && queue_size == offheap_threshold)) {
+	    grow();
+	}
+	int i = (head + queue_size) & (capacity - 1);
+	if (offheap != null) {
+	    offheap.putInt(i * ENTRY_SIZE, pid);
+	    offheap.putDouble(i * ENTRY_SIZE + 4, time);
+	} else {
+	    packet_ids[i] = pid;
+	    arrival_times[i] = time;
+	}
+	queue_size++;
+    }
+
+    /**
+     * Returns the identifier of the packet at the head of the queue.
+     * The queue must not be empty.
+     *
+     * @return the identifier of the head-of-line packet
+     */
+    public int peekPacketId () {
+	return offheap != null ? offheap.getInt(head * ENTRY_SIZE) : packet_ids[head];
+    }
+
+    /**
+     * Returns the arrival time of the packet at the head of the queue.
+     * The queue must not be empty.
+     *
+     * @return the arrival time of the head-of-line packet
+     */
+    public double peekArrivalTime () {
+	return offheap != null ? offheap.getDouble(head * ENTRY_SIZE + 4) : arrival_times[head];
+    }
+
+    /**
+     * Removes the packet at the head of the queue.
+     * The queue must not be empty.
+     */
+    public void remove () {
+	head = (head + 1) & (capacity - 1);
+	queue_size--;
+	if (queue_size == 0) {
+	    head = 0;
+	    if (offheap != null) {
+		// Back to the heap arrays once the backlog has been drained
+		offheap = null;
+		capacity = packet_ids != null ? packet_ids.length : 0;
+	    }
+	}
+    }
+
+    /**
+     * Removes the packets at the tail of the queue, keeping the specified number of packets at its head.
+     *
+     * @param n the number of packets kept
+     */
+    public void truncate (int n) {
+	if (n >= queue_size) {
+	    return;
+	}
+	queue_size = n;
+	if (queue_size == 0) {
+	    head = 0;
+	    if (offheap != null) {
+		offheap = null;
+		capacity = packet_ids != null ? packet_ids.length : 0;
+	    }
+	}
+    }
+
+    /* Makes room for one more packet, doubling the ring buffer if it is full and moving it off-heap once the queue exceeds the threshold */
+    private void grow () {
+	int new_capacity = capacity == 0 ? INITIAL_CAPACITY : (queue_size == capacity ? 2 * capacity : capacity);
+	if (offheap != null || (offheap_threshold > 0 && queue_size + 1 > offheap_threshold)) {
+	    ByteBuffer buffer = ByteBuffer.allocateDirect(new_capacity * ENTRY_SIZE).order(ByteOrder.nativeOrder());
+	    for (int k = 0; k < queue_size; k++) {
+		buffer.putInt(k * ENTRY_SIZE, peekPacketId(k));
+		buffer.putDouble(k * ENTRY_SIZE + 4, peekArrivalTime(k));
+	    }
+	    offheap = buffer;
+	} else {
+	    int[] new_packet_ids = new int[new_capacity];
+	    double[] new_arrival_times = new double[new_capacity];
+	    for (int k = 0; k < queue_size; k++) {
+		new_packet_ids[k] = packet_ids[(head + k) & (capacity - 1)];
+		new_arrival_times[k] = arrival_times[(head + k) & (capacity - 1)];
+	    }
+	    packet_ids = new_packet_ids;
+	    arrival_times = new_arrival_times;
+	}
+	capacity = new_capacity;
+	head = 0;
+    }
+
+    /**
+     * Returns the identifier of the specified packet of the queue.
+     *
+     * @param k the position of the packet in the queue (0 = head, less than size())
+     * @return the packet identifier
+     */
+    public int peekPacketId (int k) {
+	int i = (head + k) & (capacity - 1);
+	return offheap != null ? offheap.getInt(i * ENTRY_SIZE) : packet_ids[i];
+    }
+
+    /**
+     * Returns the arrival time of the specified packet of the queue.
+     *
+     * @param k the position of the packet in the queue (0 = head, less than size())
+     * @return the packet arrival time
+     */
+    public double peekArrivalTime (int k) {
+	int i = (head + k) & (capacity - 1);
+	return offheap != null ? offheap.getDouble(i * ENTRY_SIZE + 4) : arrival_times[i];
+    }
+}
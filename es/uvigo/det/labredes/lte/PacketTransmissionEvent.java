@@ -7,11 +7,28 @@ package es.uvigo.det.labredes.lte;
  * @version 1.0
  */
 public class PacketTransmissionEvent extends Event<LteNode> {
+    /**
+     * The name of the method that handles this type of event.
+     */
+    public static final String HANDLER_METHOD = "handlePacketTransmissionEvent";
     /**
      * The unique identifier of the packet transmitted.
      */
     public int packet_id;
 
+    /**
+     * Creates a new event representing the transmission of one packet handled by the node handlePacketTransmissionEvent method.
+     *
+     * @param t    instant at which the node ends packet transmission
+     * @param node node that transmits the packet
+     * @param ue   UE whose traffic flow transmits the packet
+     * @param pid  identifier of the packet transmitted
+     */
+    public PacketTransmissionEvent (double t, LteNode node, int ue, int pid) {
+	this(t, node, HANDLER_METHOD, pid);
+	this.ue = ue;
+    }
+
     /**
      * Creates a new event representing the transmission of one packet.
      *
@@ -21,6 +38,22 @@ public class PacketTransmissionEvent extends Event<LteNode> {
      */
     public PacketTransmissionEvent (double t, LteNode node, String method, int pid) {
 	super(t, node, method);
+	direct_dispatch = method.equals(HANDLER_METHOD);
+	packet_id = pid;
+    }
+
+    /**
+     * Reinitializes this recycled event to represent the transmission of one packet handled by the node handlePacketTransmissionEvent method.
+     *
+     * @param t    instant at which the node ends packet transmission
+     * @param node node that transmits the packet
+     * @param ue   UE whose traffic flow transmits the packet
+     * @param pid  identifier of the packet transmitted
+     */
+    void reset (double t, LteNode node, int ue, int pid) {
+	reset(t, node, HANDLER_METHOD);
+	direct_dispatch = true;
+	this.ue = ue;
 	packet_id = pid;
     }
 
@@ -33,6 +66,7 @@ public class PacketTransmissionEvent extends Event<LteNode> {
     public boolean equals (Object event) {
 	if (event instanceof PacketTransmissionEvent && 
 	    time == ((Event) event).time && handler.equals(((Event) event).handler) && handler_method_name.equals(((Event) event).handler_method_name) &&
+	    ue == ((Event) event).ue &&
 	    packet_id == ((PacketTransmissionEvent) event).packet_id) {
 	    return true;
 	}
@@ -40,10 +74,34 @@ public class PacketTransmissionEvent extends Event<LteNode> {
     }
 
     /**
-     * Prints on standard output a message describing the packet transmission event.
+     * Returns a hash code consistent with equals.
+     *
+     * @return a hash code for this packet transmission event
+     */
+    public int hashCode () {
+	return 31 * (31 * (31 * Double.hashCode(time) + handler.hashCode()) + ue) + packet_id;
+    }
+
+    /**
+     * Invokes the handlePacketTransmissionEvent method on the handler node.
+     */
+    public void dispatch () {
+	handler.handlePacketTransmissionEvent(this);
+    }
+
+    /**
+     * Returns this packet transmission event to its pool, if any.
+     */
+    public void recycle () {
+	if (pool != null) {
+	    pool.release(this);
+	}
+    }
+
+    /**
+     * Prints on the simulation output a message describing the packet transmission event.
      */
     public void print () {
-	String handler_class = handler instanceof ENB ? "ENB" : "UE";
-	System.out.format("%.9f %s PacketTransmissionEvent %d %d %n", time, handler_class, packet_id, handler.qsize);
+	handler.simulation.out.format("%.9f %s PacketTransmissionEvent %d %d %n", time, handler.getLabel(ue), packet_id, handler.qsize[ue]);
     }
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+package es.uvigo.det.labredes.lte;
+
+import java.util.List;
+
+/**
+ * This class extends FutureEventList class to store pending events in a pairing heap.
+ * Insertions take constant time and removals of the earliest event take amortized logarithmic time.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class PairingHeapFutureEventList extends FutureEventList {
+    /**
+     * Heap node (leftmost child, right sibling representation).
+     */
+    private static final class Node {
+	Event event;
+	Node child, sibling;
+	/* parent if this node is the leftmost child, left sibling otherwise */
+	Node prev;
+    }
+
+    private Node root;
+    private int heap_size;
+    /* Released nodes kept for reuse */
+    private Node free_nodes;
+
+    /**
+     * Creates a new empty pairing heap.
+     */
+    public PairingHeapFutureEventList () {
+	root = free_nodes = null;
+	heap_size = 0;
+    }
+
+    /**
+     * Adds the specified event to the pairing heap.
+     *
+     * @param event the Event to be added
+     */
+    public void add (Event event) {
+	Node node = free_nodes;
+	if (node != null) {
+	    free_nodes = node.sibling;
+	    node.sibling = null;
+	} else {
+	    node = new Node();
+	}
+	node.event = event;
+	root = root == null ? node : meld(root, node);
+	heap_size++;
+    }
+
+    /**
+     * Returns the earliest event without removing it.
+     *
+     * @return the earliest event or null if the pairing heap is empty
+     */
+    public Event peek () {
+	return root == null ? null : root.event;
+    }
+
+    /**
+     * Removes and returns the earliest event.
+     *
+     * @return the earliest event or null if the pairing heap is empty
+     */
+    public Event poll () {
+	if (root == null) {
+	    return null;
+	}
+	Node node = root;
+	root = mergePairs(node.child);
+	return release(node);
+    }
+
+    /**
+     * Returns the number of pending events.
+     *
+     * @return the number of pending events
+     */
+    public int size () {
+	return heap_size;
+    }
+
+    protected void collect (List<Event> events) {
+	collect(root, events);
+    }
+
+    private void collect (Node node, List<Event> events) {
+	for (; node != null; node = node.sibling) {
+	    events.add(node.event);
+	    collect(node.child, events);
+	}
+    }
+
+    private Event release (Node node) {
+	Event event = node.event;
+	node.event = null;
+	node.child = node.prev = null;
+	node.sibling = free_nodes;
+	free_nodes = node;
+	heap_size--;
+	return event;
+    }
+
+    /* Links two detached subheaps and returns the new root */
+    private Node meld (Node a, Node b) {
+	if (precedes(b.event, a.event)) {
+	    Node tmp = a;
+	    a = b;
+	    b = tmp;
+	}
+	b.sibling = a.child;
+	if (a.child != null) {
+	    a.child.prev = b;
+	}
+	b.prev = a;
+	a.child = b;
+	a.sibling = a.prev = null;
+	return a;
+    }
+
+    /* Two-pass pairing of a list of siblings */
+    private Node mergePairs (Node first) {
+	Node pairs = null;
+	while (first != null) {
+	    Node a = first;
+	    Node b = a.sibling;
+	    if (b != null) {
+		first = b.sibling;
+		a.sibling = a.prev = b.sibling = b.prev = null;
+		a = meld(a, b);
+	    } else {
+		first = null;
+		a.prev = null;
+	    }
+	    a.sibling = pairs;
+	    pairs = a;
+	}
+	if (pairs == null) {
+	    return null;
+	}
+	Node result = pairs;
+	pairs = pairs.sibling;
+	result.sibling = null;
+	while (pairs != null) {
+	    Node next = pairs.sibling;
+	    pairs.sibling = null;
+	    result = meld(result, pairs);
+	    pairs = next;
+	}
+	return result;
+    }
+}
@@ -1,5 +1,7 @@
 package es.uvigo.det.labredes.lte;
 
+import java.io.*;
+
 /**
  * This class extends TrafficGenerator class to simulate Pareto traffic.
  *
@@ -14,9 +16,10 @@ public class ParetoTrafficGenerator extends TrafficGenerator {
      *
      * @param prate packet rate (in packets per psf)
      * @param a shape parameter (alpha)
+     * @param psf physical subframe length (in seconds)
      */
-    public ParetoTrafficGenerator (double prate, double a) {
-	super(prate);
+    public ParetoTrafficGenerator (double prate, double a, double psf) {
+	super(prate, psf);
 	alpha = a;
     }
 
@@ -27,6 +30,9 @@ public class ParetoTrafficGenerator extends TrafficGenerator {
      */
     public void setAlpha (double a) {
 	alpha = a;
+	if (block != null && block_position < block.length) {
+	    transformBlock(block_position);
+	}
     }
 
     /**
@@ -35,10 +41,56 @@ public class ParetoTrafficGenerator extends TrafficGenerator {
      * @return instant at which the next packet arrives (in seconds)
      */
     public double getNextArrival () {
+	if (block != null) {
+	    return getNextBlockArrival();
+	}
 	double xm = (alpha - 1) / alpha / packet_rate;
 	double rand = rng.nextDouble();
 	arrival_time += xm / Math.pow(rand, 1 / alpha);	
 	return arrival_time;
     }    
 
+    /**
+     * Computes the arrivals of the block from the specified position on: each interarrival time is
+     * xm * exp(E / alpha) for a standard exponential sample E, which equals xm / U^(1/alpha) for a uniform U.
+     * The interarrival times are computed before they are accumulated, so that the loop that computes them
+     * has no dependencies between iterations.
+     *
+     * @param from position in the block of the first arrival computed
+     */
+    protected void transformBlock (int from) {
+	double xm = (alpha - 1) / alpha / packet_rate;
+	double inv_alpha = 1 / alpha;
+	for (int i = from; i < block.length; i++) {
+	    block[i] = xm * Math.exp(block_samples[i] * inv_alpha);
+	}
+	double t = arrival_time;
+	for (int i = from; i < block.length; i++) {
+	    t += block[i];
+	    block[i] = t;
+	}
+    }
+
+    /**
+     * Writes the state of the generator, including its shape parameter, to the specified checkpoint stream.
+     *
+     * @param out the checkpoint stream
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeState (ObjectOutput out) throws IOException {
+	super.writeState(out);
+	out.writeDouble(alpha);
+    }
+
+    /**
+     * Replaces the state of the generator, including its shape parameter, with the one read from the specified checkpoint stream.
+     *
+     * @param in the checkpoint stream
+     * @throws IOException if the stream cannot be read or is corrupted
+     */
+    public void readState (ObjectInput in) throws IOException {
+	super.readState(in);
+	alpha = in.readDouble();
+    }
+
 }
\ No newline at end of file
@@ -11,9 +11,10 @@ public class PoissonTrafficGenerator extends TrafficGenerator {
      * Creates a new Poisson traffic generator.
      *
      * @param prate packet rate (in packets per psf)
+     * @param psf   physical subframe length (in seconds)
      */
-    public PoissonTrafficGenerator (double prate) {
-	super(prate);
+    public PoissonTrafficGenerator (double prate, double psf) {
+	super(prate, psf);
     }
 
     /**
@@ -22,9 +23,26 @@ public class PoissonTrafficGenerator extends TrafficGenerator {
      * @return instant at which the next packet arrives (in seconds)
      */
     public double getNextArrival () {
+	if (block != null) {
+	    return getNextBlockArrival();
+	}
 	double rand = rng.nextDouble();
 	arrival_time += -1.0 * Math.log(rand) / packet_rate;
 	return arrival_time;
     }    
 
+    /**
+     * Computes the arrivals of the block from the specified position on: each interarrival time is a
+     * standard exponential sample divided by the packet rate.
+     *
+     * @param from position in the block of the first arrival computed
+     */
+    protected void transformBlock (int from) {
+	double t = arrival_time;
+	for (int i = from; i < block.length; i++) {
+	    t += block_samples[i] / packet_rate;
+	    block[i] = t;
+	}
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+package es.uvigo.det.labredes.lte;
+
+import java.util.Random;
+
+/**
+ * This class implements a splittable random number generator (the SplitMix64 algorithm of
+ * java.util.SplittableRandom) that can be used wherever a java.util.Random is expected.
+ * Unlike java.util.Random, it has a period of 2^64, it is not synchronized (so each stream must be used
+ * by a single thread) and it can derive independent named substreams. A substream only depends on the
+ * seed of its parent stream and on its name and index, not on the values already drawn from the parent
+ * or on the order in which substreams are derived, so each part of a simulation (replication, UE,
+ * direction) gets the same random numbers however the simulations are spread over threads.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class RandomStream extends Random {
+    private static final long serialVersionUID = 1L;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    /**
+     * The seed the stream started from, from which substreams are derived.
+     */
+    private long origin;
+    /**
+     * The current state of the stream.
+     */
+    private long state;
+    /**
+     * The increment of the state (odd), different for each substream.
+     */
+    private long gamma;
+
+    /**
+     * Creates a new random stream with the specified seed.
+     *
+     * @param seed initial seed
+     */
+    public RandomStream (long seed) {
+	super(seed);
+    }
+
+    /* Creates a new random stream with the specified seed and increment */
+    private RandomStream (long seed, long g) {
+	super(seed);
+	gamma = g;
+    }
+
+    /**
+     * Sets the seed of this stream, which then produces the same values as a new stream with that seed.
+     *
+     * @param seed initial seed
+     */
+    public void setSeed (long seed) {
+	super.setSeed(seed);
+	origin = state = seed;
+	gamma = GOLDEN_GAMMA;
+    }
+
+    /**
+     * Returns a substream of this stream identified by the specified name.
+     *
+     * @param name the name of the substream
+     * @return the substream
+     */
+    public RandomStream substream (String name) {
+	return substream(name, 0);
+    }
+
+    /**
+     * Returns a substream of this stream identified by the specified name and index (e.g. "ue" and the UE number).
+     *
+     * @param name  the name of the substream
+     * @param index the index of the substream
+     * @return the substream
+     */
+    public RandomStream substream (String name, long index) {
+	// 64-bit FNV-1a hash of the name
+	long hash = 0xcbf29ce484222325L;
+	for (int i = 0; i < name.length(); i++) {
+	    hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+	}
+	long seed = mix64(origin ^ mix64(hash + index * GOLDEN_GAMMA));
+	return new RandomStream(mix64(seed), mixGamma(seed + GOLDEN_GAMMA));
+    }
+
+    /**
+     * Returns the next pseudorandom long value.
+     *
+     * @return the next pseudorandom long value
+     */
+    public long nextLong () {
+	return mix64(state += gamma);
+    }
+
+    /**
+     * Returns the next pseudorandom int value.
+     *
+     * @return the next pseudorandom int value
+     */
+    public int nextInt () {
+	return (int) (nextLong() >>> 32);
+    }
+
+    /**
+     * Returns the next pseudorandom double value uniformly distributed between 0.0 (inclusive) and 1.0 (exclusive).
+     *
+     * @return the next pseudorandom double value
+     */
+    public double nextDouble () {
+	return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * Returns the specified number of pseudorandom bits, used by the remaining methods of java.util.Random.
+     *
+     * @param bits number of random bits
+     * @return the next pseudorandom value
+     */
+    protected int next (int bits) {
+	return (int) (nextLong() >>> (64 - bits));
+    }
+
+    /* Stafford's variant 13 of the MurmurHash3 finalizer */
+    private static long mix64 (long z) {
+	z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+	z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+	return z ^ (z >>> 31);
+    }
+
+    /* Returns an odd increment with enough bit transitions, as done by java.util.SplittableRandom */
+    private static long mixGamma (long z) {
+	z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+	z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+	z = (z ^ (z >>> 33)) | 1L;
+	int n = Long.bitCount(z ^ (z >>> 1));
+	return n < 24 ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
@@ -0,0 +1,95 @@
+package es.uvigo.det.labredes.lte;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class extends TrafficGenerator class to replay the arrivals of one UE and direction of an ArrivalRecording.
+ * Arrivals are decoded straight from the memory-mapped recording, which may be shared with other simulations,
+ * without allocating objects per packet. No packet arrives after the last recorded arrival.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class RecordedTrafficGenerator extends TrafficGenerator {
+    private ArrivalRecording recording;
+    private ByteBuffer stream;
+    /* Instant of the last arrival read (in clock ticks) */
+    private long tick;
+
+    /**
+     * Creates a new generator that replays the arrivals of the specified UE and direction of a recording.
+     *
+     * @param filename name of the recording file
+     * @param downlink true to replay the downlink arrivals, false to replay the uplink arrivals
+     * @param ue       the UE number in the recording
+     * @throws SimulationException if the recording file is not found, is not valid or does not contain the UE
+     */
+    public RecordedTrafficGenerator (String filename, boolean downlink, int ue) {
+	super(0, 1);
+	recording = ArrivalRecording.open(filename);
+	stream = recording.getStream(downlink, ue);
+	tick = 0;
+    }
+
+    /**
+     * Returns the instant at which the next packet arrives.
+     *
+     * @return instant at which the next packet arrives (in seconds), or infinity after the last recorded arrival
+     * @throws SimulationException if the recording is truncated
+     */
+    public double getNextArrival () {
+	if (!stream.hasRemaining()) {
+	    arrival_time = Double.POSITIVE_INFINITY;
+	    return arrival_time;
+	}
+	try {
+	    long delta = 0;
+	    int shift = 0;
+	    byte b;
+	    do {
+		b = stream.get();
+		delta |= (long) (b & 0x7f) << shift;
+		shift += 7;
+	    } while (b < 0);
+	    tick += delta;
+	} catch (BufferUnderflowException e) {
+	    throw new SimulationException("Recording file: truncated recording!");
+	}
+	arrival_time = Event.toSeconds(tick);
+	return arrival_time;
+    }
+
+    /**
+     * Writes the state of the generator, including its position in the recording, to the specified checkpoint stream.
+     *
+     * @param out the checkpoint stream
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeState (ObjectOutput out) throws IOException {
+	super.writeState(out);
+	out.writeLong(recording.file_size);
+	out.writeInt(stream.position());
+	out.writeLong(tick);
+    }
+
+    /**
+     * Replaces the state of the generator, including its position in the recording, with the one read from the specified checkpoint stream.
+     *
+     * @param in the checkpoint stream
+     * @throws IOException if the stream cannot be read or is corrupted
+     * @throws SimulationException if the recording file has changed since the checkpoint
+     */
+    public void readState (ObjectInput in) throws IOException {
+	super.readState(in);
+	long size = in.readLong();
+	int position = in.readInt();
+	if (size != recording.file_size || position < 0 || position > stream.limit()) {
+	    throw new SimulationException("Recording file has changed since the checkpoint!");
+	}
+	stream.position(position);
+	tick = in.readLong();
+    }
+
+}
@@ -0,0 +1,160 @@
+package es.uvigo.det.labredes.lte;
+
+/**
+ * This class accumulates a sample of independent observations of a statistic and computes
+ * its mean and the confidence interval of the mean (Student's t distribution).
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class SampleStatistics {
+    private long count;
+    private double mean, sum_squares;
+
+    /**
+     * Creates a new empty sample.
+     */
+    public SampleStatistics () {
+	count = 0;
+	mean = sum_squares = 0.0;
+    }
+
+    /**
+     * Adds an observation to the sample (Welford's algorithm).
+     *
+     * @param x the observed value
+     */
+    public void add (double x) {
+	count++;
+	double delta = x - mean;
+	mean += delta / count;
+	sum_squares += delta * (x - mean);
+    }
+
+    /**
+     * Returns the number of observations.
+     *
+     * @return the sample size
+     */
+    public long getCount () {
+	return count;
+    }
+
+    /**
+     * Returns the sample mean.
+     *
+     * @return the sample mean
+     */
+    public double getMean () {
+	return mean;
+    }
+
+    /**
+     * Returns the sample variance.
+     *
+     * @return the unbiased sample variance or 0 if there are less than two observations
+     */
+    public double getVariance () {
+	return count > 1 ? sum_squares / (count - 1) : 0.0;
+    }
+
+    /**
+     * Returns the half-width of the confidence interval of the mean.
+     *
+     * @param confidence the confidence level (e.g. 0.95)
+     * @return the half-width of the confidence interval or infinity if there are less than two observations
+     */
+    public double getHalfWidth (double confidence) {
+	if (count < 2) {
+	    return Double.POSITIVE_INFINITY;
+	}
+	return studentQuantile(0.5 + confidence / 2, count - 1) * Math.sqrt(getVariance() / count);
+    }
+
+    /**
+     * Returns the quantile of the Student's t distribution.
+     *
+     * @param p   the cumulative probability (0.5 &lt; p &lt; 1)
+     * @param dof the degrees of freedom
+     * @return the value t such that P(T &lt;= t) = p
+     */
+    public static double studentQuantile (double p, double dof) {
+	double lo = 0.0, hi = 1.0;
+	while (studentCdf(hi, dof) < p) {
+	    lo = hi;
+	    hi *= 2;
+	}
+	for (int i = 0; i < 100 && hi - lo > 1e-12 * hi; i++) {
+	    double mid = 0.5 * (lo + hi);
+	    if (studentCdf(mid, dof) < p) {
+		lo = mid;
+	    } else {
+		hi = mid;
+	    }
+	}
+	return 0.5 * (lo + hi);
+    }
+
+    /* Cumulative distribution function of the Student's t distribution for t >= 0 */
+    private static double studentCdf (double t, double dof) {
+	return 1.0 - 0.5 * incompleteBeta(dof / (dof + t * t), dof / 2, 0.5);
+    }
+
+    /* Regularized incomplete beta function I_x(a, b) */
+    private static double incompleteBeta (double x, double a, double b) {
+	if (x <= 0) {
+	    return 0.0;
+	}
+	if (x >= 1) {
+	    return 1.0;
+	}
+	double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x) + b * Math.log(1 - x));
+	if (x < (a + 1) / (a + b + 2)) {
+	    return front * betaContinuedFraction(x, a, b) / a;
+	}
+	return 1.0 - front * betaContinuedFraction(1 - x, b, a) / b;
+    }
+
+    /* Continued fraction for the incomplete beta function (modified Lentz's method) */
+    private static double betaContinuedFraction (double x, double a, double b) {
+	double tiny = 1e-300;
+	double c = 1.0;
+	double d = 1.0 - (a + b) * x / (a + 1);
+	d = 1.0 / (Math.abs(d) < tiny ? tiny : d);
+	double h = d;
+	for (int m = 1; m <= 300; m++) {
+	    int m2 = 2 * m;
+	    double aa = m * (b - m) * x / ((a + m2 - 1) * (a + m2));
+	    d = 1.0 + aa * d;
+	    d = 1.0 / (Math.abs(d) < tiny ? tiny : d);
+	    c = 1.0 + aa / c;
+	    c = Math.abs(c) < tiny ? tiny : c;
+	    h *= d * c;
+	    aa = -(a + m) * (a + b + m) * x / ((a + m2) * (a + m2 + 1));
+	    d = 1.0 + aa * d;
+	    d = 1.0 / (Math.abs(d) < tiny ? tiny : d);
+	    c = 1.0 + aa / c;
+	    c = Math.abs(c) < tiny ? tiny : c;
+	    double delta = d * c;
+	    h *= delta;
+	    if (Math.abs(delta - 1.0) < 1e-15) {
+		break;
+	    }
+	}
+	return h;
+    }
+
+    /* Logarithm of the gamma function (Lanczos approximation) */
+    private static double logGamma (double x) {
+	double[] coef = {76.18009172947146, -86.50532032941677, 24.01409824083091,
+			 -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5};
+	double y = x;
+	double tmp = x + 5.5;
+	tmp -= (x + 0.5) * Math.log(tmp);
+	double ser = 1.000000000190015;
+	for (int j = 0; j < coef.length; j++) {
+	    ser += coef[j] / ++y;
+	}
+	return -tmp + Math.log(2.5066282746310005 * ser / x);
+    }
+}
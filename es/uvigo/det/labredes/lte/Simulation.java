@@ -0,0 +1,383 @@
+package es.uvigo.det.labredes.lte;
+
+import java.io.*;
+import java.util.List;
+
+/**
+ * This class implements one simulation of an eNB and its connected UEs.
+ * A simulation owns its parameters, its event list, its packet counter and its nodes, so
+ * several simulations can be run concurrently in the same JVM.
+ * The state of a simulation can be saved to a checkpoint and restored later (see Checkpoint).
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class Simulation {
+    /**
+     * The simulation parameters.
+     */
+    public final SimulationConfig config;
+    /**
+     * The number of the cell simulated (0 unless the simulation is one of the cells of a MultiCellSimulation).
+     */
+    public final int cell;
+    /**
+     * Event handler.
+     */
+    public final EventList event_handler;
+    /**
+     * Pool of recycled events.
+     */
+    public final EventPool event_pool;
+    /**
+     * The stream where a message for each simulated event is printed if verbose. Default = standard output.
+     */
+    public PrintStream out;
+    /**
+     * The writer of the event trace, or null if no trace is written.
+     */
+    public TraceWriter trace;
+    /**
+     * The sampler of the windowed metrics, or null if no metrics are sampled.
+     */
+    public MetricsSampler sampler;
+    /**
+     * The detector of the steady state, or null if the simulation is not run in steady-state mode.
+     */
+    public SteadyStateDetector detector;
+
+    private int packet_counter;
+    /* Period covered by the statistics (in seconds) */
+    private double statistics_start, statistics_end;
+    /* Instant at which the next periodic checkpoint is written (in clock ticks) */
+    private long next_checkpoint_tick;
+    /* Bytes of the event trace written at the last checkpoint */
+    private long trace_offset;
+    private ENB enb;
+    private UE ue;
+
+    /**
+     * Creates a new simulation with the specified parameters.
+     * The configuration is copied, so later changes to it do not affect this simulation.
+     *
+     * @param cfg the simulation parameters
+     * @throws SimulationException if the simulation cannot be set up
+     */
+    public Simulation (SimulationConfig cfg) {
+	this(cfg, 0);
+    }
+
+    /**
+     * Creates a new simulation of the specified cell with the specified parameters.
+     * The UEs of each cell get their own traffic: UE i of cell c uses seed simul_seed + c * num_ues + i, or the
+     * substream "cell" c of the replication stream (cell 0 is the same as a single-cell simulation).
+     *
+     * @param cfg the simulation parameters
+     * @param c   the cell number
+     * @throws SimulationException if the simulation cannot be set up
+     */
+    Simulation (SimulationConfig cfg, int c) {
+	config = cfg.copy();
+	cell = c;
+	event_handler = new EventList(config.simul_length, config.event_list_type, config.timer_wheel ? config.lte_psf : 0);
+	event_pool = new EventPool();
+	out = System.out;
+	trace = null;
+	sampler = null;
+	detector = null;
+	packet_counter = 0;
+	statistics_start = 0.0;
+	statistics_end = config.simul_length;
+	next_checkpoint_tick = Long.MAX_VALUE;
+	if (!config.checkpoint_file.isEmpty() && config.checkpoint_interval > 0) {
+	    next_checkpoint_tick = Math.max(1, Event.toTick(config.checkpoint_interval));
+	}
+	trace_offset = 0;
+
+	// UE and eNB initialization
+	TrafficGenerator[][] tg = createTrafficGenerators(config, cell);
+	enb = new ENB(this, tg[0]);
+	ue = new UE(this, tg[1], enb);
+    }
+
+    /**
+     * Creates the downlink and uplink traffic generators of the UEs of the specified cell. UE i uses the random
+     * streams "ue" i "dl" and "ue" i "ul" of the replication stream, or seed simul_seed + cell * num_ues + i in
+     * both directions without random streams.
+     * Traffic replayed from a recording (see ArrivalRecording) is taken from its streams of UE cell * num_ues + i.
+     *
+     * @param config the simulation parameters
+     * @param cell   the cell number
+     * @return the downlink (index 0) and uplink (index 1) traffic generators, indexed by UE number
+     * @throws SimulationException if a traffic generator cannot be created
+     */
+    static TrafficGenerator[][] createTrafficGenerators (SimulationConfig config, int cell) {
+	RandomStream replication_stream = null;
+	if (config.random_streams) {
+	    replication_stream = new RandomStream(config.simul_seed).substream("replication", config.simul_replication);
+	    if (cell > 0) {
+		replication_stream = replication_stream.substream("cell", cell);
+	    }
+	}
+	int first_ue = cell * config.num_ues;
+	TrafficGenerator[] dl_tg = new TrafficGenerator[config.num_ues];
+	TrafficGenerator[] ul_tg = new TrafficGenerator[config.num_ues];
+	for (int i = 0; i < config.num_ues; i++) {
+	    dl_tg[i] = createTrafficGenerator(config, config.dl_traffic_distribution, config.dl_packet_rate, config.dl_alpha, config.dl_trace_file, config.simul_seed + first_ue + i, true, first_ue + i);
+	    ul_tg[i] = createTrafficGenerator(config, config.ul_traffic_distribution, config.ul_packet_rate, config.ul_alpha, config.ul_trace_file, config.simul_seed + first_ue + i, false, first_ue + i);
+	    if (replication_stream != null) {
+		RandomStream ue_stream = replication_stream.substream("ue", i);
+		dl_tg[i].setRandom(ue_stream.substream("dl"));
+		ul_tg[i].setRandom(ue_stream.substream("ul"));
+	    }
+	}
+	return new TrafficGenerator[][] {dl_tg, ul_tg};
+    }
+
+    /**
+     * Creates a new traffic generator.
+     *
+     * @param config       the simulation parameters
+     * @param distribution traffic distribution (deterministic, poisson, pareto, trace or recording)
+     * @param packet_rate  packet rate (in packets per psf)
+     * @param alpha        shape parameter (if pareto distribution)
+     * @param trace_file   name of the trace or recording file (if trace or recording simulation)
+     * @param seed         seed for the random number generator
+     * @param downlink     true for downlink traffic, false for uplink traffic (if recording simulation)
+     * @param ue           the UE number in the recording (if recording simulation)
+     * @return the new traffic generator
+     */
+    private static TrafficGenerator createTrafficGenerator (SimulationConfig config, String distribution, double packet_rate, double alpha, String trace_file, long seed, boolean downlink, int ue) {
+	TrafficGenerator tg;
+	if (distribution.equals("deterministic")) {
+	    tg = new DeterministicTrafficGenerator(packet_rate, config.lte_psf);
+	} else if (distribution.equals("poisson")) {
+	    tg = new PoissonTrafficGenerator(packet_rate, config.lte_psf);
+	} else if (distribution.equals("pareto")) {
+	    tg = new ParetoTrafficGenerator(packet_rate, alpha, config.lte_psf);
+	} else if (distribution.equals("trace")) {
+	    tg = new TraceTrafficGenerator(trace_file);
+	} else if (distribution.equals("recording")) {
+	    tg = new RecordedTrafficGenerator(trace_file, downlink, ue);
+	} else {
+	    throw new SimulationException("Unknown traffic distribution: " + distribution);
+	}
+	tg.setSeed(seed);
+	tg.setBlockSize(config.arrival_block_size);
+	return tg;
+    }
+
+    /**
+     * Returns a new unique packet identifier.
+     *
+     * @return the next packet identifier
+     */
+    public int nextPacketId () {
+	return packet_counter++;
+    }
+
+    /**
+     * Returns the eNB of this simulation.
+     *
+     * @return the eNB
+     */
+    public ENB getENB () {
+	return enb;
+    }
+
+    /**
+     * Returns the UEs of this simulation.
+     *
+     * @return the UEs
+     */
+    public UE getUE () {
+	return ue;
+    }
+
+    /**
+     * Handles all the pending events up to the end of the simulation and returns its results.
+     * If verbose and no trace writer has been set, the event trace is written as specified by the
+     * trace parameters (to the simulation output by default). Likewise, windowed metrics are sampled if
+     * a metrics file is specified and no sampler has been set. The trace writer and the sampler are closed at the end.
+     * If a checkpoint file is specified, a checkpoint is written before the first event at or after every
+     * multiple of the checkpoint interval, and once the simulation ends.
+     * In steady-state mode (a steady-state precision is specified), the statistics are reset once the initial
+     * transient is detected, and the simulation stops as soon as its estimates are precise enough (see SteadyStateDetector).
+     *
+     * @return the simulation results
+     * @throws SimulationException if an invalid event is found, the trace cannot be written, checkpoints are written while sampling metrics or in steady-state mode, or several cells are simulated (see MultiCellSimulation)
+     */
+    public SimulationResult run () {
+	if (config.num_cells > 1) {
+	    throw new SimulationException("Simulations with several cells must be run by MultiCellSimulation!");
+	}
+	if (!config.checkpoint_file.isEmpty() && (sampler != null || !config.metrics_output_file.isEmpty())) {
+	    throw new SimulationException("Checkpoints cannot be written while sampling metrics!");
+	}
+	if (!config.checkpoint_file.isEmpty() && config.steady_state_precision > 0) {
+	    throw new SimulationException("Checkpoints cannot be written in steady-state mode!");
+	}
+	if (detector == null && config.steady_state_precision > 0) {
+	    detector = new SteadyStateDetector(this, config.steady_state_window, config.steady_state_precision, config.steady_state_confidence);
+	}
+	if (trace == null && config.simul_verbose) {
+	    trace = TraceWriter.open(config.trace_output_file, config.trace_binary, out, trace_offset);
+	    trace.setFilter(config.trace_events, config.trace_nodes, config.trace_ue, config.trace_start, config.trace_end);
+	}
+	if (sampler == null && !config.metrics_output_file.isEmpty()) {
+	    sampler = MetricsSampler.open(this, config.metrics_output_file, config.metrics_binary, config.metrics_window);
+	}
+	long end_tick = Event.toTick(config.simul_length);
+	boolean completed = false;
+	try {
+	    Event event;
+	    while (true) {
+		long next_tick = detector != null ? Math.min(next_checkpoint_tick, detector.getNextWindowTick()) : next_checkpoint_tick;
+		while ((event = event_handler.getNextEvent(true, next_tick - 1)) != null) {
+		    if (sampler != null) {
+			sampler.advance(event.tick);
+		    }
+		    event_handler.handleEvent(event);
+		}
+		if (next_tick > end_tick) {
+		    break;
+		}
+		if (next_tick < next_checkpoint_tick) {
+		    if (detector.endWindow()) {
+			// The steady-state estimates are precise enough
+			end_tick = next_tick;
+			statistics_end = Event.toSeconds(end_tick);
+			break;
+		    }
+		    continue;
+		}
+		next_checkpoint_tick += Math.max(1, Event.toTick(config.checkpoint_interval));
+		checkpoint(config.checkpoint_file);
+	    }
+	    completed = true;
+	    if (!config.checkpoint_file.isEmpty()) {
+		checkpoint(config.checkpoint_file);
+	    }
+	} finally {
+	    if (sampler != null) {
+		// If the simulation fails, the metrics are written up to the failure
+		sampler.close(completed ? end_tick : event_handler.getSimulTick());
+	    }
+	    if (trace != null) {
+		trace.close();
+		out.flush();
+	    }
+	}
+	return getResult();
+    }
+
+    /**
+     * Resets the statistics of the nodes, so that the results only cover the period from the specified instant on.
+     * It must be called between two events.
+     *
+     * @param now the current time (in seconds)
+     */
+    public void resetStatistics (double now) {
+	enb.resetStatistics(now);
+	ue.resetStatistics(now);
+	statistics_start = now;
+    }
+
+    /**
+     * Writes a checkpoint of the simulation to the specified file (see Checkpoint).
+     * It must be called between two events, e.g. before the simulation is run or once it ends.
+     *
+     * @param filename name of the checkpoint file
+     * @throws SimulationException if the checkpoint or the event trace cannot be written
+     */
+    public void checkpoint (String filename) {
+	if (trace != null) {
+	    // The trace is resumed from the bytes written up to this checkpoint
+	    trace.flush();
+	    trace_offset = trace.getBytesWritten();
+	}
+	Checkpoint.write(this, filename);
+    }
+
+    /**
+     * Restores the simulation saved in the specified checkpoint file (see Checkpoint.read).
+     *
+     * @param filename     name of the checkpoint file
+     * @param simul_length new length of the simulation (in seconds), or 0 to keep the saved one
+     * @return the restored simulation, ready to be run
+     * @throws SimulationException if the checkpoint cannot be read or the new length ends before the checkpoint
+     */
+    public static Simulation restore (String filename, double simul_length) {
+	return Checkpoint.read(filename, simul_length);
+    }
+
+    /**
+     * Writes the state of the simulation (packet counter, event list and nodes) to the specified checkpoint stream.
+     *
+     * @param out the checkpoint stream
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeState (ObjectOutput out) throws IOException {
+	out.writeInt(packet_counter);
+	out.writeLong(next_checkpoint_tick);
+	out.writeLong(trace_offset);
+	out.writeLong(event_handler.getSimulTick());
+	out.writeLong(event_handler.getNextSequence());
+	out.writeLong(event_handler.getHandledEvents());
+	List<Event> events = event_handler.getPendingEvents();
+	out.writeInt(events.size());
+	for (Event event : events) {
+	    Checkpoint.writeEvent(out, event);
+	}
+	enb.writeState(out);
+	ue.writeState(out);
+    }
+
+    /**
+     * Replaces the state of the simulation with the one read from the specified checkpoint stream.
+     *
+     * @param in the checkpoint stream
+     * @throws IOException if the stream cannot be read or is corrupted
+     */
+    public void readState (ObjectInput in) throws IOException {
+	int counter = in.readInt();
+	next_checkpoint_tick = in.readLong();
+	trace_offset = in.readLong();
+	long tick = in.readLong();
+	long sequence = in.readLong();
+	long handled = in.readLong();
+	event_handler.reset(tick, sequence, handled);
+	for (int n = in.readInt(); n > 0; n--) {
+	    Checkpoint.readEvent(in, this);
+	}
+	// Restored packet arrivals keep their saved identifiers
+	packet_counter = counter;
+	enb.readState(in);
+	ue.readState(in);
+    }
+
+    /**
+     * Returns the results of the simulation at its end time, covering the period since its statistics were last reset.
+     *
+     * @return the simulation results
+     */
+    public SimulationResult getResult () {
+	SimulationResult result = new SimulationResult();
+	result.simul_length = statistics_end - statistics_start;
+	result.handled_events = event_handler.getHandledEvents();
+	result.enb = enb.getStatistics();
+	result.ue = ue.getStatistics();
+	result.avg_queue_threshold = enb.getAverageQueueThreshold(statistics_start, statistics_end);
+	result.time_in_states = ue.getTimeInStates(statistics_end);
+	result.total_energy = ue.getEnergy(statistics_end);
+	result.energy = result.total_energy / config.num_ues;
+	if (detector != null) {
+	    result.steady_state = true;
+	    result.warmed_up = detector.isWarmedUp();
+	    result.statistics_start = statistics_start;
+	    result.transient_length = detector.getTransientEnd();
+	    result.relative_half_width = detector.getRelativeHalfWidth();
+	}
+	return result;
+    }
+}
@@ -0,0 +1,503 @@
+package es.uvigo.det.labredes.lte;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * This class holds all the parameters of a simulation.
+ * Parameters can be set directly or parsed from config file lines.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class SimulationConfig implements Cloneable, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /* Simulation parameters */
+    /**
+     * Length of the simulation (in seconds). Default = 10s.
+     */
+    public double simul_length = 10;
+    /**
+     * Seed for the simulation. Default = 1.
+     */
+    public long simul_seed = 1;
+    /**
+     * If true the traffic of each UE and direction is generated with its own random stream derived from the
+     * seed and the replication number (see RandomStream). Otherwise UE i uses seed simul_seed + i in both
+     * directions, as in the first versions of the simulator. Default = true.
+     */
+    public boolean random_streams = true;
+    /**
+     * Replication number, from which the random streams of the replication are derived. Default = 0.
+     */
+    public int simul_replication = 0;
+    /**
+     * If true a message for each simulated event is written to the event trace. Default = false.
+     */
+    public boolean simul_verbose = false;
+    /**
+     * Implementation of the future event list (list, heap, pairing or calendar). Default = heap.
+     */
+    public String event_list_type = "heap";
+    /**
+     * Number of packets above which a transmission queue is moved off-heap (0 = never). Default = 0.
+     */
+    public int queue_offheap_threshold = 0;
+    /**
+     * If true the DRX timers of a UE with empty queues are fast-forwarded up to its next packet arrival. Default = true.
+     */
+    public boolean fast_forward = true;
+    /**
+     * If true the UE state transitions (mostly DRX and RRC timers) are kept in a timing wheel of one psf slots
+     * instead of the future event list. Default = true.
+     */
+    public boolean timer_wheel = true;
+    /**
+     * Number of random arrivals generated at once by each traffic generator (0 = one at a time). Default = 0.
+     */
+    public int arrival_block_size = 0;
+
+    /* Event trace parameters (if verbose) */
+    /**
+     * File the event trace is written to (empty = standard output). Default = standard output.
+     */
+    public String trace_output_file = "";
+    /**
+     * If true the event trace is written in binary format instead of text format. Default = false.
+     */
+    public boolean trace_binary = false;
+    /**
+     * Mask of the event types written to the trace (see TraceWriter). Default = all.
+     */
+    public int trace_events = TraceWriter.ALL_EVENTS;
+    /**
+     * Mask of the node types written to the trace (see TraceWriter). Default = all.
+     */
+    public int trace_nodes = TraceWriter.ALL_NODES;
+    /**
+     * The only UE whose events are written to the trace (-1 = all). Default = all.
+     */
+    public int trace_ue = -1;
+    /**
+     * Time window written to the trace (in seconds). Default = whole simulation.
+     */
+    public double trace_start = 0, trace_end = Double.POSITIVE_INFINITY;
+
+    /* Checkpoint parameters */
+    /**
+     * File the checkpoints of the simulation are written to (empty = no checkpoints). Default = no checkpoints.
+     */
+    public String checkpoint_file = "";
+    /**
+     * Simulated time between checkpoints (in seconds; 0 = only at the end of the simulation). Default = 0.
+     */
+    public double checkpoint_interval = 0;
+
+    /* Time-series metrics parameters */
+    /**
+     * File the windowed metrics are written to (empty = no metrics). Default = no metrics.
+     */
+    public String metrics_output_file = "";
+    /**
+     * Length of each metrics window (in seconds). Default = 100ms.
+     */
+    public double metrics_window = 0.1;
+    /**
+     * If true the metrics are written in binary columnar format instead of CSV. Default = false.
+     */
+    public boolean metrics_binary = false;
+
+    /* Steady-state mode parameters */
+    /**
+     * Relative confidence interval half-width of the steady-state estimates at which the simulation stops
+     * (0 = steady-state mode off, the simulation runs for its whole length). Default = off.
+     */
+    public double steady_state_precision = 0;
+    /**
+     * Length of the windows in which the steady-state detector splits the simulation (in seconds). Default = 100ms.
+     */
+    public double steady_state_window = 0.1;
+    /**
+     * Confidence level of the steady-state estimates. Default = 95%.
+     */
+    public double steady_state_confidence = 0.95;
+
+    /* Traffic parameters */
+    public String ul_traffic_distribution = "deterministic";
+    public double ul_packet_rate = 0.1; // in packets per psf
+    public double ul_alpha = 2.5; // if pareto distribution
+    public String ul_trace_file = ""; // if trace or recording simulation
+    public String dl_traffic_distribution = "deterministic";
+    public double dl_packet_rate = 0.1; // in packets per psf
+    public double dl_alpha = 2.5; // if pareto distribution
+    public String dl_trace_file = ""; // if trace or recording simulation
+
+    /* LTE parameters */
+    /**
+     * Physical subframe length (in seconds). Default = 1ms.
+     */
+    public double lte_psf = 0.001;
+    /**
+     * Number of UEs attached to the eNB. Default = 1.
+     */
+    public int num_ues = 1;
+    /**
+     * Number of cells, each one with its own eNB and num_ues UEs (see MultiCellSimulation). Default = 1.
+     */
+    public int num_cells = 1;
+    /**
+     * Handovers per second of each UE to another cell (if several cells). Default = no handovers.
+     */
+    public double handover_rate = 0;
+    /**
+     * Delay of the packets forwarded between eNBs when a UE hands over (in seconds). Default = 10ms.
+     */
+    public double handover_delay = 0.01;
+    /**
+     * Delay required to put the UE in the RRC_CONNECTED state (in psf). Default = 260.
+     */
+    public int connection_delay = 260;
+    /**
+     * If true the UE will disconnect the LTE radio instead of moving into the RRC_IDLE state. Default = false.
+     */
+    public boolean disconnect_radio = false;
+
+    /* UE power model */
+    /**
+     * Power drawn by a UE in each state (in mW), indexed by UEState ordinal. Default = 0mW disconnected,
+     * 11.4mW in IDLE_DRX and CONNECTED_DRX, 594.3mW in IDLE_LISTENING, 1210.7mW in CONNECTING, 1060mW in CONNECTED,
+     * 1500mW in CONNECTED_TX, 1300mW in CONNECTED_RX and 1700mW in CONNECTED_TX_RX.
+     */
+    public double[] ue_state_power = {0, 11.4, 594.3, 1210.7, 1060, 1500, 1300, 1700, 11.4};
+    /**
+     * Energy drawn by a UE in each state transition (in mJ), indexed by old state ordinal * number of states + new state ordinal.
+     * Default = none.
+     */
+    public double[] ue_transition_energy = new double[UEState.values().length * UEState.values().length];
+
+    /* RRC_CONNECTED DRX parameters */
+    public int short_drx_cycle = 32;
+    public int long_drx_cycle = 64;
+    public int short_drx_cycle_timer = 2;
+    public int on_duration = 2;
+    public int inactivity_timer = 10;
+    public int queue_threshold = 1;
+    public int delay_threshold = 1000;
+    public int target_avg_delay = 64;
+
+    /* RRC_IDLE DRX parameters */
+    public int idle_drx_cycle = 1280;
+    public int idle_on_duration = 43;
+    public int idle_inactivity_timer = 10000;
+
+    /**
+     * Creates a new configuration with default parameters.
+     */
+    public SimulationConfig () {}
+
+    /**
+     * Returns a copy of this configuration.
+     *
+     * @return a new configuration with the same parameters
+     */
+    public SimulationConfig copy () {
+	try {
+	    SimulationConfig config = (SimulationConfig) clone();
+	    config.ue_state_power = ue_state_power.clone();
+	    config.ue_transition_energy = ue_transition_energy.clone();
+	    return config;
+	} catch (CloneNotSupportedException e) {
+	    throw new AssertionError(e);
+	}
+    }
+
+    /**
+     * Reads the parameters from the specified config file.
+     *
+     * @param filename name of the config file
+     * @throws SimulationException if the file cannot be read or contains invalid parameters
+     */
+    public void load (String filename) {
+	BufferedReader simul_file;
+	try {
+	    simul_file = new BufferedReader(new FileReader(filename));
+	} catch (FileNotFoundException e) {
+	    throw new SimulationException("Config file not found!");
+	}
+	try {
+	    for (String line; (line = simul_file.readLine()) != null;) {
+		parseLine(line);
+	    }
+	    simul_file.close();
+	} catch (IOException e) {
+	    throw new SimulationException("Error while reading config file!");
+	}
+    }
+
+    /**
+     * Parses one config file line.
+     *
+     * @param line the config file line
+     * @throws SimulationException if the line contains invalid parameters
+     */
+    public void parseLine (String line) {
+	if (line.startsWith(";")) {
+	    // Just a comment
+	    return;
+	}
+	String[] line_fields = line.split("\\s+");
+	try {
+	    if (line_fields[0].equals("PSF")) {
+		try {
+		    lte_psf = Double.parseDouble(line_fields[1]);
+		} catch (NumberFormatException e) {
+		    throw new SimulationException("Config file: invalid physical subframe duration!");
+		}
+	    } else if (line_fields[0].equals("UL_TRAFFIC")) {
+		if (!isTrafficDistribution(line_fields[1])) {
+		    throw new SimulationException("Config file: invalid uplink traffic distribution!");
+		}
+		ul_traffic_distribution = line_fields[1];
+		if (line_fields[1].equals("trace") || line_fields[1].equals("recording")) {
+		    ul_trace_file = line_fields[2];
+		} else {
+		    try {
+			ul_packet_rate = Double.parseDouble(line_fields[2]);
+		    } catch (NumberFormatException e) {
+			throw new SimulationException("Config file: invalid uplink packet rate!");
+		    }
+		    if (line_fields[1].equals("pareto")) {
+			try {
+			    ul_alpha = Double.parseDouble(line_fields[3]);
+			} catch (NumberFormatException e) {
+			    throw new SimulationException("Config file: invalid uplink alpha parameter!");
+			}
+		    }
+		}
+	    } else if (line_fields[0].equals("DL_TRAFFIC")) {
+		if (!isTrafficDistribution(line_fields[1])) {
+		    throw new SimulationException("Config file: invalid downlink traffic distribution!");
+		}
+		dl_traffic_distribution = line_fields[1];
+		if (line_fields[1].equals("trace") || line_fields[1].equals("recording")) {
+		    dl_trace_file = line_fields[2];
+		} else {
+		    try {
+			dl_packet_rate = Double.parseDouble(line_fields[2]);
+		    } catch (NumberFormatException e) {
+			throw new SimulationException("Config file: invalid downlink packet rate!");
+		    }
+		    if (line_fields[1].equals("pareto")) {
+			try {
+			    dl_alpha = Double.parseDouble(line_fields[3]);
+			} catch (NumberFormatException e) {
+			    throw new SimulationException("Config file: invalid downlink alpha parameter!");
+			}
+		    }
+		}
+	    } else if (line_fields[0].equals("RRC_CONNECTED_DRX")) {
+		try {
+		    short_drx_cycle = Integer.parseInt(line_fields[1]);
+		    long_drx_cycle = Integer.parseInt(line_fields[2]);
+		    short_drx_cycle_timer = Integer.parseInt(line_fields[3]);
+		    on_duration = Integer.parseInt(line_fields[4]);
+		    inactivity_timer = Integer.parseInt(line_fields[5]);
+		    queue_threshold = Integer.parseInt(line_fields[6]);
+		    if (queue_threshold != 1) {
+			delay_threshold = Integer.parseInt(line_fields[7]);
+			if (queue_threshold == 0) {
+			    target_avg_delay = Integer.parseInt(line_fields[8]);
+			}
+		    }
+		} catch (NumberFormatException e) {
+		    throw new SimulationException("Config file: invalid DRX RRC_CONNECTED configuration!");
+		}
+	    } else if (line_fields[0].equals("RRC_IDLE_DRX")) {
+		try {
+		    idle_drx_cycle = Integer.parseInt(line_fields[1]);
+		    idle_on_duration = Integer.parseInt(line_fields[2]);
+		    idle_inactivity_timer = Integer.parseInt(line_fields[3]);
+		    connection_delay = Integer.parseInt(line_fields[4]);
+		} catch (NumberFormatException e) {
+		    throw new SimulationException("Config file: invalid DRX RRC_IDLE configuration!");
+		}
+	    } else if (line_fields[0].equals("NUM_UES")) {
+		try {
+		    num_ues = Integer.parseInt(line_fields[1]);
+		} catch (NumberFormatException e) {
+		    num_ues = 0;
+		}
+		if (num_ues < 1) {
+		    throw new SimulationException("Config file: invalid number of UEs!");
+		}
+	    } else if (line_fields[0].equals("CELLS")) {
+		try {
+		    num_cells = Integer.parseInt(line_fields[1]);
+		    if (line_fields.length > 2) {
+			handover_rate = Double.parseDouble(line_fields[2]);
+		    }
+		    if (line_fields.length > 3) {
+			handover_delay = Double.parseDouble(line_fields[3]);
+		    }
+		} catch (NumberFormatException e) {
+		    throw new SimulationException("Config file: invalid cells configuration!");
+		}
+		if (num_cells < 1 || handover_rate < 0 || Event.toTick(handover_delay) < 1) {
+		    throw new SimulationException("Config file: invalid cells configuration!");
+		}
+	    } else if (line_fields[0].equals("QUEUE_OFFHEAP_THRESHOLD")) {
+		try {
+		    queue_offheap_threshold = Integer.parseInt(line_fields[1]);
+		} catch (NumberFormatException e) {
+		    throw new SimulationException("Config file: invalid off-heap queue threshold!");
+		}
+	    } else if (line_fields[0].equals("FAST_FORWARD")) {
+		if (!line_fields[1].equals("on") && !line_fields[1].equals("off")) {
+		    throw new SimulationException("Config file: invalid fast-forward mode!");
+		}
+		fast_forward = line_fields[1].equals("on");
+	    } else if (line_fields[0].equals("TIMER_WHEEL")) {
+		if (!line_fields[1].equals("on") && !line_fields[1].equals("off")) {
+		    throw new SimulationException("Config file: invalid timer wheel option!");
+		}
+		timer_wheel = line_fields[1].equals("on");
+	    } else if (line_fields[0].equals("RANDOM_STREAMS")) {
+		if (!line_fields[1].equals("on") && !line_fields[1].equals("off")) {
+		    throw new SimulationException("Config file: invalid random streams mode!");
+		}
+		random_streams = line_fields[1].equals("on");
+	    } else if (line_fields[0].equals("ARRIVAL_BLOCK")) {
+		try {
+		    arrival_block_size = Integer.parseInt(line_fields[1]);
+		} catch (NumberFormatException e) {
+		    arrival_block_size = -1;
+		}
+		if (arrival_block_size < 0) {
+		    throw new SimulationException("Config file: invalid arrival block size!");
+		}
+	    } else if (line_fields[0].equals("EVENT_LIST")) {
+		if (FutureEventList.create(line_fields[1]) == null) {
+		    throw new SimulationException("Config file: invalid event list type!");
+		}
+		event_list_type = line_fields[1];
+	    } else if (line_fields[0].equals("TRACE_OUTPUT")) {
+		trace_output_file = line_fields[1].equals("-") ? "" : line_fields[1];
+		if (line_fields.length > 2) {
+		    if (!line_fields[2].equals("text") && !line_fields[2].equals("binary")) {
+			throw new SimulationException("Config file: invalid trace format!");
+		    }
+		    trace_binary = line_fields[2].equals("binary");
+		}
+	    } else if (line_fields[0].equals("METRICS_OUTPUT")) {
+		metrics_output_file = line_fields[1];
+		try {
+		    if (line_fields.length > 2) {
+			metrics_window = Double.parseDouble(line_fields[2]);
+		    }
+		} catch (NumberFormatException e) {
+		    metrics_window = 0;
+		}
+		if (metrics_window <= 0) {
+		    throw new SimulationException("Config file: invalid metrics window!");
+		}
+		if (line_fields.length > 3) {
+		    if (!line_fields[3].equals("csv") && !line_fields[3].equals("binary")) {
+			throw new SimulationException("Config file: invalid metrics format!");
+		    }
+		    metrics_binary = line_fields[3].equals("binary");
+		}
+	    } else if (line_fields[0].equals("CHECKPOINT")) {
+		checkpoint_file = line_fields[1];
+		try {
+		    if (line_fields.length > 2) {
+			checkpoint_interval = Double.parseDouble(line_fields[2]);
+		    }
+		} catch (NumberFormatException e) {
+		    checkpoint_interval = -1;
+		}
+		if (checkpoint_interval < 0) {
+		    throw new SimulationException("Config file: invalid checkpoint interval!");
+		}
+	    } else if (line_fields[0].equals("STEADY_STATE")) {
+		try {
+		    steady_state_precision = Double.parseDouble(line_fields[1]);
+		    if (line_fields.length > 2) {
+			steady_state_window = Double.parseDouble(line_fields[2]);
+		    }
+		    if (line_fields.length > 3) {
+			steady_state_confidence = Double.parseDouble(line_fields[3]);
+		    }
+		} catch (NumberFormatException e) {
+		    throw new SimulationException("Config file: invalid steady-state parameters!");
+		}
+		if (steady_state_precision < 0 || steady_state_window <= 0 || steady_state_confidence <= 0 || steady_state_confidence >= 1) {
+		    throw new SimulationException("Config file: invalid steady-state parameters!");
+		}
+	    } else if (line_fields[0].equals("POWER")) {
+		try {
+		    double power = Double.parseDouble(line_fields[2]);
+		    if (power < 0) {
+			throw new SimulationException("Config file: invalid power model!");
+		    }
+		    ue_state_power[UEState.valueOf(line_fields[1]).ordinal()] = power;
+		} catch (IllegalArgumentException e) {
+		    throw new SimulationException("Config file: invalid power model!");
+		}
+	    } else if (line_fields[0].equals("TRANSITION_ENERGY")) {
+		try {
+		    double energy = Double.parseDouble(line_fields[3]);
+		    if (energy < 0) {
+			throw new SimulationException("Config file: invalid power model!");
+		    }
+		    ue_transition_energy[UEState.valueOf(line_fields[1]).ordinal() * UEState.values().length + UEState.valueOf(line_fields[2]).ordinal()] = energy;
+		} catch (IllegalArgumentException e) {
+		    throw new SimulationException("Config file: invalid power model!");
+		}
+	    } else if (line_fields[0].equals("TRACE_EVENTS")) {
+		trace_events = 0;
+		for (int i = 1; i < line_fields.length; i++) {
+		    int type = Arrays.asList(TraceWriter.TYPE_NAMES).indexOf(line_fields[i]);
+		    if (type < 0) {
+			throw new SimulationException("Config file: invalid trace event type!");
+		    }
+		    trace_events |= 1 << type;
+		}
+	    } else if (line_fields[0].equals("TRACE_NODES")) {
+		trace_nodes = 0;
+		for (int i = 1; i < line_fields.length; i++) {
+		    if (line_fields[i].equals("ENB")) {
+			trace_nodes |= 1 << TraceWriter.NODE_ENB;
+		    } else if (line_fields[i].equals("UE")) {
+			trace_nodes |= 1 << TraceWriter.NODE_UE;
+		    } else {
+			throw new SimulationException("Config file: invalid trace node type!");
+		    }
+		}
+	    } else if (line_fields[0].equals("TRACE_UE")) {
+		try {
+		    trace_ue = Integer.parseInt(line_fields[1]);
+		} catch (NumberFormatException e) {
+		    throw new SimulationException("Config file: invalid trace UE!");
+		}
+	    } else if (line_fields[0].equals("TRACE_WINDOW")) {
+		try {
+		    trace_start = Double.parseDouble(line_fields[1]);
+		    trace_end = Double.parseDouble(line_fields[2]);
+		} catch (NumberFormatException e) {
+		    throw new SimulationException("Config file: invalid trace window!");
+		}
+		if (trace_start < 0 || trace_end < trace_start) {
+		    throw new SimulationException("Config file: invalid trace window!");
+		}
+	    }
+	} catch (ArrayIndexOutOfBoundsException e) {
+	    throw new SimulationException("Config file: missing parameters in line: " + line);
+	}
+    }
+
+    private static boolean isTrafficDistribution (String distribution) {
+	return distribution.equals("deterministic") || distribution.equals("poisson") || distribution.equals("pareto") || distribution.equals("trace") ||
+	    distribution.equals("recording");
+    }
+}
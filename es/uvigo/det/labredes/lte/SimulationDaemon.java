@@ -0,0 +1,308 @@
+package es.uvigo.det.labredes.lte;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.*;
+
+/**
+ * SimulationDaemon: Java program that keeps one JVM resident and runs the simulation jobs it receives, so that
+ * short simulations do not pay for the JVM startup, class loading and JIT warm-up every time. Jobs are read from
+ * standard input or, with option -u, from the clients of a Unix-domain socket. They are run concurrently on a
+ * fixed-size pool of workers, and the results of each job are streamed back to its client as soon as it finishes.
+ * <p>
+ * A job consists of config file lines (see SimulationConfig), which override those of the base config file, and the
+ * lines LENGTH simulation_length and SEED simulation_seed, followed by a line RUN [job_id]. Its results are sent back
+ * as a line RESULT job_id, the output of LteSimulator and a line END job_id, or as a line ERROR job_id message.
+ * Jobs are numbered 1, 2, ... within each client if no identifier is given. A line QUIT, or the end of the input,
+ * ends the client once its pending jobs finish. Reading stops while the pool has as many jobs waiting as
+ * allowed, so clients that submit jobs faster than they are run are slowed down.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public final class SimulationDaemon {
+    /**
+     * The configuration every job starts from.
+     */
+    private final SimulationConfig base;
+    private final ExecutorService pool;
+    /* Jobs that may be accepted before any of the accepted ones finishes (running or waiting) */
+    private final Semaphore slots;
+
+    /**
+     * Jobs read from one client, whose results are written back to it.
+     */
+    private final class Session implements Runnable {
+	private final BufferedReader in;
+	private final PrintStream out;
+	private final Closeable connection;
+	/* Jobs accepted whose results have not been written yet */
+	private int pending;
+
+	Session (InputStream in, OutputStream out, Closeable connection) {
+	    this.in = new BufferedReader(new InputStreamReader(in));
+	    this.out = new PrintStream(new BufferedOutputStream(out), false);
+	    this.connection = connection;
+	    pending = 0;
+	}
+
+	public void run () {
+	    List<String> lines = new ArrayList<String>();
+	    int next_id = 1;
+	    try {
+		for (String line; (line = in.readLine()) != null;) {
+		    line = line.trim();
+		    if (line.isEmpty() || line.startsWith(";")) {
+			continue;
+		    }
+		    String[] fields = line.split("\\s+");
+		    if (fields[0].equals("QUIT")) {
+			break;
+		    } else if (fields[0].equals("RUN")) {
+			String id = fields.length > 1 ? fields[1] : String.valueOf(next_id);
+			next_id++;
+			submit(id, lines);
+			lines = new ArrayList<String>();
+		    } else {
+			lines.add(line);
+		    }
+		}
+	    } catch (IOException e) {
+		// The client is gone, but the jobs already accepted are finished anyway
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	    synchronized (this) {
+		while (pending > 0) {
+		    try {
+			wait();
+		    } catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			break;
+		    }
+		}
+	    }
+	    out.flush();
+	    try {
+		connection.close();
+	    } catch (IOException e) {
+		// Nothing else to do with this client
+	    }
+	}
+
+	/* Waits for a free slot of the pool and submits the job */
+	private void submit (final String id, final List<String> lines) throws InterruptedException {
+	    slots.acquire();
+	    synchronized (this) {
+		pending++;
+	    }
+	    pool.execute(new Runnable() {
+		    public void run () {
+			try {
+			    write(id, runJob(lines));
+			} finally {
+			    slots.release();
+			    synchronized (Session.this) {
+				pending--;
+				Session.this.notifyAll();
+			    }
+			}
+		    }
+		});
+	}
+
+	/* Writes the results of a job at once, so that those of concurrent jobs are not interleaved */
+	private synchronized void write (String id, String result) {
+	    if (result.startsWith("ERROR: ")) {
+		out.format("ERROR %s %s%n", id, result.substring(7));
+	    } else {
+		out.format("RESULT %s%n", id);
+		out.print(result);
+		out.format("END %s%n", id);
+	    }
+	    out.flush();
+	}
+    }
+
+    private SimulationDaemon (SimulationConfig base, int workers, int queue_length) {
+	this.base = base;
+	pool = Executors.newFixedThreadPool(workers);
+	slots = new Semaphore(workers + queue_length);
+    }
+
+    /* Runs one job and returns its output, or ERROR: followed by the error message */
+    private String runJob (List<String> lines) {
+	SimulationConfig config = base.copy();
+	try {
+	    for (String line : lines) {
+		String[] fields = line.split("\\s+");
+		if (fields[0].equals("LENGTH")) {
+		    try {
+			config.simul_length = Double.parseDouble(fields[1]);
+		    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			throw new SimulationException("Invalid simulation length!");
+		    }
+		    if (config.simul_length <= 0) {
+			throw new SimulationException("Invalid simulation length!");
+		    }
+		} else if (fields[0].equals("SEED")) {
+		    try {
+			config.simul_seed = Long.parseLong(fields[1]);
+		    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			throw new SimulationException("Invalid simulation seed!");
+		    }
+		} else {
+		    config.parseLine(line);
+		}
+	    }
+	    // Jobs already run concurrently, so the cells of each one are simulated by a single worker
+	    SimulationResult result = config.num_cells > 1 ? new MultiCellSimulation(config).run(1) : new Simulation(config).run();
+	    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+	    result.print(new PrintStream(buffer, true));
+	    return buffer.toString();
+	} catch (SimulationException e) {
+	    return "ERROR: " + e.getMessage();
+	} catch (RuntimeException e) {
+	    // A failed job must not stop the daemon
+	    return "ERROR: Simulation failed: " + e;
+	}
+    }
+
+    /*
+     * Accepts clients of the Unix-domain socket forever, each one served by its own thread.
+     * Unix-domain sockets are opened by reflection, since they are only available from Java 16 on
+     * and the simulator is still compiled for Java 11.
+     */
+    private void serve (final Path socket_path) throws IOException {
+	ServerSocketChannel server;
+	SocketAddress address;
+	try {
+	    server = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+	    address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class).invoke(null, socket_path);
+	} catch (InvocationTargetException e) {
+	    throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+	} catch (ReflectiveOperationException | IllegalArgumentException e) {
+	    throw new IOException("Unix-domain sockets require Java 16 or later");
+	}
+	Files.deleteIfExists(socket_path);
+	server.bind(address);
+	Runtime.getRuntime().addShutdownHook(new Thread() {
+		public void run () {
+		    try {
+			Files.deleteIfExists(socket_path);
+		    } catch (IOException e) {
+			// The socket file is left behind
+		    }
+		}
+	    });
+	while (true) {
+	    SocketChannel client = server.accept();
+	    Thread session = new Thread(new Session(newInputStream(client), newOutputStream(client), client), "daemon-client");
+	    session.setDaemon(true);
+	    session.start();
+	}
+    }
+
+    /*
+     * Streams of a socket channel. Unlike those of Channels, they do not lock the channel, so the results of a
+     * client can be written while its next jobs are being read.
+     */
+    private static InputStream newInputStream (final SocketChannel channel) {
+	return new InputStream() {
+		public int read () throws IOException {
+		    byte[] b = new byte[1];
+		    return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+
+		public int read (byte[] b, int off, int len) throws IOException {
+		    return len == 0 ? 0 : channel.read(ByteBuffer.wrap(b, off, len));
+		}
+	    };
+    }
+
+    private static OutputStream newOutputStream (final SocketChannel channel) {
+	return new OutputStream() {
+		public void write (int b) throws IOException {
+		    write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		public void write (byte[] b, int off, int len) throws IOException {
+		    ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+		    while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		    }
+		}
+	    };
+    }
+
+    /**
+     * Main method.
+     * Usage: java SimulationDaemon [-f config_file] [-u socket_path] [-j workers] [-q queue_length]
+     * Without -u, jobs are read from standard input and their results are written to standard output.
+     */
+    public static void main (String[] args) {
+	String config_file = null;
+	String socket_path = null;
+	int workers = Runtime.getRuntime().availableProcessors();
+	int queue_length = -1;
+
+	// Arguments parsing
+	for (int i = 0; i < args.length; i++) {
+	    try {
+		if (args[i].equals("-f")) {
+		    config_file = args[++i];
+		} else if (args[i].equals("-u")) {
+		    socket_path = args[++i];
+		} else if (args[i].equals("-j")) {
+		    workers = Integer.parseInt(args[++i]);
+		} else if (args[i].equals("-q")) {
+		    queue_length = Integer.parseInt(args[++i]);
+		} else {
+		    LteSimulator.printError("Unknown argument: " + args[i] + "\nUsage: java SimulationDaemon [-f config_file] [-u socket_path] [-j workers] [-q queue_length]");
+		}
+	    } catch (NumberFormatException e) {
+		LteSimulator.printError("Invalid value for argument " + args[i - 1] + "!");
+	    } catch (ArrayIndexOutOfBoundsException e) {
+		LteSimulator.printError("Missing value for argument " + args[i - 1] + "!");
+	    }
+	}
+	if (queue_length < 0) {
+	    queue_length = workers;
+	}
+	if (workers < 1 || queue_length < 0) {
+	    LteSimulator.printError("Invalid daemon settings!");
+	}
+
+	SimulationConfig base = new SimulationConfig();
+	if (config_file != null) {
+	    try {
+		base.load(config_file);
+	    } catch (SimulationException e) {
+		LteSimulator.printError(e.getMessage());
+	    }
+	}
+
+	SimulationDaemon daemon = new SimulationDaemon(base, workers, queue_length);
+	if (socket_path == null) {
+	    daemon.new Session(System.in, System.out, System.in).run();
+	    daemon.pool.shutdown();
+	} else {
+	    try {
+		daemon.serve(Paths.get(socket_path));
+	    } catch (IOException e) {
+		LteSimulator.printError("Cannot listen on socket " + socket_path + ": " + e.getMessage());
+	    }
+	}
+    }
+}
@@ -0,0 +1,30 @@
+package es.uvigo.det.labredes.lte;
+
+/**
+ * This exception is thrown when a simulation cannot be configured or run.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class SimulationException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new exception with the specified message.
+     *
+     * @param message the error message
+     */
+    public SimulationException (String message) {
+	super(message);
+    }
+
+    /**
+     * Creates a new exception with the specified message and cause.
+     *
+     * @param message the error message
+     * @param cause   the cause of the error
+     */
+    public SimulationException (String message, Throwable cause) {
+	super(message, cause);
+    }
+}
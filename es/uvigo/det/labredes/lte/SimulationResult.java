@@ -0,0 +1,176 @@
+package es.uvigo.det.labredes.lte;
+
+import java.io.PrintStream;
+
+/**
+ * This class holds the results of a simulation.
+ * Node statistics are aggregated over all the UEs.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class SimulationResult {
+    /**
+     * Packet statistics of one node aggregated over all its UEs.
+     */
+    public static class NodeResult {
+	/**
+	 * The label of the node (ENB or UE).
+	 */
+	public String label;
+	public int packets_received, packets_sent, packets_dropped;
+	public double sum_packets_delay, maximum_packet_delay;
+	/**
+	 * The histogram of packet delays.
+	 */
+	public DelayHistogram delay_histogram;
+
+	/**
+	 * Returns the average delay of the packets sent.
+	 *
+	 * @return the average packet delay (in seconds)
+	 */
+	public double getAverageDelay () {
+	    return sum_packets_delay / packets_sent;
+	}
+
+	/**
+	 * Adds the statistics of the same node of another cell to these ones.
+	 *
+	 * @param other the statistics of the node of the other cell
+	 */
+	public void add (NodeResult other) {
+	    packets_received += other.packets_received;
+	    packets_sent += other.packets_sent;
+	    packets_dropped += other.packets_dropped;
+	    sum_packets_delay += other.sum_packets_delay;
+	    maximum_packet_delay = Math.max(maximum_packet_delay, other.maximum_packet_delay);
+	    delay_histogram.add(other.delay_histogram);
+	}
+
+	/**
+	 * Prints the node statistics on the specified stream.
+	 *
+	 * @param out the output stream
+	 */
+	public void print (PrintStream out) {
+	    out.format("%s packets: received %d sent %d dropped %d %n", label, packets_received, packets_sent, packets_dropped);
+	    if (packets_sent > 0) {
+		out.format("%s packet delay: average %.9f max %.9f %n", label, getAverageDelay(), maximum_packet_delay);
+		printPercentiles(out, label, delay_histogram);
+	    }
+	}
+    }
+
+    /**
+     * Percentiles of the packet delay printed with the node statistics.
+     */
+    public static final double[] DELAY_PERCENTILES = {50, 95, 99, 99.9};
+
+    /**
+     * Prints the packet delay percentiles of the specified histogram on the specified stream.
+     *
+     * @param out       the output stream
+     * @param label     the label of the node
+     * @param histogram the histogram of packet delays
+     */
+    public static void printPercentiles (PrintStream out, String label, DelayHistogram histogram) {
+	StringBuilder line = new StringBuilder(label).append(" packet delay percentiles:");
+	for (double p : DELAY_PERCENTILES) {
+	    line.append(String.format(" p%s %.9f", p == Math.rint(p) ? String.valueOf((int) p) : String.valueOf(p), histogram.getPercentile(p)));
+	}
+	out.format("%s %n", line);
+    }
+
+    /**
+     * Length of the simulation (in seconds).
+     */
+    public double simul_length;
+    /**
+     * The number of events handled.
+     */
+    public long handled_events;
+    /**
+     * The eNB statistics.
+     */
+    public NodeResult enb;
+    /**
+     * The UE statistics.
+     */
+    public NodeResult ue;
+    /**
+     * The average DRX queue threshold of the eNB.
+     */
+    public double avg_queue_threshold;
+    /**
+     * Average time spent by the UEs in each state, indexed by UEState ordinal.
+     */
+    public double[] time_in_states;
+    /**
+     * Total energy drawn by the UEs, and average energy drawn by each UE (in joules).
+     */
+    public double total_energy, energy;
+    /**
+     * True if the simulation was run in steady-state mode, and true if its initial transient was detected.
+     */
+    public boolean steady_state, warmed_up;
+    /**
+     * In steady-state mode, the instant at which the statistics were reset and the length of the initial transient (in seconds).
+     */
+    public double statistics_start, transient_length;
+    /**
+     * In steady-state mode, the largest relative confidence interval half-width of the steady-state estimates.
+     */
+    public double relative_half_width = Double.NaN;
+    /**
+     * The number of cells simulated (see MultiCellSimulation).
+     */
+    public int num_cells = 1;
+    /**
+     * The number of handovers between cells, and the packets forwarded between eNBs.
+     */
+    public long handovers, forwarded_packets;
+
+    /**
+     * Returns the average time spent by the UEs in the specified state.
+     *
+     * @param state the UE state
+     * @return the average time spent in the state (in seconds)
+     */
+    public double getTimeInState (UEState state) {
+	return time_in_states[state.ordinal()];
+    }
+
+    /**
+     * Returns the average power drawn by each UE.
+     *
+     * @return the average power (in mW)
+     */
+    public double getAveragePower () {
+	return 1000 * energy / simul_length;
+    }
+
+    /**
+     * Prints the simulation results on the specified stream.
+     *
+     * @param out the output stream
+     */
+    public void print (PrintStream out) {
+	enb.print(out);
+	out.format("ENB average DRX queue threshold: %.9f %n", avg_queue_threshold);
+	ue.print(out);
+	for (UEState st : UEState.values()) {
+	    double time_in_state = getTimeInState(st);
+	    out.format("UE time in state %s: %.9f %.2f %% %n", st, time_in_state, 100.0 * time_in_state / simul_length);
+	}
+	out.format("UE energy: total %.9f J average %.9f J average power %.6f mW %n", total_energy, energy, getAveragePower());
+	if (num_cells > 1) {
+	    out.format("Cells %d handovers %d forwarded packets %d %n", num_cells, handovers, forwarded_packets);
+	}
+	if (steady_state && warmed_up) {
+	    out.format("Steady state: transient %.9f deleted %.9f measured %.9f relative half-width %.6f %n", transient_length, statistics_start, simul_length, relative_half_width);
+	} else if (steady_state) {
+	    out.format("Steady state: warm-up not detected %n");
+	}
+    }
+}
@@ -0,0 +1,83 @@
+package es.uvigo.det.labredes.lte;
+
+import java.util.List;
+import java.util.ArrayList;
+
+/**
+ * This class extends FutureEventList class to store pending events in an insertion-sorted array list.
+ * Insertions and removals take linear time.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class SortedListFutureEventList extends FutureEventList {
+    private List<Event> list;
+
+    /**
+     * Creates a new empty sorted list.
+     */
+    public SortedListFutureEventList () {
+	list = new ArrayList<Event>();
+    }
+
+    /**
+     * Adds the specified event to the sorted list.
+     *
+     * @param event the Event to be added
+     */
+    public void add (Event event) {
+	int i = 0;
+	int list_size = list.size();
+	while (i < list_size && !precedes(event, list.get(i))) {
+	    i++;
+	}
+	list.add(i, event);
+    }
+
+    /**
+     * Returns the earliest event without removing it.
+     *
+     * @return the earliest event or null if the sorted list is empty
+     */
+    public Event peek () {
+	return list.isEmpty() ? null : list.get(0);
+    }
+
+    /**
+     * Removes and returns the earliest event.
+     *
+     * @return the earliest event or null if the sorted list is empty
+     */
+    public Event poll () {
+	return list.isEmpty() ? null : list.remove(0);
+    }
+
+    /**
+     * Removes the specified pending event.
+     *
+     * @param event the pending Event to be removed
+     * @return true if the event has been removed from the sorted list
+     */
+    public boolean cancel (Event event) {
+	for (int i = 0; i < list.size(); i++) {
+	    if (list.get(i) == event) {
+		list.remove(i);
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Returns the number of pending events.
+     *
+     * @return the number of pending events
+     */
+    public int size () {
+	return list.size();
+    }
+
+    protected void collect (List<Event> events) {
+	events.addAll(list);
+    }
+}
@@ -7,21 +7,54 @@ package es.uvigo.det.labredes.lte;
  * @version 1.0
  */
 public class StateTransitionEvent extends Event<UE> {
+    /**
+     * The name of the method that handles this type of event.
+     */
+    public static final String HANDLER_METHOD = "handleStateTransitionEvent";
     /**
      * The new state of the UE.
      */
     public UEState new_state;
 
+    /**
+     * Creates a new event representing a state transition at the UE handled by the UE handleStateTransitionEvent method.
+     *
+     * @param t     instant at which the UE changes its state
+     * @param node  UE node that handles the state transition
+     * @param ue    UE that changes its state
+     * @param state new state of the UE
+     */
+    public StateTransitionEvent (double t, UE node, int ue, UEState state) {
+	this(t, node, HANDLER_METHOD, state);
+	this.ue = ue;
+    }
+
     /**
      * Creates a new event representing a state transition at the UE.
      *
      * @param t      instant at which the UE changes its state
-     * @param ue     UE that changes its state
+     * @param node   UE node that handles the state transition
      * @param method name of the method that handles the state transition
      * @param state  new state of the UE
      */
-    public StateTransitionEvent (double t, UE ue, String method, UEState state) {
-	super(t, ue, method);
+    public StateTransitionEvent (double t, UE node, String method, UEState state) {
+	super(t, node, method);
+	direct_dispatch = method.equals(HANDLER_METHOD);
+	new_state = state;
+    }
+
+    /**
+     * Reinitializes this recycled event to represent a state transition at the UE handled by the UE handleStateTransitionEvent method.
+     *
+     * @param t     instant at which the UE changes its state
+     * @param node  UE node that handles the state transition
+     * @param ue    UE that changes its state
+     * @param state new state of the UE
+     */
+    void reset (double t, UE node, int ue, UEState state) {
+	reset(t, node, HANDLER_METHOD);
+	direct_dispatch = true;
+	this.ue = ue;
 	new_state = state;
     }
 
@@ -34,6 +67,7 @@ public class StateTransitionEvent extends Event<UE> {
     public boolean equals (Object event) {
 	if (event instanceof StateTransitionEvent && 
 	    time == ((Event) event).time && handler.equals(((Event) event).handler) && handler_method_name.equals(((Event) event).handler_method_name) &&
+	    ue == ((Event) event).ue &&
 	    new_state == ((StateTransitionEvent) event).new_state) {
 	    return true;
 	}
@@ -41,9 +75,34 @@ public class StateTransitionEvent extends Event<UE> {
     }
 
     /**
-     * Prints on standard output a message describing the state transition event.
+     * Returns a hash code consistent with equals.
+     *
+     * @return a hash code for this state transition event
+     */
+    public int hashCode () {
+	return 31 * (31 * (31 * Double.hashCode(time) + handler.hashCode()) + ue) + new_state.ordinal();
+    }
+
+    /**
+     * Invokes the handleStateTransitionEvent method on the handler UE.
+     */
+    public void dispatch () {
+	handler.handleStateTransitionEvent(this);
+    }
+
+    /**
+     * Returns this state transition event to its pool, if any.
+     */
+    public void recycle () {
+	if (pool != null) {
+	    pool.release(this);
+	}
+    }
+
+    /**
+     * Prints on the simulation output a message describing the state transition event.
      */
     public void print () {
-	System.out.format("%.9f UE StateTransitionEvent %s %n", time, new_state);
+	handler.simulation.out.format("%.9f %s StateTransitionEvent %s %n", time, handler.getLabel(ue), new_state);
     }
 }
\ No newline at end of file
@@ -0,0 +1,353 @@
+package es.uvigo.det.labredes.lte;
+
+/**
+ * This class removes the initial transient of a simulation and stops it once its steady-state estimates are precise enough.
+ * The simulated time is split into fixed windows (e.g. every 100 ms), and the packet delays of each node and the
+ * energy drawn by the UEs in each state and in total (see the power model of SimulationConfig) during each window
+ * are accumulated into a series of batches. The series holds
+ * at most MAX_BATCHES batches: once it is full, adjacent batches are merged, so memory stays constant however long
+ * the simulation runs.
+ * <p>
+ * First, the end of the initial transient is located with the MSER-5 rule on the delay series of each node:
+ * batches are grouped in fives, and the truncation point is the number of groups deleted from the start of the
+ * series that minimizes the squared standard error of the mean of the remaining groups. The transient ends once
+ * the truncation point of both nodes falls within the first half of the series. The statistics of the simulation
+ * are then reset, so that all of them exclude the transient (and the part of the steady state observed while it was
+ * being detected).
+ * <p>
+ * Then, the batches collected after the reset are grouped into NUM_BATCH_MEANS batch means, and the simulation stops
+ * once the confidence interval half-width of the average delay of each node, of the average power drawn by the UEs and
+ * of the average power drawn in each state falls below the specified fraction of the estimate. States that draw less
+ * than MIN_ENERGY_FRACTION of the energy only need to be estimated to within that fraction of MIN_ENERGY_FRACTION of
+ * the average power drawn by the UEs.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class SteadyStateDetector {
+    /**
+     * Maximum number of batches of the series.
+     */
+    public static final int MAX_BATCHES = 1000;
+    /**
+     * Number of batches grouped by the MSER rule.
+     */
+    public static final int MSER_GROUP = 5;
+    /**
+     * Minimum number of groups of the series before the MSER rule is applied.
+     */
+    public static final int MIN_MSER_GROUPS = 10;
+    /**
+     * Number of batch means from which the confidence intervals are computed.
+     */
+    public static final int NUM_BATCH_MEANS = 30;
+    /**
+     * Fraction of the energy below which the precision of a state is relative to this fraction of the average power
+     * drawn by the UEs instead of to its own estimate.
+     */
+    public static final double MIN_ENERGY_FRACTION = 0.01;
+
+    private static final int NUM_STATES = UEState.values().length;
+
+    private Simulation simulation;
+    private double precision, confidence;
+    private long window_ticks, next_window_tick;
+    /* Windows per batch, and windows accumulated in the current batch */
+    private int batch_windows, current_windows;
+    private int num_batches;
+    /* Batches of the series: sum and number of the packet delays of each node, and average energy drawn by each UE in each state and in total */
+    private double[] enb_delays, ue_delays;
+    private long[] enb_sent, ue_sent;
+    private double[][] state_energies;
+    private double[] energies;
+    /* Statistics of the simulation at the end of the last window */
+    private double last_enb_delays, last_ue_delays;
+    private long last_enb_sent, last_ue_sent;
+    private double[] last_state_energies;
+    private double last_energy;
+    /* Means of the MSER groups */
+    private double[] group_means;
+    private boolean warmed_up;
+    private double transient_end, statistics_start, relative_half_width;
+
+    /**
+     * Creates a new detector for the specified simulation.
+     *
+     * @param sim    the simulation, which must not have handled any event yet
+     * @param window length of each window (in seconds)
+     * @param prec   relative confidence interval half-width at which the simulation stops
+     * @param conf   confidence level of the intervals (e.g. 0.95)
+     */
+    public SteadyStateDetector (Simulation sim, double window, double prec, double conf) {
+	simulation = sim;
+	precision = prec;
+	confidence = conf;
+	window_ticks = Math.max(1, Event.toTick(window));
+	next_window_tick = simulation.event_handler.getSimulTick() + window_ticks;
+	enb_delays = new double[MAX_BATCHES];
+	ue_delays = new double[MAX_BATCHES];
+	enb_sent = new long[MAX_BATCHES];
+	ue_sent = new long[MAX_BATCHES];
+	state_energies = new double[NUM_STATES][MAX_BATCHES];
+	energies = new double[MAX_BATCHES];
+	last_state_energies = new double[NUM_STATES];
+	group_means = new double[MAX_BATCHES / MSER_GROUP];
+	warmed_up = false;
+	transient_end = statistics_start = 0.0;
+	relative_half_width = Double.POSITIVE_INFINITY;
+	clear();
+    }
+
+    /**
+     * Returns the instant at which the current window ends.
+     *
+     * @return the end of the current window (in clock ticks)
+     */
+    public long getNextWindowTick () {
+	return next_window_tick;
+    }
+
+    /**
+     * Returns true once the initial transient has been detected and the statistics have been reset.
+     *
+     * @return true if the simulation is in steady state
+     */
+    public boolean isWarmedUp () {
+	return warmed_up;
+    }
+
+    /**
+     * Returns the end of the initial transient located by the MSER-5 rule.
+     *
+     * @return the end of the initial transient (in seconds)
+     */
+    public double getTransientEnd () {
+	return transient_end;
+    }
+
+    /**
+     * Returns the instant at which the statistics were reset.
+     *
+     * @return the beginning of the steady-state statistics (in seconds)
+     */
+    public double getStatisticsStart () {
+	return statistics_start;
+    }
+
+    /**
+     * Returns the largest relative confidence interval half-width of the steady-state estimates computed so far.
+     *
+     * @return the relative half-width, or infinity if not computed yet
+     */
+    public double getRelativeHalfWidth () {
+	return relative_half_width;
+    }
+
+    /**
+     * Ends the current window, once all the events before its end have been handled.
+     * The statistics of the simulation are reset when the initial transient is detected.
+     *
+     * @return true if the steady-state estimates are precise enough, so the simulation must stop
+     */
+    public boolean endWindow () {
+	double now = Event.toSeconds(next_window_tick);
+	next_window_tick += window_ticks;
+
+	// Increments of the statistics of the simulation during the window
+	ENB enb = simulation.getENB();
+	UE ue = simulation.getUE();
+	double enb_delay = 0.0, ue_delay = 0.0;
+	long enb_packets = 0, ue_packets = 0;
+	for (int i = 0; i < enb.num_ues; i++) {
+	    enb_delay += enb.sum_packets_delay[i];
+	    enb_packets += enb.packets_sent[i];
+	    ue_delay += ue.sum_packets_delay[i];
+	    ue_packets += ue.packets_sent[i];
+	}
+	// The energy drawn in each state is the time spent in it times its power, and the total also includes the state transitions
+	double[] state_energy = ue.getTimeInStates(now);
+	for (int s = 0; s < NUM_STATES; s++) {
+	    state_energy[s] *= simulation.config.ue_state_power[s] / 1000;
+	}
+	double energy = ue.getEnergy(now) / ue.num_ues;
+	enb_delays[num_batches] += enb_delay - last_enb_delays;
+	enb_sent[num_batches] += enb_packets - last_enb_sent;
+	ue_delays[num_batches] += ue_delay - last_ue_delays;
+	ue_sent[num_batches] += ue_packets - last_ue_sent;
+	for (int s = 0; s < NUM_STATES; s++) {
+	    state_energies[s][num_batches] += state_energy[s] - last_state_energies[s];
+	}
+	energies[num_batches] += energy - last_energy;
+	last_enb_delays = enb_delay;
+	last_enb_sent = enb_packets;
+	last_ue_delays = ue_delay;
+	last_ue_sent = ue_packets;
+	last_state_energies = state_energy;
+	last_energy = energy;
+
+	if (++current_windows < batch_windows) {
+	    return false;
+	}
+	current_windows = 0;
+	if (++num_batches == MAX_BATCHES) {
+	    mergeBatches();
+	}
+	if (!warmed_up) {
+	    int truncation = Math.max(getTruncationPoint(enb_delays, enb_sent), getTruncationPoint(ue_delays, ue_sent));
+	    if (truncation >= 0) {
+		// The transient is over: the statistics are collected again from now on
+		transient_end = statistics_start + Event.toSeconds(truncation * batch_windows * window_ticks);
+		statistics_start = now;
+		simulation.resetStatistics(now);
+		warmed_up = true;
+		clear();
+	    }
+	    return false;
+	}
+	relative_half_width = getRelativeHalfWidth(now);
+	return relative_half_width <= precision;
+    }
+
+    /* Empties the series, once the statistics of the simulation have been reset */
+    private void clear () {
+	batch_windows = 1;
+	current_windows = num_batches = 0;
+	for (int b = 0; b < MAX_BATCHES; b++) {
+	    enb_delays[b] = ue_delays[b] = energies[b] = 0.0;
+	    enb_sent[b] = ue_sent[b] = 0;
+	    for (int s = 0; s < NUM_STATES; s++) {
+		state_energies[s][b] = 0.0;
+	    }
+	}
+	last_enb_delays = last_ue_delays = last_energy = 0.0;
+	last_enb_sent = last_ue_sent = 0;
+	last_state_energies = new double[NUM_STATES];
+    }
+
+    /* Merges adjacent batches, halving the number of batches of the series */
+    private void mergeBatches () {
+	for (int b = 0; b < num_batches / 2; b++) {
+	    enb_delays[b] = enb_delays[2 * b] + enb_delays[2 * b + 1];
+	    enb_sent[b] = enb_sent[2 * b] + enb_sent[2 * b + 1];
+	    ue_delays[b] = ue_delays[2 * b] + ue_delays[2 * b + 1];
+	    ue_sent[b] = ue_sent[2 * b] + ue_sent[2 * b + 1];
+	    energies[b] = energies[2 * b] + energies[2 * b + 1];
+	    for (int s = 0; s < NUM_STATES; s++) {
+		state_energies[s][b] = state_energies[s][2 * b] + state_energies[s][2 * b + 1];
+	    }
+	}
+	for (int b = num_batches / 2; b < num_batches; b++) {
+	    enb_delays[b] = ue_delays[b] = energies[b] = 0.0;
+	    enb_sent[b] = ue_sent[b] = 0;
+	    for (int s = 0; s < NUM_STATES; s++) {
+		state_energies[s][b] = 0.0;
+	    }
+	}
+	num_batches /= 2;
+	batch_windows *= 2;
+    }
+
+    /*
+     * Returns the MSER-5 truncation point of the delay series (in batches), 0 if no packet has been sent,
+     * or -1 if the series is too short, a group has no packets or the truncation point is not within its first half
+     */
+    private int getTruncationPoint (double[] delays, long[] sent) {
+	int n = num_batches / MSER_GROUP;
+	if (n < MIN_MSER_GROUPS) {
+	    return -1;
+	}
+	long total_sent = 0;
+	for (int j = 0; j < n; j++) {
+	    double sum = 0.0;
+	    long count = 0;
+	    for (int b = j * MSER_GROUP; b < (j + 1) * MSER_GROUP; b++) {
+		sum += delays[b];
+		count += sent[b];
+	    }
+	    group_means[j] = count > 0 ? sum / count : Double.NaN;
+	    total_sent += count;
+	}
+	if (total_sent == 0) {
+	    return 0;
+	}
+	// The sums of the groups kept are accumulated from the end of the series
+	double sum = 0.0, sum_squares = 0.0, min_statistic = Double.POSITIVE_INFINITY;
+	int truncation = -1;
+	for (int d = n - 1; d >= 0; d--) {
+	    if (Double.isNaN(group_means[d])) {
+		return -1;
+	    }
+	    sum += group_means[d];
+	    sum_squares += group_means[d] * group_means[d];
+	    int kept = n - d;
+	    if (d <= n / 2) {
+		double statistic = Math.max(0.0, sum_squares - sum * sum / kept) / ((double) kept * kept);
+		if (statistic <= min_statistic) {
+		    min_statistic = statistic;
+		    truncation = d;
+		}
+	    }
+	}
+	return truncation < n / 2 ? truncation * MSER_GROUP : -1;
+    }
+
+    /* Returns the largest relative half-width of the steady-state estimates, computed from the batch means */
+    private double getRelativeHalfWidth (double now) {
+	if (num_batches < NUM_BATCH_MEANS) {
+	    return Double.POSITIVE_INFINITY;
+	}
+	// The oldest batches that do not fill a batch mean are left out
+	int size = num_batches / NUM_BATCH_MEANS;
+	int first = num_batches - size * NUM_BATCH_MEANS;
+	double length = Event.toSeconds((long) size * batch_windows * window_ticks);
+	double worst = 0.0;
+	for (int node = 0; node < 2; node++) {
+	    double[] delays = node == 0 ? enb_delays : ue_delays;
+	    long[] sent = node == 0 ? enb_sent : ue_sent;
+	    SampleStatistics stats = new SampleStatistics();
+	    long total_sent = 0;
+	    for (int m = 0; m < NUM_BATCH_MEANS; m++) {
+		double sum = 0.0;
+		long count = 0;
+		for (int b = first + m * size; b < first + (m + 1) * size; b++) {
+		    sum += delays[b];
+		    count += sent[b];
+		}
+		if (count > 0) {
+		    stats.add(sum / count);
+		}
+		total_sent += count;
+	    }
+	    if (total_sent == 0) {
+		continue;
+	    }
+	    if (stats.getCount() < NUM_BATCH_MEANS) {
+		return Double.POSITIVE_INFINITY;
+	    }
+	    worst = Math.max(worst, stats.getHalfWidth(confidence) / Math.abs(stats.getMean()));
+	}
+	// The power of each state is estimated relative to the average power, unless the UEs draw no energy at all
+	SampleStatistics power = getPowerStatistics(energies, first, size, length);
+	if (power.getMean() > 0) {
+	    worst = Math.max(worst, power.getHalfWidth(confidence) / power.getMean());
+	    for (int s = 0; s < NUM_STATES; s++) {
+		SampleStatistics stats = getPowerStatistics(state_energies[s], first, size, length);
+		worst = Math.max(worst, stats.getHalfWidth(confidence) / Math.max(stats.getMean(), MIN_ENERGY_FRACTION * power.getMean()));
+	    }
+	}
+	return worst;
+    }
+
+    /* Returns the statistics of the batch means of the average power drawn, given the energy of each batch */
+    private SampleStatistics getPowerStatistics (double[] energy, int first, int size, double length) {
+	SampleStatistics stats = new SampleStatistics();
+	for (int m = 0; m < NUM_BATCH_MEANS; m++) {
+	    double sum = 0.0;
+	    for (int b = first + m * size; b < first + (m + 1) * size; b++) {
+		sum += energy[b];
+	    }
+	    stats.add(sum / length);
+	}
+	return stats;
+    }
+}
@@ -0,0 +1,288 @@
+package es.uvigo.det.labredes.lte;
+
+import java.io.*;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.concurrent.*;
+
+/**
+ * SweepRunner: Java program that runs several replications of the LteSimulator for every combination
+ * of a grid of parameter values, and reports the mean and confidence interval of each statistic.
+ * Replications are run concurrently on a fixed-size pool of workers, each one running its own Simulation.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public final class SweepRunner {
+
+    /**
+     * Result of one replication.
+     */
+    private static final class Replication {
+	int config;
+	long seed;
+	int replication;
+	/* Seed and replication number (seed.replication) */
+	String id;
+	List<String> output = new ArrayList<String>();
+	boolean failed;
+	DelayHistogram enb_delays, ue_delays;
+    }
+
+    private SweepRunner () {}
+
+    /**
+     * Main method.
+     * Usage: java SweepRunner [-f config_file] [-g sweep_file] [-l simulation_length] [-r replications] [-s first_seed] [-j workers] [-c confidence]
+     * Each line of the sweep file has the same syntax as a config file line. Lines with the same key
+     * are alternative values of that parameter; every combination of alternatives is simulated.
+     */
+    public static void main (String[] args) {
+	String config_file = null;
+	String sweep_file = null;
+	SimulationConfig defaults = new SimulationConfig();
+	double simul_length = defaults.simul_length;
+	int replications = 30;
+	long first_seed = defaults.simul_seed;
+	int workers = Runtime.getRuntime().availableProcessors();
+	double confidence = 0.95;
+
+	// Arguments parsing
+	for (int i = 0; i < args.length; i++) {
+	    try {
+		if (args[i].equals("-f")) {
+		    config_file = args[++i];
+		} else if (args[i].equals("-g")) {
+		    sweep_file = args[++i];
+		} else if (args[i].equals("-l")) {
+		    simul_length = Double.parseDouble(args[++i]);
+		} else if (args[i].equals("-r")) {
+		    replications = Integer.parseInt(args[++i]);
+		} else if (args[i].equals("-s")) {
+		    first_seed = Long.parseLong(args[++i]);
+		} else if (args[i].equals("-j")) {
+		    workers = Integer.parseInt(args[++i]);
+		} else if (args[i].equals("-c")) {
+		    confidence = Double.parseDouble(args[++i]);
+		} else {
+		    LteSimulator.printError("Unknown argument: " + args[i] + "\nUsage: java SweepRunner [-f config_file] [-g sweep_file] [-l simulation_length] [-r replications] [-s first_seed] [-j workers] [-c confidence]");
+		}
+	    } catch (NumberFormatException e) {
+		LteSimulator.printError("Invalid value for argument " + args[i - 1] + "!");
+	    } catch (ArrayIndexOutOfBoundsException e) {
+		LteSimulator.printError("Missing value for argument " + args[i - 1] + "!");
+	    }
+	}
+	if (replications < 1 || workers < 1 || confidence <= 0 || confidence >= 1) {
+	    LteSimulator.printError("Invalid sweep settings!");
+	}
+
+	// Base configuration and parameter grid
+	List<String> base_lines = config_file != null ? readLines(config_file) : new ArrayList<String>();
+	Map<String, List<String>> grid = new LinkedHashMap<String, List<String>>();
+	if (sweep_file != null) {
+	    for (String line : readLines(sweep_file)) {
+		if (line.startsWith(";") || line.trim().isEmpty()) {
+		    continue;
+		}
+		String key = line.trim().split("\\s+")[0];
+		if (!grid.containsKey(key)) {
+		    grid.put(key, new ArrayList<String>());
+		}
+		grid.get(key).add(line.trim());
+	    }
+	}
+	List<List<String>> configs = new ArrayList<List<String>>();
+	configs.add(new ArrayList<String>());
+	for (List<String> alternatives : grid.values()) {
+	    List<List<String>> expanded = new ArrayList<List<String>>();
+	    for (List<String> config : configs) {
+		for (String alternative : alternatives) {
+		    List<String> new_config = new ArrayList<String>(config);
+		    new_config.add(alternative);
+		    expanded.add(new_config);
+		}
+	    }
+	    configs = expanded;
+	}
+	SimulationConfig[] simul_configs = new SimulationConfig[configs.size()];
+	for (int c = 0; c < configs.size(); c++) {
+	    // Swept lines are parsed after the base config, so they override its values
+	    simul_configs[c] = new SimulationConfig();
+	    try {
+		for (String line : base_lines) {
+		    simul_configs[c].parseLine(line);
+		}
+		for (String line : configs.get(c)) {
+		    simul_configs[c].parseLine(line);
+		}
+	    } catch (SimulationException e) {
+		LteSimulator.printError(e.getMessage());
+	    }
+	    simul_configs[c].simul_length = simul_length;
+	    System.out.format("Configuration %d: %s %n", c + 1, configs.get(c).isEmpty() ? "base" : String.join(" | ", configs.get(c)));
+	}
+
+	// Replications
+	ExecutorService pool = Executors.newFixedThreadPool(workers);
+	CompletionService<Replication> completion = new ExecutorCompletionService<Replication>(pool);
+	for (int c = 0; c < configs.size(); c++) {
+	    for (int r = 0; r < replications; r++) {
+		final int config = c;
+		final int replication = r;
+		final long seed = first_seed;
+		final SimulationConfig simul_config = simul_configs[c];
+		completion.submit(new Callable<Replication>() {
+			public Replication call () {
+			    return runReplication(config, simul_config, seed, replication);
+			}
+		    });
+	    }
+	}
+
+	// Results are printed as soon as each replication finishes
+	List<Map<String, SampleStatistics[]>> statistics = new ArrayList<Map<String, SampleStatistics[]>>();
+	int[] pending = new int[configs.size()];
+	// Packet delays of all the replications of each configuration
+	DelayHistogram[] enb_delays = new DelayHistogram[configs.size()];
+	DelayHistogram[] ue_delays = new DelayHistogram[configs.size()];
+	for (int c = 0; c < configs.size(); c++) {
+	    statistics.add(new LinkedHashMap<String, SampleStatistics[]>());
+	    pending[c] = replications;
+	    enb_delays[c] = new DelayHistogram();
+	    ue_delays[c] = new DelayHistogram();
+	}
+	int total = configs.size() * replications;
+	for (int k = 1; k <= total; k++) {
+	    Replication rep;
+	    try {
+		rep = completion.take().get();
+	    } catch (Exception e) {
+		pool.shutdownNow();
+		LteSimulator.printError("Replication failed: " + e.getMessage());
+		return;
+	    }
+	    System.out.format("Replication %d/%d: configuration %d seed %s%s %n", k, total, rep.config + 1, rep.id, rep.failed ? " FAILED" : "");
+	    for (String line : rep.output) {
+		System.out.format("[%d:%s] %s%n", rep.config + 1, rep.id, line);
+		if (!rep.failed) {
+		    addObservations(statistics.get(rep.config), line);
+		}
+	    }
+	    if (!rep.failed) {
+		enb_delays[rep.config].add(rep.enb_delays);
+		ue_delays[rep.config].add(rep.ue_delays);
+	    }
+	    if (--pending[rep.config] == 0) {
+		printSummary(rep.config, configs.get(rep.config), statistics.get(rep.config), confidence);
+		SimulationResult.printPercentiles(System.out, "ENB pooled", enb_delays[rep.config]);
+		SimulationResult.printPercentiles(System.out, "UE pooled", ue_delays[rep.config]);
+	    }
+	    System.out.flush();
+	}
+	pool.shutdown();
+    }
+
+    /* Runs one replication and collects its output */
+    private static Replication runReplication (int config, SimulationConfig simul_config, long seed, int replication) {
+	Replication rep = new Replication();
+	rep.config = config;
+	rep.seed = seed;
+	rep.replication = replication;
+	rep.id = seed + "." + replication;
+	SimulationConfig replication_config = simul_config.copy();
+	// Every replication derives its own streams from the same seed, so replications never share arrivals
+	replication_config.random_streams = true;
+	replication_config.simul_seed = seed;
+	replication_config.simul_replication = replication;
+	if (!replication_config.metrics_output_file.isEmpty()) {
+	    // Each replication writes its own metrics file
+	    replication_config.metrics_output_file += "." + (config + 1) + "." + rep.id;
+	}
+	if (!replication_config.checkpoint_file.isEmpty()) {
+	    // Likewise, each replication writes its own checkpoints
+	    replication_config.checkpoint_file += "." + (config + 1) + "." + rep.id;
+	}
+	try {
+	    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+	    // Replications already run concurrently, so the cells of each one are simulated by a single worker
+	    SimulationResult result = replication_config.num_cells > 1 ? new MultiCellSimulation(replication_config).run(1) : new Simulation(replication_config).run();
+	    result.print(new PrintStream(buffer, true));
+	    rep.enb_delays = result.enb.delay_histogram;
+	    rep.ue_delays = result.ue.delay_histogram;
+	    for (String line : buffer.toString().split("\\R")) {
+		rep.output.add(line);
+	    }
+	} catch (SimulationException e) {
+	    rep.output.add("ERROR: " + e.getMessage());
+	    rep.failed = true;
+	}
+	return rep;
+    }
+
+    /* Splits an output line into a template (numbers replaced by #) and accumulates its numbers */
+    private static void addObservations (Map<String, SampleStatistics[]> statistics, String line) {
+	String[] tokens = line.trim().split("\\s+");
+	StringBuilder template = new StringBuilder();
+	List<Double> values = new ArrayList<Double>();
+	for (String token : tokens) {
+	    try {
+		values.add(Double.parseDouble(token));
+		template.append("# ");
+	    } catch (NumberFormatException e) {
+		template.append(token).append(' ');
+	    }
+	}
+	if (values.isEmpty()) {
+	    return;
+	}
+	String key = template.toString();
+	SampleStatistics[] stats = statistics.get(key);
+	if (stats == null) {
+	    stats = new SampleStatistics[values.size()];
+	    for (int i = 0; i < stats.length; i++) {
+		stats[i] = new SampleStatistics();
+	    }
+	    statistics.put(key, stats);
+	}
+	for (int i = 0; i < stats.length; i++) {
+	    stats[i].add(values.get(i));
+	}
+    }
+
+    /* Prints every statistic line with each number replaced by its mean and confidence interval */
+    private static void printSummary (int config, List<String> params, Map<String, SampleStatistics[]> statistics, double confidence) {
+	System.out.format("Configuration %d summary (%s), mean +- %.0f%% confidence interval half-width: %n", config + 1,
+			  params.isEmpty() ? "base" : String.join(" | ", params), 100 * confidence);
+	for (Map.Entry<String, SampleStatistics[]> entry : statistics.entrySet()) {
+	    StringBuilder line = new StringBuilder();
+	    int i = 0;
+	    for (String token : entry.getKey().trim().split(" ")) {
+		if (token.equals("#")) {
+		    SampleStatistics stats = entry.getValue()[i++];
+		    line.append(String.format("%.9f +- %.9f", stats.getMean(), stats.getHalfWidth(confidence)));
+		} else {
+		    line.append(token);
+		}
+		line.append(' ');
+	    }
+	    System.out.println(line.toString());
+	}
+    }
+
+    static List<String> readLines (String filename) {
+	List<String> lines = new ArrayList<String>();
+	try {
+	    BufferedReader reader = new BufferedReader(new FileReader(filename));
+	    for (String line; (line = reader.readLine()) != null;) {
+		lines.add(line);
+	    }
+	    reader.close();
+	} catch (IOException e) {
+	    LteSimulator.printError("Error while reading " + filename + "!");
+	}
+	return lines;
+    }
+}
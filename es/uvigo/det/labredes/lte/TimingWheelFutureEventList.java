@@ -0,0 +1,228 @@
+package es.uvigo.det.labredes.lte;
+
+import java.util.List;
+
+/**
+ * This class extends FutureEventList class to store pending timers in a hierarchical timing wheel.
+ * Time is split into slots of a fixed granularity (one physical subframe in a simulation), and the wheel has
+ * LEVELS levels of SLOTS slots each: level 0 holds the timers of the next slots one slot per timer instant, and
+ * each higher level holds SLOTS times longer periods, whose timers are moved (cascaded) to the lower levels once
+ * the wheel reaches them. Timers beyond the last level are kept in an overflow binary heap.
+ * <p>
+ * The timers of the slot the wheel has reached, and those added for an earlier slot, are kept in a small binary
+ * heap, so that they are returned in the exact order of their ordering keys and insertion order. Adding and
+ * cancelling a timer take constant time, and each timer is cascaded at most once per level.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class TimingWheelFutureEventList extends FutureEventList {
+    /**
+     * Number of bits of the slot number handled by each level, and number of slots of each level.
+     */
+    public static final int SLOT_BITS = 8;
+    public static final int SLOTS = 1 << SLOT_BITS;
+    /**
+     * Number of levels of the wheel.
+     */
+    public static final int LEVELS = 4;
+    /* Values of Event.timer_slot of the timers stored in the ready and overflow heaps */
+    private static final int READY = -1, OVERFLOW = -2;
+
+    private final long granularity;
+    /* First timer of each slot (level * SLOTS + slot), and bitmap of the non-empty slots */
+    private final Event[] slots;
+    private final long[] occupied;
+    /* Number of the slot the wheel has reached (time in slot units) */
+    private long current;
+    private final BinaryHeapFutureEventList ready, overflow;
+    private int size;
+
+    /**
+     * Creates a new empty timing wheel.
+     *
+     * @param granularity the length of each slot (in clock ticks)
+     */
+    public TimingWheelFutureEventList (long granularity) {
+	this.granularity = Math.max(1, granularity);
+	slots = new Event[LEVELS * SLOTS];
+	occupied = new long[LEVELS * SLOTS / 64];
+	current = 0;
+	ready = new BinaryHeapFutureEventList();
+	overflow = new BinaryHeapFutureEventList();
+	size = 0;
+    }
+
+    /**
+     * Adds the specified timer to the timing wheel.
+     *
+     * @param event the Event to be added
+     */
+    public void add (Event event) {
+	size++;
+	insert(event);
+    }
+
+    /* Stores the timer in the ready heap, in the slot of the level that holds its period or in the overflow heap */
+    private void insert (Event event) {
+	long slot = event.tick / granularity;
+	if (slot <= current) {
+	    event.timer_slot = READY;
+	    ready.add(event);
+	    return;
+	}
+	// The level is given by the highest slot number digit that differs from the current one
+	int level = (63 - Long.numberOfLeadingZeros(slot ^ current)) / SLOT_BITS;
+	if (level >= LEVELS) {
+	    event.timer_slot = OVERFLOW;
+	    overflow.add(event);
+	    return;
+	}
+	int index = level * SLOTS + ((int) (slot >>> (level * SLOT_BITS)) & (SLOTS - 1));
+	event.timer_slot = index;
+	event.timer_prev = null;
+	event.timer_next = slots[index];
+	if (slots[index] != null) {
+	    slots[index].timer_prev = event;
+	}
+	slots[index] = event;
+	occupied[index >> 6] |= 1L << index;
+    }
+
+    /**
+     * Returns the earliest timer without removing it.
+     *
+     * @return the earliest timer or null if the timing wheel is empty
+     */
+    public Event peek () {
+	if (ready.size() == 0) {
+	    advance();
+	}
+	return ready.peek();
+    }
+
+    /**
+     * Removes and returns the earliest timer.
+     *
+     * @return the earliest timer or null if the timing wheel is empty
+     */
+    public Event poll () {
+	if (ready.size() == 0) {
+	    advance();
+	}
+	Event event = ready.poll();
+	if (event != null) {
+	    size--;
+	}
+	return event;
+    }
+
+    /*
+     * Moves the wheel to the next slot with timers, cascading the timers of the higher levels on the way,
+     * until some timer is ready. Lower levels are empty whenever a higher level is looked up, since the timers
+     * of each level always lie after the current slot.
+     */
+    private void advance () {
+	while (ready.size() == 0 && size > 0) {
+	    int level, index = -1;
+	    for (level = 0; level < LEVELS; level++) {
+		int from = ((int) (current >>> (level * SLOT_BITS)) & (SLOTS - 1)) + 1;
+		if ((index = nextOccupied(level, from)) >= 0) {
+		    break;
+		}
+	    }
+	    if (level == LEVELS) {
+		// Only the overflow timers are left: jump to the first one and take those that now fit in the wheel
+		current = overflow.peek().tick / granularity;
+		long last = current | ((1L << (LEVELS * SLOT_BITS)) - 1);
+		Event event;
+		while ((event = overflow.peek()) != null && event.tick / granularity <= last) {
+		    overflow.poll();
+		    insert(event);
+		}
+		continue;
+	    }
+	    int shift = level * SLOT_BITS;
+	    current = (current >>> (shift + SLOT_BITS) << (shift + SLOT_BITS)) | ((long) index << shift);
+	    int k = level * SLOTS + index;
+	    Event event = slots[k];
+	    slots[k] = null;
+	    occupied[k >> 6] &= ~(1L << k);
+	    while (event != null) {
+		Event next = event.timer_next;
+		event.timer_prev = event.timer_next = null;
+		insert(event);
+		event = next;
+	    }
+	}
+    }
+
+    /* Returns the first non-empty slot of the level from the specified one on, or -1 if none */
+    private int nextOccupied (int level, int from) {
+	if (from >= SLOTS) {
+	    return -1;
+	}
+	int k = level * SLOTS + from;
+	int word = k >> 6;
+	long bits = occupied[word] & (-1L << k);
+	int last_word = (level + 1) * SLOTS / 64 - 1;
+	while (bits == 0) {
+	    if (++word > last_word) {
+		return -1;
+	    }
+	    bits = occupied[word];
+	}
+	return word * 64 + Long.numberOfTrailingZeros(bits) - level * SLOTS;
+    }
+
+    /**
+     * Removes the specified pending timer in constant time, unlinking it from its slot.
+     *
+     * @param event the pending Event to be removed
+     * @return true if the timer has been removed from the timing wheel
+     */
+    public boolean cancel (Event event) {
+	int k = event.timer_slot;
+	if (k == READY || k == OVERFLOW) {
+	    if (!(k == READY ? ready : overflow).cancel(event)) {
+		return false;
+	    }
+	} else {
+	    if (event.timer_prev != null) {
+		event.timer_prev.timer_next = event.timer_next;
+	    } else if (slots[k] == event) {
+		slots[k] = event.timer_next;
+		if (slots[k] == null) {
+		    occupied[k >> 6] &= ~(1L << k);
+		}
+	    } else {
+		return false;
+	    }
+	    if (event.timer_next != null) {
+		event.timer_next.timer_prev = event.timer_prev;
+	    }
+	    event.timer_prev = event.timer_next = null;
+	}
+	size--;
+	return true;
+    }
+
+    /**
+     * Returns the number of pending timers.
+     *
+     * @return the number of pending timers
+     */
+    public int size () {
+	return size;
+    }
+
+    protected void collect (List<Event> events) {
+	ready.collect(events);
+	overflow.collect(events);
+	for (Event head : slots) {
+	    for (Event event = head; event != null; event = event.timer_next) {
+		events.add(event);
+	    }
+	}
+    }
+}
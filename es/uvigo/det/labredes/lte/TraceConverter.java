@@ -0,0 +1,104 @@
+package es.uvigo.det.labredes.lte;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * TraceConverter: Java program that converts packet trace files between the text and the binary
+ * formats read by ArrivalTraceReader. Interarrival times are converted without loss of precision.
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public final class TraceConverter {
+    private TraceConverter () {}
+
+    /**
+     * Main method.
+     * Usage: java TraceConverter [-t] input_trace output_trace
+     * The input trace may be in any format. The output trace is written in binary format, or in text format with option -t.
+     */
+    public static void main (String[] args) {
+	boolean to_text = args.length > 0 && args[0].equals("-t");
+	int first = to_text ? 1 : 0;
+	if (args.length != first + 2) {
+	    LteSimulator.printError("Usage: java TraceConverter [-t] input_trace output_trace");
+	}
+	try {
+	    long packets = to_text ? convertToText(args[first], args[first + 1]) : convertToBinary(args[first], args[first + 1]);
+	    System.out.format("%d interarrival times converted %n", packets);
+	} catch (SimulationException e) {
+	    LteSimulator.printError(e.getMessage());
+	}
+    }
+
+    /**
+     * Converts the specified trace file to binary format.
+     *
+     * @param input  name of the input trace file (text or binary format)
+     * @param output name of the output trace file
+     * @return the number of interarrival times converted
+     * @throws SimulationException if a trace file cannot be read or written
+     */
+    public static long convertToBinary (String input, String output) {
+	ArrivalTraceReader reader = new ArrivalTraceReader(input);
+	long packets = 0;
+	try (FileChannel ch = FileChannel.open(Paths.get(output), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+	    ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+	    buffer.put(ArrivalTraceReader.MAGIC);
+	    buffer.putInt(ArrivalTraceReader.VERSION);
+	    buffer.putInt(ArrivalTraceReader.RECORD_SIZE);
+	    while (reader.next()) {
+		if (!buffer.hasRemaining()) {
+		    writeBuffer(ch, buffer);
+		}
+		buffer.putDouble(reader.interarrival_time);
+		packets++;
+	    }
+	    writeBuffer(ch, buffer);
+	} catch (IOException e) {
+	    throw new SimulationException("Error while writing trace file: " + output);
+	} finally {
+	    reader.close();
+	}
+	return packets;
+    }
+
+    /**
+     * Converts the specified trace file to text format.
+     * Each interarrival time is written with the shortest decimal representation that is parsed back to the same value.
+     *
+     * @param input  name of the input trace file (text or binary format)
+     * @param output name of the output trace file
+     * @return the number of interarrival times converted
+     * @throws SimulationException if a trace file cannot be read or written
+     */
+    public static long convertToText (String input, String output) {
+	ArrivalTraceReader reader = new ArrivalTraceReader(input);
+	long packets = 0;
+	try (BufferedWriter writer = new BufferedWriter(new FileWriter(output), 1 << 16)) {
+	    while (reader.next()) {
+		writer.write(Double.toString(reader.interarrival_time));
+		writer.newLine();
+		packets++;
+	    }
+	} catch (IOException e) {
+	    throw new SimulationException("Error while writing trace file: " + output);
+	} finally {
+	    reader.close();
+	}
+	return packets;
+    }
+
+    private static void writeBuffer (FileChannel ch, ByteBuffer buffer) throws IOException {
+	buffer.flip();
+	while (buffer.hasRemaining()) {
+	    ch.write(buffer);
+	}
+	buffer.clear();
+    }
+}
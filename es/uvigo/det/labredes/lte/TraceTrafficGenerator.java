@@ -4,49 +4,67 @@ import java.io.*;
 
 /**
  * This class extends TrafficGenerator class to simulate previously traced traffic.
+ * The trace file is read with an ArrivalTraceReader, so it can be either in text or in binary format.
  *
  * @author Sergio Herreria-Alonso 
  * @version 1.0
  */
 public class TraceTrafficGenerator extends TrafficGenerator {
-    private BufferedReader tracefile;
+    private ArrivalTraceReader tracefile;
 
     /**
      * Creates a new trace traffic generator.
      *
      * @param filename name of the trace file
+     * @throws SimulationException if the trace file is not found
      */
     public TraceTrafficGenerator (String filename) {
-	super(0);
-	try {
-	    tracefile = new BufferedReader(new FileReader(filename));
-	} catch (FileNotFoundException e) {
-	    LteSimulator.printError("Trace file not found!");
-	}
+	super(0, 1);
+	tracefile = new ArrivalTraceReader(filename);
     }
 
     /**
      * Returns the instant at which the next packet arrives.
      *
-     * @return instant at which the next packet arrives (in seconds)
+     * @return instant at which the next packet arrives (in seconds), or infinity at the end of the trace
+     * @throws SimulationException if the trace file cannot be read or contains an invalid interarrival time
      */
     public double getNextArrival () {
-	try {
-	    String line = tracefile.readLine();
-	    if (line != null) {
-		String[] line_fields = line.split("\\s+");
-		try {
-		    arrival_time += Double.parseDouble(line_fields[0]);
-		} catch (NumberFormatException e) {
-		    LteSimulator.printError("Trace file: invalid interarrival time!");
-		}
-	    } else {
-		arrival_time = LteSimulator.simul_length + 1;
+	if (tracefile.next()) {
+	    arrival_time += tracefile.interarrival_time;
+	} else {
+	    if (arrival_time != Double.POSITIVE_INFINITY) {
+		tracefile.close();
 	    }
-	} catch (IOException e) {
-	    LteSimulator.printError("Error while reading trace file!");
+	    arrival_time = Double.POSITIVE_INFINITY;
 	}
 	return arrival_time;
     }
 
+    /**
+     * Writes the state of the generator, including its position in the trace file, to the specified checkpoint stream.
+     *
+     * @param out the checkpoint stream
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeState (ObjectOutput out) throws IOException {
+	super.writeState(out);
+	tracefile.writeState(out);
+    }
+
+    /**
+     * Replaces the state of the generator, including its position in the trace file, with the one read from the specified checkpoint stream.
+     *
+     * @param in the checkpoint stream
+     * @throws IOException if the stream cannot be read or is corrupted
+     * @throws SimulationException if the trace file has changed since the checkpoint
+     */
+    public void readState (ObjectInput in) throws IOException {
+	super.readState(in);
+	tracefile.readState(in);
+	if (arrival_time == Double.POSITIVE_INFINITY) {
+	    tracefile.close();
+	}
+    }
+
 }
\ No newline at end of file
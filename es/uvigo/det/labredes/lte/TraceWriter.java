@@ -0,0 +1,511 @@
+package es.uvigo.det.labredes.lte;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class writes a trace of the simulated events, either in text or in binary format.
+ * Events are encoded by the simulation thread into preallocated buffers (text numbers are formatted
+ * by hand, without java.util.Formatter) and handed to a background thread through a bounded queue,
+ * which writes them to a channel. If the writer thread lags behind, the simulation waits for a free buffer.
+ * <p>
+ * The text format is the one printed by Event.print(). The binary format starts with a header
+ * (the 8 ASCII bytes LTETRACE, the format version and the record size, as 32-bit integers) followed by
+ * one fixed-width little-endian record per event:
+ * <pre>
+ * offset 0  long   event time (in clock ticks)
+ * offset 8  int    UE number
+ * offset 12 int    packet identifier (-1 if none)
+ * offset 16 int    queue size of the node after the event
+ * offset 20 byte   event type (TYPE_* constants)
+ * offset 21 byte   node type (NODE_ENB or NODE_UE)
+ * offset 22 byte   new UE state (UEState ordinal, -1 if none)
+ * offset 23 byte   reserved
+ * offset 24 double average arrival rate (packet arrivals, 0 otherwise)
+ * </pre>
+ *
+ * @author Sergio Herreria-Alonso 
+ * @version 1.0
+ */
+public class TraceWriter {
+    /* Event types */
+    public static final int TYPE_PACKET_ARRIVAL = 0;
+    public static final int TYPE_PACKET_TRANSMISSION = 1;
+    public static final int TYPE_PACKET_DROP = 2;
+    public static final int TYPE_STATE_TRANSITION = 3;
+    /**
+     * Names of the event types, indexed by type.
+     */
+    public static final String[] TYPE_NAMES = {"PacketArrivalEvent", "PacketTransmissionEvent", "PacketDropEvent", "StateTransitionEvent"};
+    /**
+     * Mask that selects all the event types.
+     */
+    public static final int ALL_EVENTS = (1 << TYPE_NAMES.length) - 1;
+
+    /* Node types */
+    public static final int NODE_ENB = 0;
+    public static final int NODE_UE = 1;
+    /**
+     * Mask that selects both node types.
+     */
+    public static final int ALL_NODES = (1 << NODE_ENB) | (1 << NODE_UE);
+
+    /* Binary format */
+    public static final byte[] MAGIC = {'L', 'T', 'E', 'T', 'R', 'A', 'C', 'E'};
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 32;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int NUM_BUFFERS = 4;
+    /* Longest text line: time, label, event name and three numbers */
+    private static final int MAX_LINE_SIZE = 256;
+    private static final ByteBuffer END_OF_TRACE = ByteBuffer.allocate(0);
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+    private static final byte[][] TYPE_BYTES = new byte[TYPE_NAMES.length][];
+    private static final byte[][] STATE_BYTES = new byte[UEState.values().length][];
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    static {
+	for (int i = 0; i < TYPE_NAMES.length; i++) {
+	    TYPE_BYTES[i] = TYPE_NAMES[i].getBytes(StandardCharsets.US_ASCII);
+	}
+	for (UEState state : UEState.values()) {
+	    STATE_BYTES[state.ordinal()] = state.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+    }
+
+    private final WritableByteChannel channel;
+    private final boolean close_channel;
+    private final boolean binary;
+    private final BlockingQueue<ByteBuffer> free_buffers, full_buffers;
+    private final Thread writer_thread;
+    private volatile IOException write_error;
+    /* Bytes written to the channel by the writer thread */
+    private volatile long bytes_written;
+    private ByteBuffer buffer;
+    private boolean closed;
+
+    // Filters
+    private int event_mask;
+    private int node_mask;
+    private int ue_filter;
+    private long start_tick, end_tick;
+
+    /**
+     * Creates a new trace writer that writes to the specified channel.
+     *
+     * @param ch        the output channel
+     * @param close     if true the channel is closed when the trace is closed
+     * @param binary_format if true events are written in binary format, otherwise in text format
+     */
+    public TraceWriter (WritableByteChannel ch, boolean close, boolean binary_format) {
+	this(ch, close, binary_format, 0);
+    }
+
+    /**
+     * Creates a new trace writer that continues a trace already written up to the specified offset
+     * (e.g. by a simulation restored from a checkpoint), so the header is only written if the offset is 0.
+     *
+     * @param ch        the output channel
+     * @param close     if true the channel is closed when the trace is closed
+     * @param binary_format if true events are written in binary format, otherwise in text format
+     * @param offset    the number of bytes of the trace already written
+     */
+    public TraceWriter (WritableByteChannel ch, boolean close, boolean binary_format, long offset) {
+	channel = ch;
+	close_channel = close;
+	binary = binary_format;
+	free_buffers = new ArrayBlockingQueue<ByteBuffer>(NUM_BUFFERS);
+	full_buffers = new ArrayBlockingQueue<ByteBuffer>(NUM_BUFFERS + 1);
+	for (int i = 1; i < NUM_BUFFERS; i++) {
+	    free_buffers.add(newBuffer());
+	}
+	buffer = newBuffer();
+	closed = false;
+	setFilter(ALL_EVENTS, ALL_NODES, -1, 0.0, Double.POSITIVE_INFINITY);
+	bytes_written = offset;
+	if (binary && offset == 0) {
+	    buffer.put(MAGIC);
+	    buffer.putInt(VERSION);
+	    buffer.putInt(RECORD_SIZE);
+	}
+	writer_thread = new Thread(new Runnable() {
+		public void run () {
+		    writeBuffers();
+		}
+	    }, "trace-writer");
+	writer_thread.setDaemon(true);
+	writer_thread.start();
+    }
+
+    /**
+     * Opens a new trace writer that writes to the specified file.
+     *
+     * @param filename name of the trace file, or an empty string to write to the specified stream
+     * @param binary_format if true events are written in binary format, otherwise in text format
+     * @param out      the stream written if no file is specified (it is not closed)
+     * @return the new trace writer
+     * @throws SimulationException if the trace file cannot be opened
+     */
+    public static TraceWriter open (String filename, boolean binary_format, OutputStream out) {
+	return open(filename, binary_format, out, 0);
+    }
+
+    /**
+     * Opens a new trace writer that continues the trace written to the specified file up to the specified offset.
+     * Anything written to the file after that offset is discarded.
+     *
+     * @param filename name of the trace file, or an empty string to write to the specified stream
+     * @param binary_format if true events are written in binary format, otherwise in text format
+     * @param out      the stream written if no file is specified (it is not closed)
+     * @param offset   the number of bytes of the trace already written (0 = new trace)
+     * @return the new trace writer
+     * @throws SimulationException if the trace file cannot be opened or is shorter than the offset
+     */
+    public static TraceWriter open (String filename, boolean binary_format, OutputStream out, long offset) {
+	if (filename == null || filename.isEmpty()) {
+	    return new TraceWriter(Channels.newChannel(out), false, binary_format, offset);
+	}
+	try {
+	    FileChannel ch;
+	    if (offset == 0) {
+		ch = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	    } else {
+		ch = FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE);
+		if (ch.size() < offset) {
+		    ch.close();
+		    throw new SimulationException("Trace file is shorter than at the checkpoint: " + filename);
+		}
+		ch.truncate(offset);
+		ch.position(offset);
+	    }
+	    return new TraceWriter(ch, true, binary_format, offset);
+	} catch (IOException e) {
+	    throw new SimulationException("Cannot open trace file: " + filename);
+	}
+    }
+
+    /**
+     * Selects the events written to the trace.
+     *
+     * @param events mask of the event types written (bit 1 &lt;&lt; TYPE_*)
+     * @param nodes  mask of the node types written (bit 1 &lt;&lt; NODE_*)
+     * @param ue     the only UE whose events are written, or -1 for all the UEs
+     * @param start  beginning of the time window written (in seconds)
+     * @param end    end of the time window written (in seconds)
+     */
+    public void setFilter (int events, int nodes, int ue, double start, double end) {
+	event_mask = events;
+	node_mask = nodes;
+	ue_filter = ue;
+	start_tick = Event.toTick(start);
+	end_tick = Double.isInfinite(end) ? Long.MAX_VALUE : Event.toTick(end);
+    }
+
+    /**
+     * Writes the specified packet arrival event.
+     *
+     * @param event the PacketArrivalEvent to be written
+     */
+    public void write (PacketArrivalEvent event) {
+	LteNode node = event.handler;
+	int ue = event.ue;
+	if (accepts(TYPE_PACKET_ARRIVAL, node, event)) {
+	    if (binary) {
+		putRecord(event, TYPE_PACKET_ARRIVAL, node, event.packet_id, -1, node.avg_arrival_rate[ue]);
+	    } else {
+		putPrefix(event, TYPE_PACKET_ARRIVAL, node);
+		putLong(buffer, event.packet_id);
+		buffer.put((byte) ' ');
+		putLong(buffer, node.qsize[ue]);
+		buffer.put((byte) ' ');
+		putFixed(buffer, node.avg_arrival_rate[ue], 6);
+		putEnd();
+	    }
+	}
+    }
+
+    /**
+     * Writes the specified packet transmission event.
+     *
+     * @param event the PacketTransmissionEvent to be written
+     */
+    public void write (PacketTransmissionEvent event) {
+	LteNode node = event.handler;
+	if (accepts(TYPE_PACKET_TRANSMISSION, node, event)) {
+	    if (binary) {
+		putRecord(event, TYPE_PACKET_TRANSMISSION, node, event.packet_id, -1, 0.0);
+	    } else {
+		putPrefix(event, TYPE_PACKET_TRANSMISSION, node);
+		putLong(buffer, event.packet_id);
+		buffer.put((byte) ' ');
+		putLong(buffer, node.qsize[event.ue]);
+		putEnd();
+	    }
+	}
+    }
+
+    /**
+     * Writes the specified packet drop event.
+     *
+     * @param event the PacketDropEvent to be written
+     */
+    public void write (PacketDropEvent event) {
+	LteNode node = event.handler;
+	if (accepts(TYPE_PACKET_DROP, node, event)) {
+	    if (binary) {
+		putRecord(event, TYPE_PACKET_DROP, node, -1, -1, 0.0);
+	    } else {
+		putPrefix(event, TYPE_PACKET_DROP, node);
+		putLong(buffer, node.qsize[event.ue]);
+		putEnd();
+	    }
+	}
+    }
+
+    /**
+     * Writes the specified state transition event.
+     *
+     * @param event the StateTransitionEvent to be written
+     */
+    public void write (StateTransitionEvent event) {
+	UE node = event.handler;
+	if (accepts(TYPE_STATE_TRANSITION, node, event)) {
+	    if (binary) {
+		putRecord(event, TYPE_STATE_TRANSITION, node, -1, event.new_state.ordinal(), 0.0);
+	    } else {
+		putPrefix(event, TYPE_STATE_TRANSITION, node);
+		buffer.put(STATE_BYTES[event.new_state.ordinal()]);
+		putEnd();
+	    }
+	}
+    }
+
+    /**
+     * Waits until all the events written so far have been written to the channel.
+     *
+     * @throws SimulationException if the trace cannot be written
+     */
+    public void flush () {
+	if (closed) {
+	    return;
+	}
+	submit(buffer);
+	// Once every buffer is free again, all of them have been written
+	ByteBuffer[] taken = new ByteBuffer[NUM_BUFFERS];
+	for (int i = 0; i < NUM_BUFFERS; i++) {
+	    taken[i] = takeFree();
+	}
+	buffer = taken[0];
+	for (int i = 1; i < NUM_BUFFERS; i++) {
+	    free_buffers.add(taken[i]);
+	}
+	checkError();
+    }
+
+    /**
+     * Returns the number of bytes of the trace written to the channel, including any offset the trace was continued from.
+     * All the events written so far are included once the trace is flushed.
+     *
+     * @return the number of bytes written
+     */
+    public long getBytesWritten () {
+	return bytes_written;
+    }
+
+    /**
+     * Writes all the pending events, stops the writer thread and closes the channel if required.
+     *
+     * @throws SimulationException if the trace cannot be written
+     */
+    public void close () {
+	if (closed) {
+	    return;
+	}
+	closed = true;
+	submit(buffer);
+	buffer = null;
+	try {
+	    full_buffers.put(END_OF_TRACE);
+	    writer_thread.join();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+	try {
+	    if (close_channel) {
+		channel.close();
+	    }
+	} catch (IOException e) {
+	    if (write_error == null) {
+		write_error = e;
+	    }
+	}
+	checkError();
+    }
+
+    private static ByteBuffer newBuffer () {
+	return ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /* Body of the writer thread */
+    private void writeBuffers () {
+	while (true) {
+	    ByteBuffer full;
+	    try {
+		full = full_buffers.take();
+	    } catch (InterruptedException e) {
+		return;
+	    }
+	    if (full == END_OF_TRACE) {
+		return;
+	    }
+	    full.flip();
+	    try {
+		while (full.hasRemaining() && write_error == null) {
+		    bytes_written += channel.write(full);
+		}
+	    } catch (IOException e) {
+		write_error = e;
+	    }
+	    full.clear();
+	    free_buffers.add(full);
+	}
+    }
+
+    private boolean accepts (int type, LteNode node, Event event) {
+	return (event_mask & (1 << type)) != 0 &&
+	    (node_mask & (1 << (node instanceof ENB ? NODE_ENB : NODE_UE))) != 0 &&
+	    (ue_filter < 0 || ue_filter == event.ue) &&
+	    event.tick >= start_tick && event.tick <= end_tick;
+    }
+
+    /* Makes room for one more record or line, handing the current buffer to the writer thread if needed */
+    private void reserve () {
+	if (closed) {
+	    throw new SimulationException("Trying to write to a closed trace!");
+	}
+	if (buffer.remaining() < MAX_LINE_SIZE) {
+	    submit(buffer);
+	    buffer = takeFree();
+	    checkError();
+	}
+    }
+
+    private void submit (ByteBuffer full) {
+	try {
+	    full_buffers.put(full);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new SimulationException("Interrupted while writing trace!");
+	}
+    }
+
+    private ByteBuffer takeFree () {
+	try {
+	    return free_buffers.take();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new SimulationException("Interrupted while writing trace!");
+	}
+    }
+
+    private void checkError () {
+	if (write_error != null) {
+	    throw new SimulationException("Error while writing trace: " + write_error.getMessage());
+	}
+    }
+
+    private void putRecord (Event event, int type, LteNode node, int packet_id, int new_state, double rate) {
+	reserve();
+	buffer.putLong(event.tick);
+	buffer.putInt(event.ue);
+	buffer.putInt(packet_id);
+	buffer.putInt(node.qsize[event.ue]);
+	buffer.put((byte) type);
+	buffer.put((byte) (node instanceof ENB ? NODE_ENB : NODE_UE));
+	buffer.put((byte) new_state);
+	buffer.put((byte) 0);
+	buffer.putDouble(rate);
+    }
+
+    /* Puts the time, the node label and the event name followed by a space */
+    private void putPrefix (Event event, int type, LteNode node) {
+	reserve();
+	putFixed(buffer, event.time, 9);
+	buffer.put((byte) ' ');
+	if (node instanceof ENB) {
+	    buffer.put((byte) 'E').put((byte) 'N').put((byte) 'B');
+	} else {
+	    buffer.put((byte) 'U').put((byte) 'E');
+	}
+	if (node.num_ues > 1) {
+	    buffer.put((byte) '[');
+	    putLong(buffer, event.ue);
+	    buffer.put((byte) ']');
+	}
+	buffer.put((byte) ' ');
+	buffer.put(TYPE_BYTES[type]);
+	buffer.put((byte) ' ');
+    }
+
+    private void putEnd () {
+	buffer.put((byte) ' ');
+	buffer.put(NEWLINE);
+    }
+
+    /* Puts the decimal representation of the value */
+    static void putLong (ByteBuffer buffer, long value) {
+	if (value < 0) {
+	    buffer.put((byte) '-');
+	    value = -value;
+	}
+	long pow = 1;
+	while (value / pow >= 10) {
+	    pow *= 10;
+	}
+	for (; pow > 0; pow /= 10) {
+	    buffer.put((byte) ('0' + value / pow % 10));
+	}
+    }
+
+    /*
+     * Puts the value with the specified number of decimals, as String.format("%.nf") does.
+     * The value is scaled and rounded with integer arithmetic; values too close to a rounding tie
+     * to be rounded as the formatter does (or too large) are formatted with String.format.
+     */
+    static void putFixed (ByteBuffer buffer, double value, int decimals) {
+	double magnitude = Math.abs(value);
+	double scaled = magnitude * POW10[decimals];
+	long units = (long) scaled;
+	double fraction = scaled - units;
+	double tolerance = 4 * Math.ulp(scaled);
+	if (Double.isNaN(value) || scaled >= 1e15 || Math.abs(fraction - 0.5) <= tolerance) {
+	    buffer.put(String.format("%." + decimals + "f", value).getBytes(StandardCharsets.US_ASCII));
+	    return;
+	}
+	if (fraction > 0.5) {
+	    units++;
+	}
+	if (Double.doubleToRawLongBits(value) < 0) {
+	    buffer.put((byte) '-');
+	}
+	long pow = (long) POW10[decimals];
+	putLong(buffer, units / pow);
+	if (decimals > 0) {
+	    buffer.put((byte) '.');
+	    long fraction_digits = units % pow;
+	    for (long p = pow / 10; p > 0; p /= 10) {
+		buffer.put((byte) ('0' + fraction_digits / p % 10));
+	    }
+	}
+    }
+}
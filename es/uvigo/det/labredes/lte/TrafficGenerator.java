@@ -1,5 +1,6 @@
 package es.uvigo.det.labredes.lte;
 
+import java.io.*;
 import java.util.Random;
 
 /**
@@ -14,6 +15,10 @@ abstract public class TrafficGenerator {
      * The packet rate (in packets per second).
      */
     public double packet_rate;
+    /**
+     * The physical subframe length (in seconds).
+     */
+    public double lte_psf;
     /**
      * The instant at which the last packet arrived (in seconds).
      */
@@ -22,16 +27,32 @@ abstract public class TrafficGenerator {
      * The random number generator.
      */
     public Random rng;
+    /**
+     * The instants at which the next packets arrive, if arrivals are generated in blocks (see setBlockSize).
+     */
+    protected double[] block;
+    /**
+     * The standard exponential samples the arrivals of the block are generated from.
+     */
+    protected double[] block_samples;
+    /**
+     * The position in the block of the next arrival.
+     */
+    protected int block_position;
 
     /**
      * Creates a new random traffic generator.
      *
      * @param prate packet rate (in packets per psf)
+     * @param psf   physical subframe length (in seconds)
      */
-    public TrafficGenerator (double prate) {
-	packet_rate = prate / LteSimulator.lte_psf;
+    public TrafficGenerator (double prate, double psf) {
+	lte_psf = psf;
+	packet_rate = prate / lte_psf;
 	arrival_time = 0.0;
 	rng = new Random();
+	block = block_samples = null;
+	block_position = 0;
     }
 
     /**
@@ -40,7 +61,19 @@ abstract public class TrafficGenerator {
      * @param prate packet rate (in packets per psf)
      */
     public void setPacketRate (double prate) {
-	packet_rate = prate / LteSimulator.lte_psf;
+	packet_rate = prate / lte_psf;
+	if (block != null && block_position < block.length) {
+	    transformBlock(block_position);
+	}
+    }
+
+    /**
+     * Sets the random number generator (e.g. a RandomStream).
+     *
+     * @param r the random number generator
+     */
+    public void setRandom (Random r) {
+	rng = r;
     }
 
     /**
@@ -52,6 +85,44 @@ abstract public class TrafficGenerator {
 	rng.setSeed(seed);
     }
 
+    /**
+     * Sets the number of arrivals generated at once (0 = one at a time).
+     * Generators with random interarrival times then sample them in blocks with a faster sampler, so the
+     * arrivals differ from those generated one at a time, although they are still reproducible for a given
+     * seed and do not depend on the block size. Other generators ignore the block size.
+     *
+     * @param size number of arrivals generated at once
+     */
+    public void setBlockSize (int size) {
+	block = size > 0 ? new double[size] : null;
+	block_samples = size > 0 ? new double[size] : null;
+	block_position = size;
+    }
+
+    /**
+     * Returns the instant at which the next packet arrives taken from the block, which is generated
+     * again once all its arrivals are consumed.
+     *
+     * @return instant at which the next packet arrives (in seconds)
+     */
+    protected double getNextBlockArrival () {
+	if (block_position == block.length) {
+	    ExponentialSampler.fill(rng, block_samples);
+	    block_position = 0;
+	    transformBlock(0);
+	}
+	arrival_time = block[block_position++];
+	return arrival_time;
+    }
+
+    /**
+     * Computes the arrivals of the block from the specified position on, following the last arrival,
+     * from their standard exponential samples. Generators that support blocks override it.
+     *
+     * @param from position in the block of the first arrival computed
+     */
+    protected void transformBlock (int from) {}
+
     /**
      * Returns the instant at which the next packet arrives.
      *
@@ -59,4 +130,34 @@ abstract public class TrafficGenerator {
      */
     abstract public double getNextArrival ();
 
+    /**
+     * Writes the state of the generator (last arrival, random number generator and block) to the specified checkpoint stream.
+     *
+     * @param out the checkpoint stream
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeState (ObjectOutput out) throws IOException {
+	out.writeDouble(packet_rate);
+	out.writeDouble(arrival_time);
+	out.writeObject(rng);
+	out.writeObject(block);
+	out.writeObject(block_samples);
+	out.writeInt(block_position);
+    }
+
+    /**
+     * Replaces the state of the generator with the one read from the specified checkpoint stream.
+     *
+     * @param in the checkpoint stream
+     * @throws IOException if the stream cannot be read or is corrupted
+     */
+    public void readState (ObjectInput in) throws IOException {
+	packet_rate = in.readDouble();
+	arrival_time = in.readDouble();
+	rng = (Random) Checkpoint.readObject(in);
+	block = (double[]) Checkpoint.readObject(in);
+	block_samples = (double[]) Checkpoint.readObject(in);
+	block_position = in.readInt();
+    }
+
 }
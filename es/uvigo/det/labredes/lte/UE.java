@@ -1,82 +1,148 @@
 package es.uvigo.det.labredes.lte;
 
-import java.util.Map;
-import java.util.HashMap;
+import java.io.*;
+import java.util.Arrays;
 
 /**
- * This class simulates an UE of the LTE network.
+ * This class simulates the UEs of the LTE network attached to one eNB.
+ * The state of each UE (energy state, DRX timers and counters, statistics) is stored in
+ * arrays indexed by UE number, so each additional UE only requires a few array slots.
  *
  * @author Sergio Herreria-Alonso 
  * @version 1.0
  */
 public class UE extends LteNode {
+    private static final UEState[] STATES = UEState.values();
+    private static final int NUM_STATES = STATES.length;
+
+    /**
+     * The state of each UE (UEState ordinal).
+     */
+    private byte[] state;
+    /**
+     * The previous state of each UE (UEState ordinal).
+     */
+    private byte[] prev_state;
+    /**
+     * The time and new state (UEState ordinal, or -1 if none) of the next idle drx event of each UE.
+     * Scheduled events are recycled by the event list, so they are cancelled through an equal probe event.
+     */
+    private double[] next_idle_drx_time;
+    private byte[] next_idle_drx_state;
     /**
-     * The UE state.
+     * The time and new state (UEState ordinal, or -1 if none) of the next drx event of each UE.
      */
-    private UEState state;
+    private double[] next_drx_time;
+    private byte[] next_drx_state;
     /**
-     * The previous UE state.
+     * Event used to cancel the pending event equal to a scheduled drx event.
      */
-    private UEState prev_state;
+    private StateTransitionEvent probe_event;
     /**
-     * The next idle drx event.
+     * Event passed to handleStateTransitionEvent for each drx event fast-forwarded.
      */
-    private Event next_idle_drx_event;
+    private StateTransitionEvent timer_event;
     /**
-     * The next drx event.
+     * If true the drx events of a UE are being fast-forwarded, so they are not added to the event list.
      */
-    private Event next_drx_event;
+    private boolean fast_forwarding;
     /**
-     * Current number of consecutive cycles in CONNECTED_DRX state.
+     * The last instant at which events are handled (in clock ticks).
      */
-    private int consecutive_connected_drx_cycles;
+    private long end_tick;
     /**
-     * The eNB that manages the UE.
+     * Current number of consecutive cycles in CONNECTED_DRX state of each UE.
+     */
+    private int[] consecutive_connected_drx_cycles;
+    /**
+     * Number of pending state transitions of each UE other than drx events.
+     */
+    private int[] pending_transitions;
+    /**
+     * The eNB that manages the UEs.
      */
     private ENB lte_enb;
 
     // Statistic variables
-    private double last_state_transition_time;
-    private Map<UEState, Double> time_in_states;
+    private double[] last_state_transition_time;
+    /**
+     * Time spent by each UE in each state, indexed by ue * NUM_STATES + state ordinal.
+     */
+    private double[] time_in_states;
+    /**
+     * Energy drawn by each UE in state transitions (in mJ).
+     */
+    private double[] transition_energy;
 
     /**
      * Creates a new UE.
      * The UE uplink traffic is simulated with the specified traffic generator.
      *
-     * @param tg the traffic generator
+     * @param sim the simulation the UE belongs to
+     * @param tg  the traffic generator
+     * @param enb the eNB of the LTE network
+     */
+    public UE (Simulation sim, TrafficGenerator tg, ENB enb) {
+	this(sim, new TrafficGenerator[] {tg}, enb);
+    }
+
+    /**
+     * Creates a new set of UEs, one per traffic generator.
+     * The uplink traffic of UE i is simulated with the traffic generator tg[i].
+     *
+     * @param sim the simulation the UEs belong to
+     * @param tg  the traffic generators
      * @param enb the eNB of the LTE network
      */
-    public UE (TrafficGenerator tg, ENB enb) {
-	super(tg);
+    public UE (Simulation sim, TrafficGenerator[] tg, ENB enb) {
+	super(sim, tg);
 
 	lte_enb = enb;
 	lte_enb.connectUE(this);
-	last_state_transition_time = 0.0;
-        time_in_states = new HashMap<UEState, Double>();
-        for (UEState st : UEState.values()) {
-            time_in_states.put(st, 0.0);
-        }
-	state = prev_state = UEState.CONNECTED;
-	LteSimulator.event_handler.addEvent(new StateTransitionEvent (0.0, this, "handleStateTransitionEvent", state));
-	consecutive_connected_drx_cycles = 0;
+	state = new byte[num_ues];
+	prev_state = new byte[num_ues];
+	next_idle_drx_time = new double[num_ues];
+	next_idle_drx_state = new byte[num_ues];
+	next_drx_time = new double[num_ues];
+	next_drx_state = new byte[num_ues];
+	probe_event = new StateTransitionEvent(0.0, this, 0, UEState.CONNECTED);
+	timer_event = new StateTransitionEvent(0.0, this, 0, UEState.CONNECTED);
+	fast_forwarding = false;
+	end_tick = Event.toTick(config.simul_length);
+	consecutive_connected_drx_cycles = new int[num_ues];
+	pending_transitions = new int[num_ues];
+	last_state_transition_time = new double[num_ues];
+	time_in_states = new double[num_ues * NUM_STATES];
+	transition_energy = new double[num_ues];
+	for (int ue = 0; ue < num_ues; ue++) {
+	    state[ue] = prev_state[ue] = (byte) UEState.CONNECTED.ordinal();
+	    next_idle_drx_state[ue] = next_drx_state[ue] = -1;
+	    scheduleStateTransition(0.0, ue, UEState.CONNECTED);
+	}
     }
 
     /**
-     * Returns the current state of the UE.
+     * Returns the current state of the specified UE.
      *
+     * @param ue the UE number
      * @return current state of the UE
      */
-    public UEState getState () {
-        return state;
+    public UEState getState (int ue) {
+	return STATES[state[ue]];
+    }
+
+    protected boolean isTransmitting (int ue) {
+	return state[ue] == UEState.CONNECTED_TX.ordinal() || state[ue] == UEState.CONNECTED_TX_RX.ordinal();
     }
 
     /**
-     * Returns the previous state of the UE.
+     * Returns the previous state of the specified UE.
      *
+     * @param ue the UE number
      * @return previous state of the UE
      */
-    public UEState getPreviousState () {
-        return prev_state;
+    public UEState getPreviousState (int ue) {
+	return STATES[prev_state[ue]];
     }
 
     /**
@@ -87,17 +153,19 @@ public class UE extends LteNode {
     public void handlePacketArrivalEvent (PacketArrivalEvent event) {
 	super.handlePacketArrivalEvent(event);
 
-	if (state == UEState.DISCONNECTED || state == UEState.IDLE_DRX || state == UEState.IDLE_LISTENING) {
-	    LteSimulator.event_handler.addEvent(new StateTransitionEvent (event.time, this, "handleStateTransitionEvent", UEState.CONNECTING));
-	}
-	if (state == UEState.CONNECTED_DRX || state == UEState.CONNECTED || state == UEState.CONNECTED_RX) {
-	    LteSimulator.event_handler.addEvent(new PacketTransmissionEvent (event.time + LteSimulator.lte_psf, this, "handlePacketTransmissionEvent", event.packet_id));
-	    if (state == UEState.CONNECTED_DRX) {
-		LteSimulator.event_handler.addEvent(new StateTransitionEvent (event.time, this, "handleStateTransitionEvent", UEState.CONNECTED));
-	    } else if (state == UEState.CONNECTED) {
-		LteSimulator.event_handler.addEvent(new StateTransitionEvent (event.time, this, "handleStateTransitionEvent", UEState.CONNECTED_TX));
-	    } else if (state == UEState.CONNECTED_RX) {
-		LteSimulator.event_handler.addEvent(new StateTransitionEvent (event.time, this, "handleStateTransitionEvent", UEState.CONNECTED_TX_RX));
+	int ue = event.ue;
+	UEState st = STATES[state[ue]];
+	if (st == UEState.DISCONNECTED || st == UEState.IDLE_DRX || st == UEState.IDLE_LISTENING) {
+	    scheduleStateTransition(event.time, ue, UEState.CONNECTING);
+	}
+	if (st == UEState.CONNECTED_DRX || st == UEState.CONNECTED || st == UEState.CONNECTED_RX) {
+	    event_handler.addEvent(event_pool.newPacketTransmissionEvent(event.time + config.lte_psf, this, ue, queue[ue].peekPacketId()));
+	    if (st == UEState.CONNECTED_DRX) {
+		scheduleStateTransition(event.time, ue, UEState.CONNECTED);
+	    } else if (st == UEState.CONNECTED) {
+		scheduleStateTransition(event.time, ue, UEState.CONNECTED_TX);
+	    } else if (st == UEState.CONNECTED_RX) {
+		scheduleStateTransition(event.time, ue, UEState.CONNECTED_TX_RX);
 	    }
 	}
     }
@@ -110,11 +178,12 @@ public class UE extends LteNode {
     public void handlePacketTransmissionEvent (PacketTransmissionEvent event) {
 	super.handlePacketTransmissionEvent(event);
 
-	if (qsize == 0) {
-	    if (state == UEState.CONNECTED_TX_RX && lte_enb.qsize > 0) {
-		LteSimulator.event_handler.addEvent(new StateTransitionEvent (event.time, this, "handleStateTransitionEvent", UEState.CONNECTED_RX));
+	int ue = event.ue;
+	if (qsize[ue] == 0) {
+	    if (state[ue] == UEState.CONNECTED_TX_RX.ordinal() && lte_enb.qsize[ue] > 0) {
+		scheduleStateTransition(event.time, ue, UEState.CONNECTED_RX);
 	    } else {
-		LteSimulator.event_handler.addEvent(new StateTransitionEvent (event.time, this, "handleStateTransitionEvent", UEState.CONNECTED));
+		scheduleStateTransition(event.time, ue, UEState.CONNECTED);
 	    }
 	}
     }
@@ -125,91 +194,326 @@ public class UE extends LteNode {
      * @param event the StateTransitionEvent to be handled
      */
     public void handleStateTransitionEvent (StateTransitionEvent event) {
+	int ue = event.ue;
 	double new_event_time;
+	// True if only drx events are scheduled, so the next state transitions may be fast-forwarded
+	boolean only_drx_events = false;
+	// Timers that expire are no longer pending, so they must not cancel an equal event scheduled later
+	boolean drx_event = false;
+	if (event.time == next_drx_time[ue] && event.new_state.ordinal() == next_drx_state[ue]) {
+	    next_drx_state[ue] = -1;
+	    drx_event = true;
+	}
+	if (event.time == next_idle_drx_time[ue] && event.new_state.ordinal() == next_idle_drx_state[ue]) {
+	    next_idle_drx_state[ue] = -1;
+	    drx_event = true;
+	}
+	if (!drx_event) {
+	    pending_transitions[ue]--;
+	}
 	if (event.new_state == UEState.IDLE_DRX) {
-	    new_event_time = event.time + (LteSimulator.idle_drx_cycle - LteSimulator.idle_on_duration) * LteSimulator.lte_psf;
-	    next_idle_drx_event = new StateTransitionEvent (new_event_time, this, "handleStateTransitionEvent", UEState.IDLE_LISTENING);
-	    LteSimulator.event_handler.addEvent(next_idle_drx_event);
-	    LteSimulator.event_handler.removeEvent(next_drx_event);
+	    new_event_time = event.time + (config.idle_drx_cycle - config.idle_on_duration) * config.lte_psf;
+	    scheduleIdleDrxEvent(ue, new_event_time, UEState.IDLE_LISTENING);
+	    cancelDrxEvent(ue);
+	    only_drx_events = true;
 	} else if (event.new_state == UEState.IDLE_LISTENING) {
-	    if (lte_enb.qsize > 0) {
-		LteSimulator.event_handler.addEvent(new StateTransitionEvent (event.time, this, "handleStateTransitionEvent", UEState.CONNECTING));
+	    if (lte_enb.qsize[ue] > 0) {
+		scheduleStateTransition(event.time, ue, UEState.CONNECTING);
 	    } else {
-		new_event_time = event.time + LteSimulator.idle_on_duration * LteSimulator.lte_psf;
-		next_idle_drx_event = new StateTransitionEvent (new_event_time, this, "handleStateTransitionEvent", UEState.IDLE_DRX); 
-		LteSimulator.event_handler.addEvent(next_idle_drx_event);
+		new_event_time = event.time + config.idle_on_duration * config.lte_psf;
+		scheduleIdleDrxEvent(ue, new_event_time, UEState.IDLE_DRX);
+		only_drx_events = true;
 	    }
 	} else if (event.new_state == UEState.CONNECTING) {
-	    LteSimulator.event_handler.removeEvent(next_idle_drx_event);
-	    new_event_time = event.time + LteSimulator.connection_delay * LteSimulator.lte_psf;
-	    LteSimulator.event_handler.addEvent(new StateTransitionEvent (new_event_time, this, "handleStateTransitionEvent", UEState.CONNECTED));
+	    cancelIdleDrxEvent(ue);
+	    new_event_time = event.time + config.connection_delay * config.lte_psf;
+	    scheduleStateTransition(new_event_time, ue, UEState.CONNECTED);
 	} else if (event.new_state == UEState.CONNECTED) {
-	    int drx_cycle = consecutive_connected_drx_cycles + 1 <= LteSimulator.short_drx_cycle_timer ? LteSimulator.short_drx_cycle : LteSimulator.long_drx_cycle;
-	    if (qsize == 0 && !lte_enb.exitDRX(event.time, drx_cycle)) {
-		int new_event_interval = LteSimulator.inactivity_timer;
-		if (state == UEState.CONNECTED_DRX) {
-		    new_event_interval = LteSimulator.on_duration;
+	    int drx_cycle = consecutive_connected_drx_cycles[ue] + 1 <= config.short_drx_cycle_timer ? config.short_drx_cycle : config.long_drx_cycle;
+	    if (qsize[ue] == 0 && !lte_enb.exitDRX(ue, event.time, drx_cycle)) {
+		int new_event_interval = config.inactivity_timer;
+		if (state[ue] == UEState.CONNECTED_DRX.ordinal()) {
+		    new_event_interval = config.on_duration;
 		} else {
-		    new_event_time = event.time + LteSimulator.idle_inactivity_timer * LteSimulator.lte_psf;
-		    UEState next_idle_drx_event_state = LteSimulator.disconnect_radio ? UEState.DISCONNECTED : UEState.IDLE_DRX;
-		    next_idle_drx_event = new StateTransitionEvent (new_event_time, this, "handleStateTransitionEvent", next_idle_drx_event_state); 
-		    LteSimulator.event_handler.addEvent(next_idle_drx_event);
+		    new_event_time = event.time + config.idle_inactivity_timer * config.lte_psf;
+		    UEState next_idle_drx_event_state = config.disconnect_radio ? UEState.DISCONNECTED : UEState.IDLE_DRX;
+		    scheduleIdleDrxEvent(ue, new_event_time, next_idle_drx_event_state);
 		}
-		new_event_time = event.time + new_event_interval * LteSimulator.lte_psf;
-		next_drx_event = new StateTransitionEvent (new_event_time, this, "handleStateTransitionEvent", UEState.CONNECTED_DRX); 
-		LteSimulator.event_handler.addEvent(next_drx_event);
+		new_event_time = event.time + new_event_interval * config.lte_psf;
+		scheduleDrxEvent(ue, new_event_time, UEState.CONNECTED_DRX);
+		only_drx_events = true;
 	    } else {
 		UEState next_state = UEState.CONNECTED_TX_RX;
-		if (qsize > 0) {
-		    int pid = ((PacketArrivalEvent) (queue.getNextEvent(false))).packet_id;
-		    LteSimulator.event_handler.addEvent(new PacketTransmissionEvent (event.time + LteSimulator.lte_psf, this, "handlePacketTransmissionEvent", pid));
-		    if (lte_enb.qsize == 0) {
+		if (qsize[ue] > 0) {
+		    int pid = queue[ue].peekPacketId();
+		    event_handler.addEvent(event_pool.newPacketTransmissionEvent(event.time + config.lte_psf, this, ue, pid));
+		    if (lte_enb.qsize[ue] == 0) {
 			next_state = UEState.CONNECTED_TX;
 		    }
 		}
-		if (lte_enb.qsize > 0) {
-		    int enb_pid = ((PacketArrivalEvent) (lte_enb.queue.getNextEvent(false))).packet_id;
-		    LteSimulator.event_handler.addEvent(new PacketTransmissionEvent (event.time + LteSimulator.lte_psf, lte_enb, "handlePacketTransmissionEvent", enb_pid));
-		    if (qsize == 0) {
+		if (lte_enb.qsize[ue] > 0) {
+		    int enb_pid = lte_enb.queue[ue].peekPacketId();
+		    event_handler.addEvent(event_pool.newPacketTransmissionEvent(event.time + config.lte_psf, lte_enb, ue, enb_pid));
+		    if (qsize[ue] == 0) {
 			next_state = UEState.CONNECTED_RX;
 		    }
 		}
-		LteSimulator.event_handler.addEvent(new StateTransitionEvent (event.time, this, "handleStateTransitionEvent", next_state));
+		scheduleStateTransition(event.time, ue, next_state);
 	    }
 	} else if (event.new_state == UEState.CONNECTED_TX || event.new_state == UEState.CONNECTED_RX || event.new_state == UEState.CONNECTED_TX_RX) {
-	    consecutive_connected_drx_cycles = 0;
-	    LteSimulator.event_handler.removeEvent(next_drx_event);
-	    LteSimulator.event_handler.removeEvent(next_idle_drx_event);
+	    consecutive_connected_drx_cycles[ue] = 0;
+	    cancelDrxEvent(ue);
+	    cancelIdleDrxEvent(ue);
 	} else if (event.new_state == UEState.CONNECTED_DRX) {
-	    if (consecutive_connected_drx_cycles == 0) {
-		lte_enb.updateQueueTreshold(event.time);
+	    if (consecutive_connected_drx_cycles[ue] == 0) {
+		lte_enb.updateQueueTreshold(ue, event.time);
+	    }
+	    consecutive_connected_drx_cycles[ue]++;
+	    int drx_cycle_length = consecutive_connected_drx_cycles[ue] <= config.short_drx_cycle_timer ? config.short_drx_cycle : config.long_drx_cycle;
+	    new_event_time = event.time + (drx_cycle_length - config.on_duration) * config.lte_psf;
+	    scheduleDrxEvent(ue, new_event_time, UEState.CONNECTED);
+	    only_drx_events = true;
+	}
+
+	int k = ue * NUM_STATES + state[ue];
+	time_in_states[k] = time_in_states[k] + event.time - last_state_transition_time[ue];
+	transition_energy[ue] += config.ue_transition_energy[state[ue] * NUM_STATES + event.new_state.ordinal()];
+	if (simulation.sampler != null) {
+	    simulation.sampler.stateChanged(event.tick, STATES[state[ue]], event.new_state);
+	}
+	prev_state[ue] = state[ue];
+	state[ue] = (byte) event.new_state.ordinal();
+	last_state_transition_time[ue] = event.time;
+	if (simulation.trace != null) {
+	    simulation.trace.write(event);
+	}
+
+	if (only_drx_events && !fast_forwarding && pending_transitions[ue] == 0 && qsize[ue] == 0 && lte_enb.qsize[ue] == 0 &&
+	    config.fast_forward && simulation.trace == null && simulation.sampler == null && simulation.detector == null &&
+	    config.num_cells == 1) {
+	    fastForward(ue);
+	}
+    }
+
+    /*
+     * Handles, without adding them to the event list, the drx events of the UE that occur before its next
+     * packet arrival. Both queues are empty and no other state transition is pending, so drx events are the
+     * only events of the UE until then and each one is handled exactly as if it were taken from the event list. The idle drx event goes first
+     * if both occur at the same instant, since it is always the one scheduled earlier. Events of other UEs
+     * are independent of this UE, so handling them later does not change the results.
+     */
+    private void fastForward (int ue) {
+	long horizon = Math.min(Math.min(next_arrival_tick[ue], lte_enb.next_arrival_tick[ue]), end_tick + 1);
+	if (getNextDrxTick(ue) >= horizon) {
+	    return;
+	}
+	cancelEvent(ue, next_idle_drx_time[ue], next_idle_drx_state[ue]);
+	cancelEvent(ue, next_drx_time[ue], next_drx_state[ue]);
+	fast_forwarding = true;
+	long tick;
+	while ((tick = getNextDrxTick(ue)) < horizon) {
+	    boolean idle = next_idle_drx_state[ue] >= 0 && Event.toTick(next_idle_drx_time[ue]) == tick;
+	    UEState new_state = STATES[idle ? next_idle_drx_state[ue] : next_drx_state[ue]];
+	    double t = idle ? next_idle_drx_time[ue] : next_drx_time[ue];
+	    if (new_state == UEState.CONNECTED) {
+		// Leaving the DRX mode schedules other events, so the drx event is taken from the event list
+		int drx_cycle = consecutive_connected_drx_cycles[ue] + 1 <= config.short_drx_cycle_timer ? config.short_drx_cycle : config.long_drx_cycle;
+		if (lte_enb.exitDRX(ue, t, drx_cycle)) {
+		    break;
+		}
 	    }
-	    consecutive_connected_drx_cycles++;
-	    int drx_cycle_length = consecutive_connected_drx_cycles <= LteSimulator.short_drx_cycle_timer ? LteSimulator.short_drx_cycle : LteSimulator.long_drx_cycle;
-	    new_event_time = event.time + (drx_cycle_length - LteSimulator.on_duration) * LteSimulator.lte_psf;
-	    next_drx_event = new StateTransitionEvent (new_event_time, this, "handleStateTransitionEvent", UEState.CONNECTED); 
-	    LteSimulator.event_handler.addEvent(next_drx_event);
+	    timer_event.time = t;
+	    timer_event.tick = tick;
+	    timer_event.ue = ue;
+	    timer_event.new_state = new_state;
+	    handleStateTransitionEvent(timer_event);
 	}
+	fast_forwarding = false;
+	if (next_idle_drx_state[ue] >= 0) {
+	    event_handler.addEvent(event_pool.newStateTransitionEvent(next_idle_drx_time[ue], this, ue, STATES[next_idle_drx_state[ue]]));
+	}
+	if (next_drx_state[ue] >= 0) {
+	    event_handler.addEvent(event_pool.newStateTransitionEvent(next_drx_time[ue], this, ue, STATES[next_drx_state[ue]]));
+	}
+    }
 
-        time_in_states.put(state, time_in_states.get(state) + event.time - last_state_transition_time);
-	prev_state = state;
-        state = event.new_state;
-        last_state_transition_time = event.time;
-        if (LteSimulator.simul_verbose) {
-            event.print();
-        }
+    /* Returns the instant of the next drx or idle drx event of the UE (in clock ticks), or Long.MAX_VALUE if none */
+    private long getNextDrxTick (int ue) {
+	long tick = Long.MAX_VALUE;
+	if (next_idle_drx_state[ue] >= 0) {
+	    tick = Event.toTick(next_idle_drx_time[ue]);
+	}
+	if (next_drx_state[ue] >= 0) {
+	    tick = Math.min(tick, Event.toTick(next_drx_time[ue]));
+	}
+	return tick;
     }
 
     /**
-     * Prints on standard output some UE statistics.
+     * Schedules a state transition of the specified UE other than a drx event.
+     *
+     * @param t         instant at which the UE changes its state
+     * @param ue        the UE number
+     * @param new_state new state of the UE
      */
-    public void printStatistics () {
-	super.printStatistics();
+    public void scheduleStateTransition (double t, int ue, UEState new_state) {
+	if (event_handler.addEvent(event_pool.newStateTransitionEvent(t, this, ue, new_state))) {
+	    pending_transitions[ue]++;
+	}
+    }
 
-        time_in_states.put(state, time_in_states.get(state) + LteSimulator.simul_length - last_state_transition_time);
-        for (UEState st : UEState.values()) {
-            System.out.format("UE time in state %s: %.9f %.2f %% %n", st, time_in_states.get(st), 100.0 * time_in_states.get(st) / LteSimulator.simul_length);
-        }
+    /* Restarts the idle drx timer of the UE: the pending idle drx event, if any, is replaced by the new one */
+    private void scheduleIdleDrxEvent (int ue, double t, UEState new_state) {
+	cancelIdleDrxEvent(ue);
+	next_idle_drx_time[ue] = Event.round(t);
+	next_idle_drx_state[ue] = (byte) new_state.ordinal();
+	if (!fast_forwarding) {
+	    event_handler.addEvent(event_pool.newStateTransitionEvent(t, this, ue, new_state));
+	}
+    }
+
+    /* Restarts the drx timer of the UE: the pending drx event, if any, is replaced by the new one */
+    private void scheduleDrxEvent (int ue, double t, UEState new_state) {
+	cancelDrxEvent(ue);
+	next_drx_time[ue] = Event.round(t);
+	next_drx_state[ue] = (byte) new_state.ordinal();
+	if (!fast_forwarding) {
+	    event_handler.addEvent(event_pool.newStateTransitionEvent(t, this, ue, new_state));
+	}
+    }
+
+    /* Cancels the pending idle drx event of the UE, if any */
+    private void cancelIdleDrxEvent (int ue) {
+	cancelEvent(ue, next_idle_drx_time[ue], next_idle_drx_state[ue]);
+	next_idle_drx_state[ue] = -1;
+    }
+
+    /* Cancels the pending drx event of the UE, if any */
+    private void cancelDrxEvent (int ue) {
+	cancelEvent(ue, next_drx_time[ue], next_drx_state[ue]);
+	next_drx_state[ue] = -1;
+    }
+
+    /* Cancels the pending state transition of the UE equal to the specified one, if any */
+    private void cancelEvent (int ue, double t, byte new_state) {
+	if (new_state >= 0 && !fast_forwarding) {
+	    probe_event.time = t;
+	    probe_event.ue = ue;
+	    probe_event.new_state = STATES[new_state];
+	    event_handler.removeEvent(probe_event);
+	}
+    }
+
+    /**
+     * Returns the time spent in each state up to the end of the simulation, averaged over all the UEs.
+     *
+     * @return the average time spent in each state, indexed by UEState ordinal
+     */
+    public double[] getTimeInStates () {
+	return getTimeInStates(config.simul_length);
+    }
+
+    /**
+     * Returns the time spent in each state since the statistics were last reset up to the specified instant,
+     * averaged over all the UEs. The instant must not precede the last state transition handled.
+     *
+     * @param end end of the period (in seconds)
+     * @return the average time spent in each state, indexed by UEState ordinal
+     */
+    public double[] getTimeInStates (double end) {
+	double[] avg_time_in_states = new double[NUM_STATES];
+	for (UEState st : STATES) {
+	    double time_in_state = 0.0;
+	    for (int ue = 0; ue < num_ues; ue++) {
+		int k = ue * NUM_STATES + st.ordinal();
+		if (state[ue] == st.ordinal()) {
+		    time_in_state += time_in_states[k] + end - last_state_transition_time[ue];
+		} else {
+		    time_in_state += time_in_states[k];
+		}
+	    }
+	    avg_time_in_states[st.ordinal()] = time_in_state / num_ues;
+	}
+	return avg_time_in_states;
+    }
+
+    /**
+     * Returns the energy drawn by all the UEs since the statistics were last reset up to the specified instant,
+     * according to the power of each state and the energy of each state transition (see SimulationConfig).
+     * The instant must not precede the last state transition handled.
+     *
+     * @param end end of the period (in seconds)
+     * @return the total energy drawn by the UEs (in joules)
+     */
+    public double getEnergy (double end) {
+	double energy = 0.0;
+	for (int ue = 0; ue < num_ues; ue++) {
+	    for (int st = 0; st < NUM_STATES; st++) {
+		double time_in_state = time_in_states[ue * NUM_STATES + st];
+		if (state[ue] == st) {
+		    time_in_state += end - last_state_transition_time[ue];
+		}
+		energy += time_in_state * config.ue_state_power[st];
+	    }
+	    energy += transition_energy[ue];
+	}
+	return energy / 1000;
+    }
+
+    /**
+     * Discards the statistics collected so far, including the time spent in each state and the energy drawn.
+     *
+     * @param now current simulation time
+     */
+    public void resetStatistics (double now) {
+	super.resetStatistics(now);
+	for (int ue = 0; ue < num_ues; ue++) {
+	    last_state_transition_time[ue] = now;
+	}
+	Arrays.fill(time_in_states, 0.0);
+	Arrays.fill(transition_energy, 0.0);
+    }
+
+    /**
+     * Writes the state of the UEs, including their DRX timers, to the specified checkpoint stream.
+     *
+     * @param out the checkpoint stream
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeState (ObjectOutput out) throws IOException {
+	super.writeState(out);
+	out.writeObject(state);
+	out.writeObject(prev_state);
+	out.writeObject(next_idle_drx_time);
+	out.writeObject(next_idle_drx_state);
+	out.writeObject(next_drx_time);
+	out.writeObject(next_drx_state);
+	out.writeObject(consecutive_connected_drx_cycles);
+	out.writeObject(pending_transitions);
+	out.writeObject(last_state_transition_time);
+	out.writeObject(time_in_states);
+	out.writeObject(transition_energy);
+    }
+
+    /**
+     * Replaces the state of the UEs, including their DRX timers, with the one read from the specified checkpoint stream.
+     *
+     * @param in the checkpoint stream
+     * @throws IOException if the stream cannot be read or is corrupted
+     */
+    public void readState (ObjectInput in) throws IOException {
+	super.readState(in);
+	state = (byte[]) Checkpoint.readObject(in);
+	prev_state = (byte[]) Checkpoint.readObject(in);
+	next_idle_drx_time = (double[]) Checkpoint.readObject(in);
+	next_idle_drx_state = (byte[]) Checkpoint.readObject(in);
+	next_drx_time = (double[]) Checkpoint.readObject(in);
+	next_drx_state = (byte[]) Checkpoint.readObject(in);
+	consecutive_connected_drx_cycles = (int[]) Checkpoint.readObject(in);
+	pending_transitions = (int[]) Checkpoint.readObject(in);
+	last_state_transition_time = (double[]) Checkpoint.readObject(in);
+	time_in_states = (double[]) Checkpoint.readObject(in);
+	transition_energy = (double[]) Checkpoint.readObject(in);
     }
 
 }